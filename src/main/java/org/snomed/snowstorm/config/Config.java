@@ -18,6 +18,7 @@ import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
 import org.snomed.snowstorm.core.data.services.servicehook.CommitServiceHookClient;
 import org.snomed.snowstorm.core.data.services.traceability.TraceabilityLogService;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
+import org.snomed.snowstorm.ecl.ECLCacheWarmingService;
 import org.snomed.snowstorm.ecl.SECLObjectFactory;
 import org.snomed.snowstorm.ecl.validation.ECLPreprocessingService;
 import org.snomed.snowstorm.fhir.config.FHIRConceptMapImplicitConfig;
@@ -151,6 +152,15 @@ public abstract class Config extends ElasticsearchConfig {
 	@Autowired
 	private RefsetDescriptorUpdaterService refsetDescriptorUpdaterService;
 
+	@Autowired
+	private ECLCacheWarmingService eclCacheWarmingService;
+
+	@Autowired
+	private BranchReviewChangeJournal branchReviewChangeJournal;
+
+	@Autowired
+	private TopLevelHierarchyLookup topLevelHierarchyLookup;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	@PostConstruct
@@ -165,6 +175,9 @@ public abstract class Config extends ElasticsearchConfig {
 		branchService.addCommitListener(integrityService);
 		branchService.addCommitListener(multiSearchService);
 		branchService.addCommitListener(eclPreprocessingService);
+		branchService.addCommitListener(eclCacheWarmingService);
+		branchService.addCommitListener(branchReviewChangeJournal);
+		branchService.addCommitListener(topLevelHierarchyLookup);
 		branchService.addCommitListener(commitServiceHookClient);
 		branchService.addCommitListener(traceabilityLogService);
 		branchService.addCommitListener(BranchMetadataHelper::clearTransientMetadata);
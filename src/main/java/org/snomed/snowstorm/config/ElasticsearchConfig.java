@@ -1,6 +1,7 @@
 package org.snomed.snowstorm.config;
 
 import com.google.common.base.Strings;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import io.github.acm19.aws.interceptor.http.AwsRequestSigningApacheInterceptor;
 import io.kaicode.elasticvc.api.ComponentService;
 import io.kaicode.elasticvc.repositories.config.IndexNameProvider;
@@ -15,14 +16,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.config.elasticsearch.DateToLongConverter;
 import org.snomed.snowstorm.config.elasticsearch.LongToDateConverter;
+import org.snomed.snowstorm.config.elasticsearch.ProfilingElasticsearchTemplate;
 import org.snomed.snowstorm.core.data.domain.Annotation;
+import org.snomed.snowstorm.core.data.services.profiling.ElasticsearchCallRecorder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.data.elasticsearch.client.ClientConfiguration;
 import org.springframework.data.elasticsearch.client.elc.ElasticsearchClients;
 import org.springframework.data.elasticsearch.client.elc.ElasticsearchConfiguration;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
 import org.springframework.data.elasticsearch.core.convert.ElasticsearchCustomConversions;
 import org.springframework.data.elasticsearch.support.HttpHeaders;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
@@ -58,6 +63,11 @@ public class ElasticsearchConfig extends ElasticsearchConfiguration {
 	@Value("${elasticsearch.api-key}")
 	private String apiKey;
 
+	// Declared before elasticsearchOperations so that it is injected before the operations bean is created
+	@Autowired
+	@Lazy
+	private ElasticsearchCallRecorder elasticsearchCallRecorder;
+
 	@Autowired
 	private ElasticsearchOperations elasticsearchOperations;
 
@@ -139,6 +149,15 @@ public class ElasticsearchConfig extends ElasticsearchConfiguration {
 		return httpHosts.stream().map(HttpHost::toHostString).toList().toArray(new String[]{});
 	}
 
+	@Bean(name = {"elasticsearchOperations", "elasticsearchTemplate"})
+	@Override
+	public @NotNull ElasticsearchOperations elasticsearchOperations(@NotNull ElasticsearchConverter elasticsearchConverter, @NotNull ElasticsearchClient elasticsearchClient) {
+		// Template that records timings of all Elasticsearch requests for metrics, request profiles and the slow query log
+		ProfilingElasticsearchTemplate template = new ProfilingElasticsearchTemplate(elasticsearchClient, elasticsearchConverter, elasticsearchCallRecorder);
+		template.setRefreshPolicy(refreshPolicy());
+		return template;
+	}
+
 	@Bean
 	@Override
 	public @NotNull ElasticsearchCustomConversions elasticsearchCustomConversions() {
@@ -17,6 +17,7 @@ import org.ihtsdo.sso.integration.RequestHeaderAuthenticationDecorator;
 import org.snomed.snowstorm.core.data.domain.CodeSystemVersion;
 import org.snomed.snowstorm.core.data.domain.ReferenceSetTypeExportConfiguration;
 import org.snomed.snowstorm.core.data.domain.classification.Classification;
+import org.snomed.snowstorm.rest.QueryProfileFilter;
 import org.snomed.snowstorm.rest.ReadOnlyApi;
 import org.snomed.snowstorm.rest.ReadOnlyApiWhenEnabled;
 import org.snomed.snowstorm.rest.config.*;
@@ -33,6 +34,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.domain.Page;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.security.access.PermissionEvaluator;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityCustomizer;
@@ -69,6 +71,9 @@ public class SecurityAndUriConfig {
 	@Value("${json.serialization.indent_output}")
 	private boolean jsonIndentOutput;
 
+	@Value("${elasticsearch.profiling.request-profile.enabled}")
+	private boolean requestProfileEnabled;
+
 	@Autowired(required = false)
 	private BuildProperties buildProperties;
 
@@ -139,6 +144,14 @@ public class SecurityAndUriConfig {
 				));
 	}
 
+	@Bean
+	public FilterRegistrationBean<QueryProfileFilter> getQueryProfileFilter(PermissionEvaluator permissionEvaluator) {
+		// Returns the Elasticsearch requests made for a request when an admin user asks for a profile, runs after the security filters
+		FilterRegistrationBean<QueryProfileFilter> registrationBean = new FilterRegistrationBean<>(new QueryProfileFilter(permissionEvaluator));
+		registrationBean.setEnabled(requestProfileEnabled);
+		return registrationBean;
+	}
+
 	@Bean
 	public HttpFirewall allowUrlEncodedSlashHttpFirewall() {
 		DefaultHttpFirewall firewall = new DefaultHttpFirewall();
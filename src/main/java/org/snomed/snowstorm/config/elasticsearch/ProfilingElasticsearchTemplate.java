@@ -0,0 +1,63 @@
+package org.snomed.snowstorm.config.elasticsearch;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import org.snomed.snowstorm.core.data.services.profiling.ElasticsearchCallRecorder;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchScrollHits;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Query;
+
+import java.time.Duration;
+
+/**
+ * ElasticsearchTemplate that reports the timing of each search, scroll and count request to the {@link ElasticsearchCallRecorder}.
+ * All other search methods of the template, including searchForStream, delegate to the methods overridden here.
+ */
+public class ProfilingElasticsearchTemplate extends ElasticsearchTemplate {
+
+	private final ElasticsearchCallRecorder callRecorder;
+
+	public ProfilingElasticsearchTemplate(ElasticsearchClient client, ElasticsearchConverter converter, ElasticsearchCallRecorder callRecorder) {
+		super(client, converter);
+		this.callRecorder = callRecorder;
+	}
+
+	@Override
+	public <T> SearchHits<T> search(Query query, Class<T> clazz, IndexCoordinates index) {
+		long start = System.nanoTime();
+		SearchHits<T> searchHits = super.search(query, clazz, index);
+		callRecorder.record("search", query, index, searchHits.getSearchHits().size(), getTookMillis(searchHits), start);
+		return searchHits;
+	}
+
+	@Override
+	public <T> SearchScrollHits<T> searchScrollStart(long scrollTimeInMillis, Query query, Class<T> clazz, IndexCoordinates index) {
+		long start = System.nanoTime();
+		SearchScrollHits<T> searchHits = super.searchScrollStart(scrollTimeInMillis, query, clazz, index);
+		callRecorder.record("scroll", query, index, searchHits.getSearchHits().size(), getTookMillis(searchHits), start);
+		return searchHits;
+	}
+
+	@Override
+	public <T> SearchScrollHits<T> searchScrollContinue(String scrollId, long scrollTimeInMillis, Class<T> clazz, IndexCoordinates index) {
+		long start = System.nanoTime();
+		SearchScrollHits<T> searchHits = super.searchScrollContinue(scrollId, scrollTimeInMillis, clazz, index);
+		callRecorder.record("scroll-continue", null, index, searchHits.getSearchHits().size(), getTookMillis(searchHits), start);
+		return searchHits;
+	}
+
+	@Override
+	public long count(Query query, Class<?> clazz, IndexCoordinates index) {
+		long start = System.nanoTime();
+		long count = super.count(query, clazz, index);
+		callRecorder.record("count", query, index, count, -1, start);
+		return count;
+	}
+
+	private static long getTookMillis(SearchHits<?> searchHits) {
+		Duration executionDuration = searchHits.getExecutionDuration();
+		return executionDuration != null ? executionDuration.toMillis() : -1;
+	}
+}
@@ -59,6 +59,10 @@ public class Classification {
 	@Field(type = FieldType.Boolean)
 	private Boolean equivalentConceptsFound;
 
+	// Number of relationship changes saved so far while results are being processed
+	@Field(type = FieldType.Long)
+	private Long relationshipChangesProcessed;
+
 	public Classification() {
 	}
 
@@ -166,6 +170,14 @@ public class Classification {
 		this.equivalentConceptsFound = equivalentConceptsFound;
 	}
 
+	public Long getRelationshipChangesProcessed() {
+		return relationshipChangesProcessed;
+	}
+
+	public void setRelationshipChangesProcessed(Long relationshipChangesProcessed) {
+		this.relationshipChangesProcessed = relationshipChangesProcessed;
+	}
+
 	@Override
 	public String toString() {
 		return "Classification{" +
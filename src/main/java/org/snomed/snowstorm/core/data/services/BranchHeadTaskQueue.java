@@ -0,0 +1,116 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Branch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Background tasks for commit listeners, run against the new head of a branch once the commit is visible.
+ * Commit listeners are called before the commit completes so the task waits for the head of the branch to reach the commit.
+ * <p>
+ * At most one task is pending per branch. A task submitted for a later commit replaces the pending task of the branch,
+ * so a burst of commits results in one run against the latest head and the queue never holds more than one task per branch.
+ * A pending task checks the branch head again after a short delay rather than holding a thread while it waits,
+ * it is dropped if the head has not reached the commit within the wait time, for example if the commit was rolled back.
+ */
+public class BranchHeadTaskQueue {
+
+	private static final long CHECK_INTERVAL_MILLIS = 500;
+
+	private final String name;
+	private final BranchService branchService;
+	private final long waitMillis;
+	private final ScheduledExecutorService executor;
+
+	private final Map<String, PendingTask> pendingTasks = new ConcurrentHashMap<>();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public BranchHeadTaskQueue(String name, int threads, int commitWaitSeconds, BranchService branchService) {
+		this.name = name;
+		this.branchService = branchService;
+		this.waitMillis = commitWaitSeconds * 1_000L;
+		this.executor = Executors.newScheduledThreadPool(threads, new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+	}
+
+	/**
+	 * Runs the task with the latest version of the branch once the head of the branch has reached the commit,
+	 * replacing any task of the branch which has not started.
+	 */
+	public void submit(String path, Date commitTimepoint, Consumer<Branch> task) {
+		PendingTask pendingTask = new PendingTask(path, commitTimepoint, System.currentTimeMillis() + waitMillis, task);
+		pendingTasks.put(path, pendingTask);
+		schedule(pendingTask, 0);
+	}
+
+	/**
+	 * @return true if a task is waiting for a commit on the branch, running tasks can use this to stop work that a later task will repeat.
+	 */
+	public boolean hasPending(String path) {
+		return pendingTasks.containsKey(path);
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+		pendingTasks.clear();
+	}
+
+	private void schedule(PendingTask pendingTask, long delayMillis) {
+		try {
+			executor.schedule(() -> check(pendingTask), delayMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// Shutting down
+			pendingTasks.remove(pendingTask.path(), pendingTask);
+		}
+	}
+
+	private void check(PendingTask pendingTask) {
+		String path = pendingTask.path();
+		if (pendingTasks.get(path) != pendingTask) {
+			// Replaced by the task of a later commit
+			return;
+		}
+		Branch branch;
+		try {
+			branch = branchService.findLatest(path);
+		} catch (RuntimeException e) {
+			pendingTasks.remove(path, pendingTask);
+			logger.warn("Failed to find the head of {}, {} task for commit {} dropped.", path, name, pendingTask.commitTimepoint().getTime(), e);
+			return;
+		}
+		if (branch != null && !branch.getHead().before(pendingTask.commitTimepoint())) {
+			if (pendingTasks.remove(path, pendingTask)) {
+				run(pendingTask, branch);
+			}
+		} else if (System.currentTimeMillis() >= pendingTask.deadline()) {
+			if (pendingTasks.remove(path, pendingTask)) {
+				logger.info("Branch {} did not reach commit {} within {} seconds, {} task dropped.",
+						path, pendingTask.commitTimepoint().getTime(), waitMillis / 1_000, name);
+			}
+		} else {
+			schedule(pendingTask, CHECK_INTERVAL_MILLIS);
+		}
+	}
+
+	private void run(PendingTask pendingTask, Branch branch) {
+		try {
+			pendingTask.task().accept(branch);
+		} catch (RuntimeException e) {
+			logger.warn("{} task for commit {} on {} failed.", name, pendingTask.commitTimepoint().getTime(), pendingTask.path(), e);
+		}
+	}
+
+	private record PendingTask(String path, Date commitTimepoint, long deadline, Consumer<Branch> task) {
+	}
+}
@@ -0,0 +1,166 @@
+package org.snomed.snowstorm.core.data.services;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonData;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Branch;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.range;
+import static io.kaicode.elasticvc.helper.QueryHelper.existsQuery;
+import static io.kaicode.elasticvc.helper.QueryHelper.termQuery;
+
+/**
+ * Holds in-memory indexes of reference set members for a few recently queried branches.
+ * <p>
+ * An index is built from the content visible at one timepoint of a branch. It is used for other timepoints of the same branch
+ * while no members with the indexed field have been written to the branch between the two timepoints, no members inherited
+ * from ancestor branches have been replaced or deleted and the branch has not been rebased, otherwise the index is rebuilt.
+ * Member changes are checked using a count query so that commits made by any instance are taken into account.
+ * Concurrent requests for a branch share one build and the check of each timepoint is remembered.
+ * @param <T> The index type.
+ */
+public class BranchIndexCache<T> {
+
+	private static final int MAX_TIMEPOINTS_CHECKED = 1_000;
+
+	private final String name;
+	private final String memberFieldPath;
+	private final Function<BranchCriteria, T> indexBuilder;
+	private final BranchService branchService;
+	private final ElasticsearchOperations elasticsearchOperations;
+
+	private final Cache<String, BranchIndex<T>> branchIndexes;
+	private final Map<String, CompletableFuture<BranchIndex<T>>> builds = new ConcurrentHashMap<>();
+
+	/**
+	 * @param name Name of the index used in errors.
+	 * @param memberFieldPath Reference set member field which all indexed members have, changes to other members are ignored.
+	 * @param indexBuilder Builds the index from the content visible with the branch criteria.
+	 */
+	public BranchIndexCache(String name, int maxBranches, String memberFieldPath, Function<BranchCriteria, T> indexBuilder,
+			BranchService branchService, ElasticsearchOperations elasticsearchOperations) {
+
+		this.name = name;
+		this.memberFieldPath = memberFieldPath;
+		this.indexBuilder = indexBuilder;
+		this.branchService = branchService;
+		this.elasticsearchOperations = elasticsearchOperations;
+		branchIndexes = CacheBuilder.newBuilder()
+				.maximumSize(maxBranches)
+				.expireAfterAccess(Duration.ofHours(1))
+				.build();
+	}
+
+	/**
+	 * @return The index covering the branch timepoint, built if required,
+	 * or null if the branch criteria has no timepoint or the branch has a later index which should be kept.
+	 */
+	public T getIndex(BranchCriteria branchCriteria) {
+		String path = branchCriteria.getBranchPath();
+		Date timepoint = branchCriteria.getTimepoint();
+		if (timepoint == null) {
+			return null;
+		}
+		long time = timepoint.getTime();
+		BranchIndex<T> index = branchIndexes.getIfPresent(path);
+		if (index != null) {
+			if (isValid(index, path, time)) {
+				return index.index();
+			}
+			if (time < index.timepoint()) {
+				// Keep the index of the later version of the branch
+				return null;
+			}
+		}
+
+		CompletableFuture<BranchIndex<T>> build = new CompletableFuture<>();
+		CompletableFuture<BranchIndex<T>> existingBuild = builds.putIfAbsent(path, build);
+		if (existingBuild != null) {
+			// Wait for the build already running, it may be for a different timepoint
+			try {
+				BranchIndex<T> built = existingBuild.join();
+				return isValid(built, path, time) ? built.index() : null;
+			} catch (CompletionException e) {
+				return null;
+			}
+		}
+		try {
+			Branch branchVersion = branchService.findAtTimepointOrThrow(path, timepoint);
+			BranchIndex<T> built = new BranchIndex<>(time, branchVersion.getBase().getTime(), getMembersReplaced(branchVersion),
+					indexBuilder.apply(branchCriteria), CacheBuilder.newBuilder().maximumSize(MAX_TIMEPOINTS_CHECKED).build());
+			branchIndexes.put(path, built);
+			build.complete(built);
+			return built.index();
+		} catch (RuntimeException e) {
+			build.completeExceptionally(e);
+			throw e;
+		} finally {
+			builds.remove(path, build);
+		}
+	}
+
+	/**
+	 * @return The timepoint the index of the branch was built from or null if there is no index.
+	 */
+	public Long getIndexTimepoint(String path) {
+		BranchIndex<T> index = branchIndexes.getIfPresent(path);
+		return index != null ? index.timepoint() : null;
+	}
+
+	public void clear() {
+		branchIndexes.invalidateAll();
+	}
+
+	private boolean isValid(BranchIndex<T> index, String path, long timepoint) {
+		if (index.timepoint() == timepoint) {
+			return true;
+		}
+		try {
+			return index.timepointsChecked().get(timepoint, () -> isUnchanged(index, path, timepoint));
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to check the " + name + " index of " + path, e.getCause());
+		}
+	}
+
+	private boolean isUnchanged(BranchIndex<T> index, String path, long timepoint) {
+		Branch branchVersion = branchService.findAtTimepointOrThrow(path, new Date(timepoint));
+		if (branchVersion.getBase().getTime() != index.base()
+				|| !Objects.equals(getMembersReplaced(branchVersion), index.membersReplaced())) {
+			return false;
+		}
+		long from = Math.min(index.timepoint(), timepoint);
+		long to = Math.max(index.timepoint(), timepoint);
+		Query memberChanges = bool(b -> b
+				.must(termQuery("path", path))
+				.must(existsQuery(memberFieldPath))
+				.should(range(r -> r.field("start").gt(JsonData.of(from)).lte(JsonData.of(to))))
+				.should(range(r -> r.field("end").gt(JsonData.of(from)).lte(JsonData.of(to))))
+				.minimumShouldMatch("1"));
+		return elasticsearchOperations.count(new NativeQueryBuilder().withQuery(memberChanges).build(), ReferenceSetMember.class) == 0;
+	}
+
+	// Members from ancestor branches which were replaced or deleted on this branch
+	private static Integer getMembersReplaced(Branch branchVersion) {
+		return branchVersion.getVersionsReplacedCounts().get(ReferenceSetMember.class.getSimpleName());
+	}
+
+	private record BranchIndex<T>(long timepoint, long base, Integer membersReplaced, T index, Cache<Long, Boolean> timepointsChecked) {
+	}
+}
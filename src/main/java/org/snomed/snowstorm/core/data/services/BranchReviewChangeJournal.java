@@ -0,0 +1,182 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongAVLTreeSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+
+/**
+ * Journal of the concepts changed by each commit on a branch, used to find the concepts changed on the source branch of a branch review.
+ * <p>
+ * Each entry holds the concepts changed between two consecutive heads of a branch, as found by {@link ConceptChangeHelper}.
+ * The content of a commit never changes so entries are kept until evicted. A review over a range of commits unions the entries of those commits,
+ * only commits without an entry are looked up in the store. Once a branch has been reviewed, the entry of the latest commit on the branch
+ * is recorded in the background as the commit completes, so reviewing the branch again mostly costs the union.
+ * Where several commits complete in quick succession only the last is recorded in the background, the others are recorded by the next review.
+ * <p>
+ * Because the entries of the commits are unioned, the result is a superset of the net change over the range:
+ * a concept changed by one commit and changed back by a later commit is included.
+ */
+@Service
+public class BranchReviewChangeJournal implements CommitListener {
+
+	@Value("${cache.branch-review.change-journal.enabled}")
+	private boolean enabled;
+
+	@Value("${cache.branch-review.change-journal.max-concepts}")
+	private long maxConcepts;
+
+	@Value("${cache.branch-review.change-journal.commit-wait-seconds}")
+	private int commitWaitSeconds;
+
+	@Autowired
+	private ConceptChangeHelper conceptChangeHelper;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private SBranchService sBranchService;
+
+	// Concept ids changed by each commit
+	private Cache<JournalKey, long[]> journal;
+
+	// Branches reviewed recently, the commits of these branches are recorded as they complete
+	private Cache<String, Boolean> reviewedPaths;
+
+	private BranchHeadTaskQueue recordingTasks;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		journal = CacheBuilder.newBuilder()
+				.maximumWeight(maxConcepts)
+				.<JournalKey, long[]>weigher((key, conceptIds) -> conceptIds.length + 1)
+				.build();
+		reviewedPaths = CacheBuilder.newBuilder()
+				.maximumSize(10_000)
+				.expireAfterAccess(Duration.ofDays(7))
+				.build();
+		recordingTasks = new BranchHeadTaskQueue("review-change-journal", 1, commitWaitSeconds, branchService);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		recordingTasks.shutdown();
+	}
+
+	/**
+	 * Concepts changed on the branch itself within the time range, a superset of
+	 * {@link ConceptChangeHelper#getConceptsChangedBetweenTimeRange(String, Date, Date, boolean)} without the source being the parent.
+	 * <p>
+	 * Each commit is checked for changes on its own so a concept is included if any commit in the range changed it,
+	 * even if a later commit in the range changed it back.
+	 *
+	 * @param start The start of the range, inclusive.
+	 * @param end The end of the range, inclusive. Normally the head of the branch.
+	 * @return A new modifiable set.
+	 */
+	public Set<Long> getConceptsChanged(String path, Date start, Date end) {
+		if (!enabled) {
+			return new LongOpenHashSet(conceptChangeHelper.getConceptsChangedBetweenTimeRange(path, start, end, false));
+		}
+		reviewedPaths.put(path, true);
+
+		// Heads of the branch within the range
+		Page<Branch> versions = sBranchService.findAllVersionsAfterOrEqualToTimestampAsLightCommits(path, start, LARGE_PAGE);
+		if (versions.getTotalElements() > versions.getContent().size()) {
+			logger.info("Branch {} has more than {} versions in the review range, not using the change journal.", path, versions.getContent().size());
+			return new LongOpenHashSet(conceptChangeHelper.getConceptsChangedBetweenTimeRange(path, start, end, false));
+		}
+		LongSortedSet heads = new LongAVLTreeSet();
+		for (Branch version : versions) {
+			long head = version.getHead().getTime();
+			if (head >= start.getTime() && head <= end.getTime()) {
+				heads.add(head);
+			}
+		}
+
+		Set<Long> changedConcepts = new LongOpenHashSet();
+		long previousHead = branchService.findAtTimepointOrThrow(path, new Date(start.getTime() - 1)).getHead().getTime();
+		int recorded = 0;
+		for (long head : heads) {
+			if (previousHead < start.getTime() - 1) {
+				// The first commit of the range may begin before the range, this part is not journalled
+				changedConcepts.addAll(conceptChangeHelper.getConceptsChangedBetweenTimeRange(path, start, new Date(head), false));
+			} else {
+				JournalKey key = new JournalKey(path, previousHead, head);
+				if (journal.getIfPresent(key) == null) {
+					recorded++;
+				}
+				for (long conceptId : getOrRecord(key)) {
+					changedConcepts.add(conceptId);
+				}
+			}
+			previousHead = head;
+		}
+		logger.info("Branch review of {} used {} commits of the change journal, {} newly recorded.", path, heads.size(), recorded);
+		return changedConcepts;
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		String path = commit.getBranch().getPath();
+		if (!enabled || reviewedPaths.getIfPresent(path) == null) {
+			return;
+		}
+		recordingTasks.submit(path, commit.getTimepoint(), branch -> recordCommit(path, branch.getHead()));
+	}
+
+	long getEntryCount(String path) {
+		return journal.asMap().keySet().stream().filter(key -> key.path().equals(path)).count();
+	}
+
+	/**
+	 * Records the commit which made this the head of the branch.
+	 */
+	void recordCommit(String path, Date head) {
+		Branch previousVersion = branchService.findAtTimepointOrThrow(path, new Date(head.getTime() - 1));
+		getOrRecord(new JournalKey(path, previousVersion.getHead().getTime(), head.getTime()));
+	}
+
+	private long[] getOrRecord(JournalKey key) {
+		try {
+			return journal.get(key, () -> new LongArrayList(conceptChangeHelper.getConceptsChangedBetweenTimeRange(
+					key.path(), new Date(key.previousHead() + 1), new Date(key.head()), false)).toLongArray());
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new IllegalStateException("Failed to record the changes of commit " + key.head() + " on " + key.path(), e.getCause());
+		}
+	}
+
+	/**
+	 * The changes of one commit, made between the previous head of the branch, exclusive, and the head of the commit, inclusive.
+	 */
+	private record JournalKey(String path, long previousHead, long head) {
+	}
+}
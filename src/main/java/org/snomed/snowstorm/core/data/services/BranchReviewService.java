@@ -6,6 +6,7 @@ import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.PathUtil;
 import io.kaicode.elasticvc.domain.Branch;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.CodeSystem;
@@ -68,6 +69,9 @@ public class BranchReviewService {
 	@Autowired
 	private ConceptChangeHelper conceptChangeHelper;
 
+	@Autowired
+	private BranchReviewChangeJournal branchReviewChangeJournal;
+
 	@Autowired
 	private CodeSystemService codeSystemService;
 
@@ -386,8 +390,14 @@ public class BranchReviewService {
 		// source =    \--^--A/B
 		// start = source lastPromotion or base
 
-		Set<Long> changedConcepts = new HashSet<>();
-		changedConcepts.addAll(conceptChangeHelper.getConceptsChangedBetweenTimeRange(source.getPath(), getStart(branchReview, source, target), source.getHead(), branchReview.isSourceParent()));
+		Date start = getStart(branchReview, source, target);
+		Set<Long> changedConcepts;
+		if (branchReview.isSourceParent()) {
+			changedConcepts = new LongOpenHashSet(conceptChangeHelper.getConceptsChangedBetweenTimeRange(source.getPath(), start, source.getHead(), true));
+		} else {
+			// Content which could be promoted is only on the source branch, use the journal of its commits
+			changedConcepts = branchReviewChangeJournal.getConceptsChanged(source.getPath(), start, source.getHead());
+		}
 		branchReview.setStatus(ReviewStatus.CURRENT);
 		branchReview.setChangedConcepts(changedConcepts);
 		branchReviewRepository.save(branchReview);
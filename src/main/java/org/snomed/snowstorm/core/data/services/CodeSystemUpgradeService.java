@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.CodeSystem;
 import org.snomed.snowstorm.core.data.domain.CodeSystemVersion;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
 import org.snomed.snowstorm.core.data.repositories.CodeSystemRepository;
 import org.snomed.snowstorm.core.data.services.pojo.CodeSystemUpgradeJob;
 import org.snomed.snowstorm.core.data.services.pojo.IntegrityIssueReport;
@@ -15,13 +16,19 @@ import org.snomed.snowstorm.dailybuild.DailyBuildService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 import static org.snomed.snowstorm.core.data.services.BranchMetadataHelper.INTERNAL_METADATA_KEY;
 import static org.snomed.snowstorm.core.data.services.BranchMetadataKeys.*;
@@ -31,6 +38,10 @@ public class CodeSystemUpgradeService {
 	private static final long ONE_HOUR_IN_MILLI_SEC = 3600 * 1000;
 	private static final long ONE_DAY_IN_MILLI_SEC = 24 * ONE_HOUR_IN_MILLI_SEC;
 
+	// Stages of an upgrade completed so far, kept in the internal metadata of the extension branch until the upgrade completes.
+	// Format: newDependantVersion|STAGE,STAGE
+	public static final String UPGRADE_PROGRESS_METADATA_KEY = "upgradeProgress";
+
 	@Autowired
 	private CodeSystemService codeSystemService;
 
@@ -58,7 +69,10 @@ public class CodeSystemUpgradeService {
 	@Value("${snowstorm.rest-api.readonly}")
 	private boolean isReadOnly;
 
-	private static final Map<String, CodeSystemUpgradeJob> upgradeJobMap = new HashMap<>();
+	private static final Map<String, CodeSystemUpgradeJob> upgradeJobMap = new ConcurrentHashMap<>();
+
+	// Upgrades of the same code system run one at a time, upgrades of different code systems run at the same time
+	private final Map<String, ReentrantLock> upgradeLocks = new ConcurrentHashMap<>();
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -120,7 +134,17 @@ public class CodeSystemUpgradeService {
 	}
 
 	@PreAuthorize("hasPermission('ADMIN', #codeSystem.branchPath)")
-	public synchronized void upgrade(String id, CodeSystem codeSystem, Integer newDependantVersion, boolean contentAutomations) throws  ServiceException {
+	public void upgrade(String id, CodeSystem codeSystem, Integer newDependantVersion, boolean contentAutomations) throws  ServiceException {
+		ReentrantLock lock = upgradeLocks.computeIfAbsent(codeSystem.getShortName(), shortName -> new ReentrantLock());
+		lock.lock();
+		try {
+			doUpgrade(id, codeSystem, newDependantVersion, contentAutomations);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void doUpgrade(String id, CodeSystem codeSystem, Integer newDependantVersion, boolean contentAutomations) throws  ServiceException {
 		CodeSystemUpgradeJob job = null;
 		if (id != null) {
 			job = getJob(id);
@@ -136,7 +160,10 @@ public class CodeSystemUpgradeService {
 			}
 			throw new IllegalArgumentException(errorMessage);
 		}
-		if (codeSystem.getDependantVersionEffectiveTime() != null && newDependantVersion.compareTo(codeSystem.getDependantVersionEffectiveTime()) <= 0) {
+		// A previous attempt of this upgrade may have failed after some stages completed
+		Set<UpgradeStage> completedStages = getCompletedStages(branchPath, newDependantVersion);
+		boolean resuming = completedStages.contains(UpgradeStage.REBASE) && newDependantVersion.equals(codeSystem.getDependantVersionEffectiveTime());
+		if (!resuming && codeSystem.getDependantVersionEffectiveTime() != null && newDependantVersion.compareTo(codeSystem.getDependantVersionEffectiveTime()) <= 0) {
 			String errorMessage = "The new dependant version must be after the current dependant version.";
 			if (job != null) {
 				job.setStatus(CodeSystemUpgradeJob.UpgradeStatus.FAILED);
@@ -178,17 +205,21 @@ public class CodeSystemUpgradeService {
 		}
 		boolean upgradedSuccessfully = false;
 		try {
-			Branch newParentVersionBranch = branchService.findLatest(newParentVersion.getBranchPath());
-			Date newParentBaseTimepoint = newParentVersionBranch.getBase();
-			logger.info("Running upgrade of {} to {} version {}.", codeSystem, parentCodeSystem, newDependantVersion);
-			branchMergeService.rebaseToSpecificTimepointAndRemoveDuplicateContent(parentPath, newParentBaseTimepoint, branchPath, String.format("Upgrading extension to %s@%s.", parentPath, newParentVersion.getVersion()));
-			logger.info("Completed rebase of {} to {} version {}.", codeSystem, parentCodeSystem, newDependantVersion);
+			if (resuming) {
+				logger.info("Resuming upgrade of {} to {} version {}, stages already completed: {}.", codeSystem, parentCodeSystem, newDependantVersion, completedStages);
+			} else {
+				completedStages.clear();
+				Branch newParentVersionBranch = branchService.findLatest(newParentVersion.getBranchPath());
+				Date newParentBaseTimepoint = newParentVersionBranch.getBase();
+				logger.info("Running upgrade of {} to {} version {}.", codeSystem, parentCodeSystem, newDependantVersion);
+				branchMergeService.rebaseToSpecificTimepointAndRemoveDuplicateContent(parentPath, newParentBaseTimepoint, branchPath, String.format("Upgrading extension to %s@%s.", parentPath, newParentVersion.getVersion()));
+				logger.info("Completed rebase of {} to {} version {}.", codeSystem, parentCodeSystem, newDependantVersion);
+				completeStage(branchPath, newDependantVersion, completedStages, UpgradeStage.REBASE);
+			}
 
 			if (contentAutomations) {
 				logger.info("Running upgrade content automations on {}.", branchPath);
-				upgradeInactivationService.findAndUpdateDescriptionsInactivation(codeSystem);
-				upgradeInactivationService.findAndUpdateLanguageRefsets(codeSystem);
-				upgradeInactivationService.findAndUpdateAdditionalAxioms(codeSystem);
+				runContentAutomations(codeSystem, newDependantVersion, completedStages);
 				logger.info("Completed upgrade content automations on {}.", branchPath);
 			}
 
@@ -222,8 +253,79 @@ public class CodeSystemUpgradeService {
 		}
 	}
 
+	/**
+	 * The content automations only read the branch to find their changes so the finds run at the same time.
+	 * The changes of each automation are then saved in their own commit, one after another, and each is checkpointed as it completes.
+	 * The finds run with the security context of the upgrade.
+	 */
+	private void runContentAutomations(CodeSystem codeSystem, Integer newDependantVersion, Set<UpgradeStage> completedStages) throws ServiceException {
+		String branchPath = codeSystem.getBranchPath();
+		Map<UpgradeStage, Future<List<ReferenceSetMember>>> changes = new EnumMap<>(UpgradeStage.class);
+		// Not shut down, that would shut down the shared executor
+		ExecutorService automationExecutor = new DelegatingSecurityContextExecutorService(executorService, SecurityContextHolder.getContext());
+		try {
+			for (UpgradeStage stage : UpgradeStage.values()) {
+				if (stage.lockDescription != null && !completedStages.contains(stage)) {
+					changes.put(stage, automationExecutor.submit(() -> findChanges(stage, codeSystem)));
+				}
+			}
+			for (Entry<UpgradeStage, Future<List<ReferenceSetMember>>> entry : changes.entrySet()) {
+				UpgradeStage stage = entry.getKey();
+				upgradeInactivationService.saveChanges(codeSystem, entry.getValue().get(), stage.lockDescription);
+				logger.info("Completed upgrade content automation {} on {}.", stage, branchPath);
+				completeStage(branchPath, newDependantVersion, completedStages, stage);
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new ServiceException("Upgrade content automation failed on " + branchPath, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException("Upgrade content automations interrupted on " + branchPath, e);
+		} finally {
+			changes.values().forEach(future -> future.cancel(true));
+		}
+	}
+
+	private List<ReferenceSetMember> findChanges(UpgradeStage stage, CodeSystem codeSystem) {
+		return switch (stage) {
+			case DESCRIPTION_INACTIVATION -> upgradeInactivationService.findDescriptionsInactivationChanges(codeSystem);
+			case LANGUAGE_REFSETS -> upgradeInactivationService.findLanguageRefsetChanges(codeSystem);
+			case ADDITIONAL_AXIOMS -> upgradeInactivationService.findAdditionalAxiomChanges(codeSystem);
+			case REBASE -> throw new IllegalArgumentException("Stage " + stage + " is not a content automation.");
+		};
+	}
+
+	private Set<UpgradeStage> getCompletedStages(String branchPath, Integer newDependantVersion) {
+		Set<UpgradeStage> completedStages = EnumSet.noneOf(UpgradeStage.class);
+		Branch branch = branchService.findLatest(branchPath);
+		if (branch == null || branch.getMetadata() == null) {
+			return completedStages;
+		}
+		String progress = branch.getMetadata().getMapOrCreate(INTERNAL_METADATA_KEY).get(UPGRADE_PROGRESS_METADATA_KEY);
+		if (progress == null || !progress.startsWith(newDependantVersion + "|")) {
+			return completedStages;
+		}
+		for (String stage : progress.substring(progress.indexOf('|') + 1).split(",")) {
+			if (!stage.isEmpty()) {
+				completedStages.add(UpgradeStage.valueOf(stage));
+			}
+		}
+		return completedStages;
+	}
+
+	private void completeStage(String branchPath, Integer newDependantVersion, Set<UpgradeStage> completedStages, UpgradeStage stage) {
+		completedStages.add(stage);
+		Metadata metadata = branchService.findLatest(branchPath).getMetadata();
+		metadata.getMapOrCreate(INTERNAL_METADATA_KEY).put(UPGRADE_PROGRESS_METADATA_KEY,
+				newDependantVersion + "|" + completedStages.stream().map(Enum::name).collect(Collectors.joining(",")));
+		branchService.updateMetadata(branchPath, metadata);
+	}
+
 	private void updateBranchMetaData(String branchPath, CodeSystemVersion newParentVersion, Branch extensionBranch, boolean isReportEmpty) {
 		final Metadata metadata = extensionBranch.getMetadata();
+		metadata.getMapOrCreate(INTERNAL_METADATA_KEY).remove(UPGRADE_PROGRESS_METADATA_KEY);
 
 		if (newParentVersion.getReleasePackage() != null) {
 			metadata.putString(DEPENDENCY_PACKAGE, newParentVersion.getReleasePackage());
@@ -242,6 +344,20 @@ public class CodeSystemUpgradeService {
 		branchService.updateMetadata(branchPath, metadata);
 	}
 
+	enum UpgradeStage {
+		REBASE(null),
+		DESCRIPTION_INACTIVATION(UpgradeInactivationService.DESCRIPTION_INACTIVATION_LOCK_DESCRIPTION),
+		LANGUAGE_REFSETS(UpgradeInactivationService.LANGUAGE_REFSETS_LOCK_DESCRIPTION),
+		ADDITIONAL_AXIOMS(UpgradeInactivationService.ADDITIONAL_AXIOMS_LOCK_DESCRIPTION);
+
+		// Content automations save their changes in a commit with this lock description
+		private final String lockDescription;
+
+		UpgradeStage(String lockDescription) {
+			this.lockDescription = lockDescription;
+		}
+	}
+
 	class CodeSystemUpgradeJobReminder extends TimerTask {
 		public void run() {
 			clearExpiredElementsFromMap();
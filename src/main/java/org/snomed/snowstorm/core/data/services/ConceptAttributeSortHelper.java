@@ -1,5 +1,7 @@
 package org.snomed.snowstorm.core.data.services;
 
+import it.unimi.dsi.fastutil.longs.Long2ShortMap;
+import it.unimi.dsi.fastutil.longs.Long2ShortOpenHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.config.SortOrderProperties;
@@ -14,6 +16,7 @@ import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -24,6 +27,7 @@ import static java.lang.Long.parseLong;
 public class ConceptAttributeSortHelper {
 
 	private static final int NEXT_GROUP_DEFAULT = 50;
+	private static final short NO_ATTRIBUTE_ORDER = Short.MIN_VALUE;
 
 	@Autowired
 	private SortOrderProperties sortOrderProperties;
@@ -31,9 +35,17 @@ public class ConceptAttributeSortHelper {
 	@Autowired
 	private QueryService queryService;
 
-	private Map<String, Map<Long, Short>> domainAttributeOrderMap;
+	@Autowired
+	private TopLevelHierarchyLookup topLevelHierarchyLookup;
+
+	// Attribute order of each top level hierarchy tag including the attributes of all hierarchies, not modified after init
+	private Map<String, Long2ShortMap> domainAttributeOrderMap;
 
-	private final Map<String, String> subHierarchyToTopLevelTagCache = Collections.synchronizedMap(new HashMap<>());
+	// Attribute order of the attributes of all hierarchies, for concepts of other hierarchies
+	private Long2ShortMap defaultAttributeOrderMap;
+
+	// Used when the top level hierarchy index has not been built or does not contain the concept
+	private final Map<String, String> subHierarchyToTopLevelTagCache = new ConcurrentHashMap<>();
 
 	private static final Pattern TAG_PATTERN = Pattern.compile("^.*\\((.*)\\)$");
 	private static final List<LanguageDialect> EN_LANGUAGE_DIALECT = Collections.singletonList(new LanguageDialect("en"));
@@ -85,7 +97,22 @@ public class ConceptAttributeSortHelper {
 
 	@PostConstruct
 	public void init() {
-		domainAttributeOrderMap = sortOrderProperties.getDomainAttributeOrderMap();
+		Map<String, Map<Long, Short>> configuredOrderMap = sortOrderProperties.getDomainAttributeOrderMap();
+		Map<Long, Short> allOrderMap = configuredOrderMap.getOrDefault("all", Collections.emptyMap());
+		domainAttributeOrderMap = new HashMap<>();
+		for (Map.Entry<String, Map<Long, Short>> entry : configuredOrderMap.entrySet()) {
+			domainAttributeOrderMap.put(entry.getKey(), createAttributeOrderMap(entry.getValue(), allOrderMap));
+		}
+		defaultAttributeOrderMap = createAttributeOrderMap(Collections.emptyMap(), allOrderMap);
+	}
+
+	private static Long2ShortMap createAttributeOrderMap(Map<Long, Short> orderMap, Map<Long, Short> allOrderMap) {
+		Long2ShortOpenHashMap attributeOrderMap = new Long2ShortOpenHashMap(orderMap);
+		// Add sorting for Is a (attribute)
+		attributeOrderMap.putAll(allOrderMap);
+		attributeOrderMap.defaultReturnValue(NO_ATTRIBUTE_ORDER);
+		attributeOrderMap.trim();
+		return attributeOrderMap;
 	}
 
 	public void sortAttributes(Iterable<Concept> concepts) {
@@ -97,12 +124,7 @@ public class ConceptAttributeSortHelper {
 				if (!domainAttributeOrderMap.containsKey(semanticTag)) {
 					semanticTag = getTopLevelHierarchyTag(semanticTag, concept);
 				}
-				Map<Long, Short> attributeOrderMap = domainAttributeOrderMap.get(semanticTag);
-				if (attributeOrderMap == null) {
-					attributeOrderMap = new HashMap<>();
-				}
-				// Add sorting for Is a (attribute)
-				attributeOrderMap.putAll(domainAttributeOrderMap.getOrDefault("all", Collections.emptyMap()));
+				Long2ShortMap attributeOrderMap = semanticTag != null ? domainAttributeOrderMap.getOrDefault(semanticTag, defaultAttributeOrderMap) : defaultAttributeOrderMap;
 
 				for (Axiom axiom : concept.getClassAxioms()) {
 					axiom.setRelationships(getSortedRelationships(axiom.getRelationships(), attributeOrderMap, concept.getConceptId()));
@@ -126,17 +148,21 @@ public class ConceptAttributeSortHelper {
 	}
 
 	private String getTopLevelHierarchyTag(String semanticTag, Concept concept) {
-		if (!subHierarchyToTopLevelTagCache.containsKey(semanticTag)) {
-			String statedParent = null;
+		String statedParent = null;
+		Set<Axiom> classAxioms = concept.getClassAxioms();
+		if (!classAxioms.isEmpty()) {
+			statedParent = getStatedParentId(classAxioms.iterator().next().getRelationships());
+		}
+		if (statedParent == null) {
+			statedParent = getStatedParentId(concept.getRelationships().stream()
+					.filter(r -> r.isActive() && Concepts.STATED_RELATIONSHIP.equals(r.getCharacteristicTypeId())).collect(Collectors.toSet()));
+		}
+		String topLevelTag = topLevelHierarchyLookup.getTopLevelTag(toLong(concept.getConceptId()), toLong(statedParent));
+		if (topLevelTag != null) {
+			return topLevelTag;
+		}
 
-			Set<Axiom> classAxioms = concept.getClassAxioms();
-			if (!classAxioms.isEmpty()) {
-				statedParent = getStatedParentId(classAxioms.iterator().next().getRelationships());
-			}
-			if (statedParent == null) {
-				statedParent = getStatedParentId(concept.getRelationships().stream()
-						.filter(r -> r.isActive() && Concepts.STATED_RELATIONSHIP.equals(r.getCharacteristicTypeId())).collect(Collectors.toSet()));
-			}
+		if (!subHierarchyToTopLevelTagCache.containsKey(semanticTag)) {
 			if (statedParent != null) {
 				try {
 					Page<ConceptMini> topLevelHierarchy = queryService.eclSearch("<!" + Concepts.SNOMEDCT_ROOT + " AND >" + statedParent, true, "MAIN", PageRequest.of(0, 1));
@@ -153,6 +179,10 @@ public class ConceptAttributeSortHelper {
 		return subHierarchyToTopLevelTagCache.get(semanticTag);
 	}
 
+	private static Long toLong(String conceptId) {
+		return conceptId != null && !conceptId.isEmpty() && Character.isDigit(conceptId.charAt(0)) ? parseLong(conceptId) : null;
+	}
+
 	private String getStatedParentId(Set<Relationship> relationships) {
 		for (Relationship relationship : relationships) {
 			if (relationship.isActive() && Concepts.ISA.equals(relationship.getTypeId())) {
@@ -167,7 +197,7 @@ public class ConceptAttributeSortHelper {
 		return getEnSemanticTag(fsn.getTerm());
 	}
 
-	private String getEnSemanticTag(String term) {
+	static String getEnSemanticTag(String term) {
 		if (term != null) {
 			Matcher matcher = TAG_PATTERN.matcher(term);
 			if (matcher.matches()) {
@@ -178,13 +208,14 @@ public class ConceptAttributeSortHelper {
 		return null;
 	}
 
-	private Set<Relationship> getSortedRelationships(Set<Relationship> relationshipSet, Map<Long, Short> attributeOrderMap, String conceptId) {
+	private Set<Relationship> getSortedRelationships(Set<Relationship> relationshipSet, Long2ShortMap attributeOrderMap, String conceptId) {
 		int originalSize = relationshipSet.size();
 
 		List<Relationship> relationships = new ArrayList<>(relationshipSet);
 		Set<Relationship> sortedUngroupedRelationships = new TreeSet<>(ACTIVE_RELATIONSHIP_COMPARATOR_WITH_GROUP_LAST);
 		for (Relationship relationship : relationships) {
-			relationship.setAttributeOrder(attributeOrderMap.get(parseLong(relationship.getTypeId())));
+			short attributeOrder = attributeOrderMap.get(parseLong(relationship.getTypeId()));
+			relationship.setAttributeOrder(attributeOrder != NO_ATTRIBUTE_ORDER ? attributeOrder : null);
 			if (relationship.isActive()) {
 				sortedUngroupedRelationships.add(relationship);
 			}
@@ -22,11 +22,13 @@ import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.repositories.*;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.core.data.services.pojo.*;
+import org.snomed.snowstorm.core.data.services.profiling.QueryProfile;
 import org.snomed.snowstorm.core.pojo.BranchTimepoint;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
 import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -45,10 +47,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import jakarta.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -127,6 +132,11 @@ public class ConceptService extends ComponentService {
 	@Autowired
 	private QueryService queryService;
 
+	@Value("${concepts.load.component-join-threads}")
+	private int componentJoinThreads;
+
+	private ExecutorService componentJoinExecutor;
+
 	private final Cache<String, AsyncConceptChangeBatch> batchConceptChanges;
 
 	private final Cache<BranchTimepoint, BranchCriteria> branchCriteriaCache = CacheBuilder.newBuilder().expireAfterAccess(Duration.ofDays(1)).build();
@@ -137,6 +147,16 @@ public class ConceptService extends ComponentService {
 		batchConceptChanges = CacheBuilder.newBuilder().expireAfterWrite(2, TimeUnit.HOURS).build();
 	}
 
+	@PostConstruct
+	public void init() {
+		componentJoinExecutor = Executors.newFixedThreadPool(componentJoinThreads);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		componentJoinExecutor.shutdownNow();
+	}
+
 	public Concept find(String id, String path) {
 		return find(id, DEFAULT_LANGUAGE_DIALECTS, path);
 	}
@@ -171,6 +191,20 @@ public class ConceptService extends ComponentService {
 		return doFind(conceptIds, languageDialects, branchCriteria, PageRequest.of(0, conceptIds.size()), true, true, true, true, path).getContent();
 	}
 
+	/**
+	 * Loads full concepts in batches using a single branch timepoint, passing each batch to the consumer as soon as it is loaded.
+	 * Used to stream large bulk loads without holding every concept in memory.
+	 */
+	public void findInBatches(String path, Collection<?> conceptIds, List<LanguageDialect> languageDialects, int batchSize, Consumer<List<Concept>> batchConsumer) {
+		if (isEmpty(conceptIds)) {
+			return;
+		}
+		BranchCriteria branchCriteria = getBranchCriteria(new BranchTimepoint(path));
+		for (List<?> batch : Iterables.partition(conceptIds, batchSize)) {
+			batchConsumer.accept(doFind(batch, languageDialects, branchCriteria, PageRequest.of(0, batch.size()), true, true, true, true, path).getContent());
+		}
+	}
+
 	public Set<String> getConceptIdsNotActiveOrNotExist(Collection<String> conceptIds, BranchCriteria branchCriteria) {
 		NativeQuery nativeSearchQuery = new NativeQueryBuilder()
 				.withQuery(bool(bq -> bq
@@ -431,33 +465,42 @@ public class ConceptService extends ComponentService {
 			concept.getRelationships().clear();
 		}
 
-		Map<String, ConceptMini> conceptMiniMap = new HashMap<>();
+		// Joins may run concurrently so the placeholder map must be thread-safe
+		Map<String, ConceptMini> conceptMiniMap = new ConcurrentHashMap<>();
 
+		// Axioms, identifiers and annotations are joined on the bounded executor while relationships are joined on this thread.
+		// Each join adds to a different collection of the concepts.
+		List<Future<?>> joins = new ArrayList<>();
 		if (includeRelationships) {
-			// Fetch Relationships
-			joinRelationships(conceptIdMap, conceptMiniMap, languageDialects, branchPath, branchCriteria, timer, false);
-
-			// Fetch Axioms
-			for (List<String> conceptIds : Iterables.partition(conceptIdMap.keySet(), CLAUSE_LIMIT)) {
-				queryBuilder.withQuery(bool(bq -> bq
-						.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
-						.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
-						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))))
-						.withPageable(LARGE_PAGE);
-
-				try (final SearchHitsIterator<ReferenceSetMember> axiomMembers = elasticsearchOperations.searchForStream(queryBuilder.build(), ReferenceSetMember.class)) {
-					axiomMembers.forEachRemaining(axiomMember -> joinAxiom(axiomMember.getContent(), conceptIdMap, conceptMiniMap, languageDialects));
-				}
-			}
-			timer.checkpoint("get axioms " + getFetchCount(conceptIdMap.size()));
+			joins.add(componentJoinExecutor.submit(QueryProfile.propagate(() -> joinAxioms(conceptIdMap, conceptMiniMap, languageDialects, branchCriteria))));
 		}
-
 		if (includeIdentifiers) {
-			identifierComponentService.joinIdentifiers(branchCriteria, conceptIdMap, conceptMiniMap, languageDialects, timer);
+			joins.add(componentJoinExecutor.submit(QueryProfile.propagate(() -> identifierComponentService.joinIdentifiers(branchCriteria, conceptIdMap, conceptMiniMap, languageDialects, null))));
 		}
-
 		if (includeAnnotations) {
-			joinAnnotations(branchCriteria, conceptIdMap, conceptMiniMap, languageDialects, timer);
+			joins.add(componentJoinExecutor.submit(QueryProfile.propagate(() -> joinAnnotations(branchCriteria, conceptIdMap, conceptMiniMap, languageDialects, null))));
+		}
+
+		try {
+			if (includeRelationships) {
+				joinRelationships(conceptIdMap, conceptMiniMap, languageDialects, branchPath, branchCriteria, timer, false);
+			}
+			for (Future<?> join : joins) {
+				join.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeServiceException("Interrupted while loading concept components.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new RuntimeServiceException("Failed to load concept components.", e.getCause());
+		} finally {
+			joins.forEach(join -> join.cancel(true));
+		}
+		if (!joins.isEmpty()) {
+			timer.checkpoint("get axioms, identifiers and annotations " + getFetchCount(conceptIdMap.size()));
 		}
 
 		// Fetch ConceptMini definition statuses
@@ -489,6 +532,21 @@ public class ConceptService extends ComponentService {
 		return concepts;
 	}
 
+	private void joinAxioms(Map<String, Concept> conceptIdMap, Map<String, ConceptMini> conceptMiniMap, List<LanguageDialect> languageDialects, BranchCriteria branchCriteria) {
+		NativeQueryBuilder queryBuilder = new NativeQueryBuilder();
+		for (List<String> conceptIds : Iterables.partition(conceptIdMap.keySet(), CLAUSE_LIMIT)) {
+			queryBuilder.withQuery(bool(bq -> bq
+					.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
+					.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
+					.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))))
+					.withPageable(LARGE_PAGE);
+
+			try (final SearchHitsIterator<ReferenceSetMember> axiomMembers = elasticsearchOperations.searchForStream(queryBuilder.build(), ReferenceSetMember.class)) {
+				axiomMembers.forEachRemaining(axiomMember -> joinAxiom(axiomMember.getContent(), conceptIdMap, conceptMiniMap, languageDialects));
+			}
+		}
+	}
+
 	public void joinRelationships(Map<String, Concept> conceptIdMap, Map<String, ConceptMini> typeAndTargetConceptMiniMap, List<LanguageDialect> languageDialects,
 			String branchPath, BranchCriteria branchCriteria, TimerUtil timer, boolean activeOnly) {
 
@@ -34,6 +34,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -342,6 +343,47 @@ public class ConceptUpdateHelper extends ComponentService {
 		return new PersistedComponents(newVersionConcepts, descriptionsToPersist, /* identifiersToPersist */ Collections.emptySet() , relationshipsToPersist, refsetMembersToPersist);
 	}
 
+	/**
+	 * Saves changes to relationships in batch within an open commit, without loading, validating or saving their concepts.
+	 * For changes which only affect relationships, such as saving classification results. The module, release details and effective time
+	 * of each relationship follow the same rules as when the whole concept is saved. This method does not close the commit.
+	 * @param newVersionConcepts	Concepts holding their module and the new versions of the changed relationships only. Relationships without an id are created.
+	 * @param existingConceptsMap	Concepts holding the existing versions of the same relationships only. Relationships missing from the new version
+	 *                                 are inactivated if released, otherwise deleted.
+	 * @param commit				The commit in which to persist the relationships.
+	 * @return	The relationships which have been persisted.
+	 * @throws ServiceException	If there is a problem reserving identifiers.
+	 */
+	public Collection<Relationship> saveRelationshipChanges(Collection<Concept> newVersionConcepts, Map<String, Concept> existingConceptsMap, Commit commit) throws ServiceException {
+		Metadata metadata = branchService.findBranchOrThrow(commit.getBranch().getPath(), true).getMetadata();
+		String defaultModuleId = metadata.getString(Config.DEFAULT_MODULE_ID_KEY);
+		List<String> expectedExtensionModules = metadata.getList(Config.EXPECTED_EXTENSION_MODULES);
+		String defaultNamespace = metadata.getString(Config.DEFAULT_NAMESPACE_KEY);
+
+		IdentifierReservedBlock reservedIds = identifierService.reserveIdentifierBlock(newVersionConcepts, defaultNamespace);
+		for (Concept newVersionConcept : newVersionConcepts) {
+			for (Relationship relationship : newVersionConcept.getRelationships()) {
+				relationship.setSourceId(newVersionConcept.getConceptId());
+				if (relationship.getRelationshipId() == null) {
+					relationship.setRelationshipId(reservedIds.getNextId(ComponentType.Relationship).toString());
+				}
+			}
+		}
+
+		// Concepts are independent of each other
+		Collection<Relationship> relationshipsToPersist = new ConcurrentLinkedQueue<>();
+		newVersionConcepts.parallelStream().forEach(newVersionConcept ->
+				markDeletionsAndUpdates(newVersionConcept, existingConceptsMap.get(newVersionConcept.getConceptId()), null, Concept::getRelationships,
+						defaultModuleId, expectedExtensionModules, relationshipsToPersist, false));
+
+		doSaveBatchRelationships(relationshipsToPersist, commit);
+		doDeleteMembersWhereReferencedComponentDeleted(commit.getEntitiesDeleted(), commit);
+
+		// Store assigned identifiers for registration with CIS
+		identifierService.persistAssignedIdsForRegistration(reservedIds);
+		return relationshipsToPersist;
+	}
+
 	private <C extends SnomedComponent<?>, T extends SnomedComponent<?>> Collection<C> getExistingComponents(T existingConcept, Function<T, Collection<C>> getter) {
 		if (existingConcept != null) {
 			final Collection<C> collection = getter.apply(existingConcept);
@@ -0,0 +1,144 @@
+package org.snomed.snowstorm.core.data.services;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import jakarta.annotation.PostConstruct;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.LongPredicate;
+
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static io.kaicode.elasticvc.helper.QueryHelper.existsQuery;
+import static io.kaicode.elasticvc.helper.QueryHelper.termQuery;
+import static org.snomed.snowstorm.core.data.domain.ReferenceSetMember.LanguageFields.ACCEPTABILITY_ID;
+import static org.snomed.snowstorm.core.data.domain.ReferenceSetMember.LanguageFields.ACCEPTABILITY_ID_FIELD_PATH;
+
+/**
+ * Holds an in-memory index of the language reference set acceptability of descriptions for a few recently queried branches,
+ * from language reference set and acceptability to description ids. ECL dialect filters on large sets of descriptions use the index
+ * rather than a language reference set member query filtered by every description id.
+ * <p>
+ * The index is held apart from the description documents so that language reference set changes never write descriptions.
+ * The index of a branch is rebuilt when the language reference set members visible on the branch change, see {@link BranchIndexCache}.
+ */
+@Service
+public class DescriptionAcceptabilityIndexService {
+
+	@Value("${ecl.dialect-filter.index.min-descriptions}")
+	private int minDescriptions;
+
+	@Value("${ecl.dialect-filter.index.max-branches}")
+	private int maxBranches;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
+	@Autowired
+	private BranchService branchService;
+
+	private BranchIndexCache<Long2ObjectMap<Long2ObjectMap<Roaring64Bitmap>>> indexCache;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		indexCache = new BranchIndexCache<>("description acceptability", maxBranches, ACCEPTABILITY_ID_FIELD_PATH, this::buildIndex,
+				branchService, elasticsearchOperations);
+	}
+
+	/**
+	 * @return true if dialect filters on this many descriptions should use the index.
+	 */
+	public boolean isIndexUsed(int descriptionCount) {
+		return maxBranches > 0 && descriptionCount >= minDescriptions;
+	}
+
+	/**
+	 * @param acceptabilityByRefset Acceptability ids for each language reference set, an empty set matches any acceptability.
+	 * @return Test of whether a description has an active member in one of the reference sets with one of the acceptability values,
+	 * or null if the index does not cover the branch timepoint and should not be built for it.
+	 */
+	public LongPredicate findAcceptable(Map<Long, Set<Long>> acceptabilityByRefset, BranchCriteria branchCriteria) {
+		Long2ObjectMap<Long2ObjectMap<Roaring64Bitmap>> index = indexCache.getIndex(branchCriteria);
+		if (index == null) {
+			return null;
+		}
+		List<Roaring64Bitmap> bitmaps = new ArrayList<>();
+		for (Map.Entry<Long, Set<Long>> entry : acceptabilityByRefset.entrySet()) {
+			Long2ObjectMap<Roaring64Bitmap> byAcceptability = index.get(entry.getKey().longValue());
+			if (byAcceptability == null) {
+				continue;
+			}
+			if (entry.getValue().isEmpty()) {
+				bitmaps.addAll(byAcceptability.values());
+			} else {
+				for (Long acceptabilityId : entry.getValue()) {
+					Roaring64Bitmap bitmap = byAcceptability.get(acceptabilityId.longValue());
+					if (bitmap != null) {
+						bitmaps.add(bitmap);
+					}
+				}
+			}
+		}
+		return descriptionId -> {
+			for (Roaring64Bitmap bitmap : bitmaps) {
+				if (bitmap.contains(descriptionId)) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+
+	private Long2ObjectMap<Long2ObjectMap<Roaring64Bitmap>> buildIndex(BranchCriteria branchCriteria) {
+		long start = System.currentTimeMillis();
+		NativeQuery query = new NativeQueryBuilder()
+				.withQuery(bool(b -> b
+						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+						.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true))
+						.must(existsQuery(ACCEPTABILITY_ID_FIELD_PATH))))
+				.withSourceFilter(new FetchSourceFilter(new String[]{ReferenceSetMember.Fields.REFSET_ID,
+						ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ACCEPTABILITY_ID_FIELD_PATH}, null))
+				.withPageable(LARGE_PAGE)
+				.build();
+
+		Long2ObjectMap<Long2ObjectMap<Roaring64Bitmap>> acceptability = new Long2ObjectOpenHashMap<>();
+		int count = 0;
+		try (SearchHitsIterator<ReferenceSetMember> stream = elasticsearchOperations.searchForStream(query, ReferenceSetMember.class)) {
+			while (stream.hasNext()) {
+				ReferenceSetMember member = stream.next().getContent();
+				String acceptabilityId = member.getAdditionalField(ACCEPTABILITY_ID);
+				if (acceptabilityId == null || acceptabilityId.isEmpty() || !acceptabilityId.chars().allMatch(Character::isDigit)) {
+					continue;
+				}
+				acceptability.computeIfAbsent(Long.parseLong(member.getRefsetId()), id -> new Long2ObjectOpenHashMap<>())
+						.computeIfAbsent(Long.parseLong(acceptabilityId), id -> new Roaring64Bitmap())
+						.addLong(Long.parseLong(member.getReferencedComponentId()));
+				count++;
+			}
+		}
+		acceptability.values().forEach(byAcceptability -> byAcceptability.values().forEach(Roaring64Bitmap::runOptimize));
+		logger.info("Built description acceptability index for {}@{} with {} members in {} ms.",
+				branchCriteria.getBranchPath(), branchCriteria.getTimepoint().getTime(), count, System.currentTimeMillis() - start);
+		return acceptability;
+	}
+
+	public void clearCache() {
+		indexCache.clear();
+	}
+}
@@ -57,6 +57,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.LongPredicate;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -93,6 +94,9 @@ public class DescriptionService extends ComponentService {
 	@Autowired
 	private DialectConfigurationService dialectConfigurationService;
 
+	@Autowired
+	private DescriptionAcceptabilityIndexService descriptionAcceptabilityIndexService;
+
 	@Value("${search.refset.aggregation.size}")
 	private int refsetAggregationSearchSize;
 
@@ -105,6 +109,9 @@ public class DescriptionService extends ComponentService {
 	@Value("${search.description.aggregation.maxProcessableResultsSize}")
 	private int aggregationMaxProcessableResultsSize;
 
+	@Value("${search.description.type-ahead.batch-size}")
+	private int typeAheadBatchSize;
+
 	public enum SearchMode {
 		STANDARD, REGEX, WHOLE_WORD, WILDCARD
 	}
@@ -564,28 +571,40 @@ public class DescriptionService extends ComponentService {
 
 		if (!descriptionToConceptMap.isEmpty() && !dialectFilters.isEmpty()) {
 			for (DialectFilter dialectFilter : dialectFilters) {
+				boolean equals = isEquals(dialectFilter.getBooleanComparisonOperator());
+				Map<String, Set<String>> acceptabilityMap;
+				if (dialectFilter.getSubExpressionConstraint() != null) {
+					acceptabilityMap = new HashMap<>();
+					for (String dialectId : runExpressionConstraint(branchCriteria, eclQueryService, dialectFilter.getSubExpressionConstraint())) {
+						acceptabilityMap.put(dialectId, Collections.emptySet());
+					}
+				} else {
+					acceptabilityMap = dialectAcceptabilitiesToMap(dialectFilter.getDialectAcceptabilities(), branchCriteria, eclQueryService);
+				}
+
+				if (equals && descriptionAcceptabilityIndexService.isIndexUsed(descriptionToConceptMap.size())) {
+					LongPredicate acceptable = descriptionAcceptabilityIndexService.findAcceptable(toLongs(acceptabilityMap), branchCriteria);
+					if (acceptable != null) {
+						descriptionToConceptMap.keySet().removeIf(descriptionId -> !acceptable.test(descriptionId));
+						continue;
+					}
+				}
+
 				BoolQuery.Builder masterLangRefsetQuery = bool().must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class));
 				masterLangRefsetQuery.must(termQuery(SnomedComponent.Fields.ACTIVE, true));
 				masterLangRefsetQuery.filter(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, descriptionToConceptMap.keySet()));
 
-				boolean equals = isEquals(dialectFilter.getBooleanComparisonOperator());
 				BoolQuery.Builder acceptabilityQuery = bool();
-				if (dialectFilter.getSubExpressionConstraint() != null) {
-					Set<String> dialects = runExpressionConstraint(branchCriteria, eclQueryService, dialectFilter.getSubExpressionConstraint());
-					if (dialects.isEmpty()) {
-						dialects.add(NO_MATCH);
-					}
-					acceptabilityQuery.must(termsQuery(REFSET_ID, dialects));
-				} else {
-					Map<String, Set<String>> acceptabilityMap = dialectAcceptabilitiesToMap(dialectFilter.getDialectAcceptabilities(), branchCriteria, eclQueryService);
-					for (Map.Entry<String, Set<String>> stringSetEntry : acceptabilityMap.entrySet()) {
-						BoolQuery.Builder langRefsetQuery = bool();
-						langRefsetQuery.must(termQuery(REFSET_ID, stringSetEntry.getKey()));
-						if (!stringSetEntry.getValue().isEmpty()) {
-							langRefsetQuery.must(termsQuery(ACCEPTABILITY_ID_FIELD_PATH, stringSetEntry.getValue()));
-						}
-						acceptabilityQuery.should(langRefsetQuery.build()._toQuery());
+				if (acceptabilityMap.isEmpty()) {
+					acceptabilityQuery.must(termQuery(REFSET_ID, NO_MATCH));
+				}
+				for (Map.Entry<String, Set<String>> stringSetEntry : acceptabilityMap.entrySet()) {
+					BoolQuery.Builder langRefsetQuery = bool();
+					langRefsetQuery.must(termQuery(REFSET_ID, stringSetEntry.getKey()));
+					if (!stringSetEntry.getValue().isEmpty()) {
+						langRefsetQuery.must(termsQuery(ACCEPTABILITY_ID_FIELD_PATH, stringSetEntry.getValue()));
 					}
+					acceptabilityQuery.should(langRefsetQuery.build()._toQuery());
 				}
 				addClause(acceptabilityQuery.build()._toQuery(), masterLangRefsetQuery, equals);
 
@@ -613,6 +632,16 @@ public class DescriptionService extends ComponentService {
 		return booleanComparisonOperator.equals("=");
 	}
 
+	private Map<Long, Set<Long>> toLongs(Map<String, Set<String>> acceptabilityMap) {
+		Map<Long, Set<Long>> longs = new HashMap<>();
+		for (Map.Entry<String, Set<String>> entry : acceptabilityMap.entrySet()) {
+			if (!entry.getKey().equals(NO_MATCH)) {
+				longs.put(parseLong(entry.getKey()), entry.getValue().stream().map(Long::parseLong).collect(Collectors.toSet()));
+			}
+		}
+		return longs;
+	}
+
 	private Map<String, Set<String>> dialectAcceptabilitiesToMap(List<DialectAcceptability> dialectAcceptabilities, BranchCriteria branchCriteria, ECLQueryService eclQueryService) {
 		Map<String, Set<String>> acceptabilityMap = new HashMap<>();
 		for (DialectAcceptability dialectAcceptability : dialectAcceptabilities) {
@@ -840,6 +869,77 @@ public class DescriptionService extends ComponentService {
 		return new DescriptionMatches(descriptions, conceptIds, descriptionQuery);
 	}
 
+	/**
+	 * Counts the descriptions matching a type-ahead search, used to choose whether to restrict the description search to the concepts of an ECL.
+	 */
+	long countForTypeAhead(DescriptionCriteria criteria, BranchCriteria branchCriteria) {
+		return elasticsearchOperations.count(new NativeQueryBuilder()
+				.withQuery(getTypeAheadQuery(criteria, branchCriteria, null))
+				.build(), Description.class);
+	}
+
+	/**
+	 * Finds concept ids for a type-ahead search, in the same term order as {@link #findDescriptionAndConceptIds}.
+	 * Matching descriptions are streamed in small batches and the search is closed as soon as enough distinct concepts
+	 * have been accepted by the concept filter, so the cost is bounded by the page requested rather than the number of matches.
+	 * @param conceptIdFilter optional set of concepts to restrict the description search to
+	 * @param conceptFilter returns the subset of the given concept ids that may be included in the results
+	 * @param resultsComplete tested after each concept id is added, returns true when no more results are required
+	 */
+	List<Long> findConceptIdsForTypeAhead(DescriptionCriteria criteria, BranchCriteria branchCriteria, Collection<Long> conceptIdFilter,
+			Function<Collection<Long>, Set<Long>> conceptFilter, Predicate<List<Long>> resultsComplete, TimerUtil timer) {
+
+		NativeQuery searchQuery = new NativeQueryBuilder()
+				.withQuery(getTypeAheadQuery(criteria, branchCriteria, conceptIdFilter))
+				.withSourceFilter(new FetchSourceFilter(new String[]{Description.Fields.CONCEPT_ID}, null))
+				.withPageable(PageRequest.of(0, typeAheadBatchSize))
+				.build();
+		addTermSort(searchQuery);
+
+		List<Long> conceptIds = new LongArrayList();
+		Set<Long> conceptIdsSeen = new LongOpenHashSet();
+		List<Long> candidates = new LongArrayList();
+		int descriptionsRead = 0;
+		boolean complete = false;
+		try (SearchHitsIterator<Description> stream = elasticsearchOperations.searchForStream(searchQuery, Description.class)) {
+			while (!complete && stream.hasNext()) {
+				long conceptId = parseLong(stream.next().getContent().getConceptId());
+				descriptionsRead++;
+				if (conceptIdsSeen.add(conceptId)) {
+					candidates.add(conceptId);
+				}
+				if (candidates.size() == typeAheadBatchSize || (!candidates.isEmpty() && !stream.hasNext())) {
+					Set<Long> accepted = conceptFilter.apply(candidates);
+					for (Long candidate : candidates) {
+						if (!complete && accepted.contains(candidate)) {
+							conceptIds.add(candidate);
+							complete = resultsComplete.test(conceptIds);
+						}
+					}
+					candidates.clear();
+				}
+			}
+		}
+		timer.checkpoint(String.format("Type-ahead read %s descriptions for %s concepts", descriptionsRead, conceptIds.size()));
+		return conceptIds;
+	}
+
+	private Query getTypeAheadQuery(DescriptionCriteria criteria, BranchCriteria branchCriteria, Collection<Long> conceptIdFilter) {
+		final BoolQuery.Builder descriptionQueryBuilder = bool();
+		descriptionQueryBuilder.must(branchCriteria.getEntityBranchCriteria(Description.class));
+		addTermClauses(criteria.getTerm(), criteria.getSearchMode(), criteria.getSearchLanguageCodes(), criteria.getType(), descriptionQueryBuilder);
+		if (criteria.getActive() != null) {
+			descriptionQueryBuilder.must(termQuery(Description.Fields.ACTIVE, criteria.getActive()));
+		}
+		if (!CollectionUtils.isEmpty(criteria.getModules())) {
+			descriptionQueryBuilder.must(termsQuery(Description.Fields.MODULE_ID, criteria.getModules()));
+		}
+		if (conceptIdFilter != null) {
+			descriptionQueryBuilder.filter(termsQuery(Description.Fields.CONCEPT_ID, conceptIdFilter));
+		}
+		return descriptionQueryBuilder.build()._toQuery();
+	}
+
 	private Set<Long> filterOrderedSet(Set<Long> orderedIds, List<Long> idsToKeep) {
 		Set<Long> newSet = new LongLinkedOpenHashSet();
 		for (Long orderedId : orderedIds) {
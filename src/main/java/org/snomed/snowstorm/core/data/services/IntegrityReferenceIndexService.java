@@ -0,0 +1,290 @@
+package org.snomed.snowstorm.core.data.services;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static io.kaicode.elasticvc.helper.QueryHelper.termQuery;
+import static io.kaicode.elasticvc.helper.QueryHelper.termsQuery;
+import static java.lang.Long.parseLong;
+import static org.snomed.snowstorm.core.data.domain.SnomedComponent.Fields.ACTIVE;
+
+/**
+ * Reverse index of the concept references used by the integrity check, for each of a few recently checked branches.
+ * The index counts, for each concept, the active stated relationships and stated semantic index entries which refer to it,
+ * as a source, type or destination, or as a parent or attribute type or value from an axiom.
+ * <p>
+ * An index is built in the background when a branch is first checked and is then kept up to date from the components written
+ * and replaced by each content commit on the branch, so that the integrity check of a commit only searches for the components
+ * referring to inactivated concepts which are still referenced. A rebase or promotion drops the index of the branch,
+ * it is built again when next needed.
+ */
+@Service
+public class IntegrityReferenceIndexService {
+
+	@Value("${integrity-check.reference-index.enabled}")
+	private boolean enabled;
+
+	@Value("${integrity-check.reference-index.max-branches}")
+	private int maxBranches;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
+	private Cache<String, ReferenceIndex> indexes;
+	private final Set<String> indexesBuilding = ConcurrentHashMap.newKeySet();
+	private ExecutorService buildExecutor;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		indexes = CacheBuilder.newBuilder()
+				.maximumSize(maxBranches)
+				.expireAfterAccess(Duration.ofHours(1))
+				.build();
+		buildExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("integrity-reference-index-%d").setDaemon(true).build());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		buildExecutor.shutdownNow();
+	}
+
+	/**
+	 * @param timepoint The head of the branch, or the timepoint of the commit being completed, which the branch criteria select.
+	 * @return The concepts of the given set which are still referenced, or null if the branch is not indexed at this timepoint yet.
+	 * In that case an index is built in the background.
+	 */
+	public Set<Long> findReferenced(String path, Date timepoint, BranchCriteria branchCriteria, Set<Long> conceptIds) {
+		if (!enabled) {
+			return null;
+		}
+		ReferenceIndex index = indexes.getIfPresent(path);
+		if (index != null) {
+			Set<Long> referenced = index.findReferenced(timepoint.getTime(), conceptIds);
+			if (referenced != null) {
+				return referenced;
+			}
+		}
+		if (indexesBuilding.add(path)) {
+			buildExecutor.submit(() -> {
+				try {
+					indexes.put(path, buildIndex(path, timepoint, branchCriteria));
+				} catch (RuntimeException e) {
+					logger.warn("Failed to build the integrity reference index of {}.", path, e);
+				} finally {
+					indexesBuilding.remove(path);
+				}
+			});
+		}
+		return null;
+	}
+
+	/**
+	 * Brings the index of the branch up to date with a commit which is about to complete.
+	 * Called by the integrity service commit listener before it checks the commit.
+	 */
+	public void updateForCommit(Commit commit) {
+		String path = commit.getBranch().getPath();
+		ReferenceIndex index = indexes.getIfPresent(path);
+		if (index == null) {
+			return;
+		}
+		if (commit.getCommitType() != Commit.CommitType.CONTENT) {
+			// The branch now shows different ancestor content
+			indexes.invalidate(path);
+			return;
+		}
+		long timepoint = commit.getTimepoint().getTime();
+		try {
+			ReferenceIndexDelta delta = new ReferenceIndexDelta();
+			collectCommitChanges(commit, Relationship.class, delta);
+			collectCommitChanges(commit, QueryConcept.class, delta);
+			if (!index.apply(commit.getBranch().getHead().getTime(), timepoint, delta)) {
+				indexes.invalidate(path);
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Failed to update the integrity reference index of {} for commit {}, dropping the index.", path, timepoint, e);
+			indexes.invalidate(path);
+		}
+	}
+
+	boolean isIndexed(String path, Date timepoint) {
+		ReferenceIndex index = indexes.getIfPresent(path);
+		return index != null && index.getHead() == timepoint.getTime();
+	}
+
+	ReferenceIndex buildIndex(String path, Date timepoint, BranchCriteria branchCriteria) {
+		long start = System.currentTimeMillis();
+		ReferenceIndexDelta delta = new ReferenceIndexDelta();
+		streamReferences(Relationship.class, bool(b -> b.must(branchCriteria.getEntityBranchCriteria(Relationship.class))), delta.added);
+		streamReferences(QueryConcept.class, bool(b -> b.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))), delta.added);
+		ReferenceIndex index = new ReferenceIndex(timepoint.getTime(), delta.added);
+		logger.info("Built integrity reference index of {}@{} with {} referenced concepts in {} ms.", path, timepoint.getTime(), delta.added.size(),
+				System.currentTimeMillis() - start);
+		return index;
+	}
+
+	private void collectCommitChanges(Commit commit, Class<?> type, ReferenceIndexDelta delta) {
+		String path = commit.getBranch().getPath();
+		long timepoint = commit.getTimepoint().getTime();
+		// Versions written by this commit
+		streamReferences(type, bool(b -> b
+				.must(termQuery("path", path))
+				.must(termQuery("start", timepoint))
+				.mustNot(termQuery("end", timepoint))), delta.added);
+		// Versions on this branch ended by this commit
+		streamReferences(type, bool(b -> b
+				.must(termQuery("path", path))
+				.must(termQuery("end", timepoint))
+				.mustNot(termQuery("start", timepoint))), delta.removed);
+		// Versions on ancestor branches replaced by this commit
+		Set<String> versionsReplaced = commit.getEntityVersionsReplaced().getOrDefault(type.getSimpleName(), Collections.emptySet());
+		if (!versionsReplaced.isEmpty()) {
+			streamReferences(type, bool(b -> b.must(termsQuery("_id", versionsReplaced))), delta.removed);
+		}
+	}
+
+	private void streamReferences(Class<?> type, Query query, Long2IntOpenHashMap referenceCounts) {
+		if (type == Relationship.class) {
+			NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
+					.withQuery(query)
+					.withFilter(bool(b -> b
+							.must(termQuery(ACTIVE, true))
+							.mustNot(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP))))
+					.withSourceFilter(new FetchSourceFilter(new String[]{Relationship.Fields.SOURCE_ID, Relationship.Fields.TYPE_ID, Relationship.Fields.DESTINATION_ID}, null))
+					.withPageable(LARGE_PAGE);
+			try (SearchHitsIterator<Relationship> stream = elasticsearchOperations.searchForStream(queryBuilder.build(), Relationship.class)) {
+				stream.forEachRemaining(hit -> {
+					Relationship relationship = hit.getContent();
+					referenceCounts.addTo(parseLong(relationship.getSourceId()), 1);
+					referenceCounts.addTo(parseLong(relationship.getTypeId()), 1);
+					if (relationship.getDestinationId() != null) {
+						referenceCounts.addTo(parseLong(relationship.getDestinationId()), 1);
+					}
+				});
+			}
+		} else {
+			NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
+					.withQuery(query)
+					.withFilter(termQuery(QueryConcept.Fields.STATED, true))
+					.withSourceFilter(new FetchSourceFilter(new String[]{QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.PARENTS, QueryConcept.Fields.ATTR_MAP}, null))
+					.withPageable(LARGE_PAGE);
+			try (SearchHitsIterator<QueryConcept> stream = elasticsearchOperations.searchForStream(queryBuilder.build(), QueryConcept.class)) {
+				stream.forEachRemaining(hit -> forEachReference(hit.getContent(), conceptId -> referenceCounts.addTo(conceptId, 1)));
+			}
+		}
+	}
+
+	// Parents, attribute types and attribute values of the stated form. Concrete values are not concepts.
+	static void forEachReference(QueryConcept queryConcept, LongConsumer consumer) {
+		if (queryConcept.getParents() != null) {
+			for (Long parent : queryConcept.getParents()) {
+				consumer.accept(parent);
+			}
+		}
+		Map<Integer, Map<String, List<Object>>> groupedAttributes = queryConcept.getGroupedAttributesMap();
+		if (groupedAttributes == null) {
+			return;
+		}
+		for (Map<String, List<Object>> group : groupedAttributes.values()) {
+			for (Map.Entry<String, List<Object>> attribute : group.entrySet()) {
+				consumer.accept(parseLong(attribute.getKey()));
+				for (Object value : attribute.getValue()) {
+					if (value instanceof String conceptId && !conceptId.isEmpty() && conceptId.chars().allMatch(Character::isDigit)) {
+						consumer.accept(parseLong(conceptId));
+					}
+				}
+			}
+		}
+	}
+
+	private static final class ReferenceIndexDelta {
+		private final Long2IntOpenHashMap added = new Long2IntOpenHashMap();
+		private final Long2IntOpenHashMap removed = new Long2IntOpenHashMap();
+	}
+
+	static final class ReferenceIndex {
+
+		private long head;
+		private final Long2IntOpenHashMap referenceCounts;
+
+		ReferenceIndex(long head, Long2IntOpenHashMap referenceCounts) {
+			this.head = head;
+			this.referenceCounts = referenceCounts;
+		}
+
+		synchronized long getHead() {
+			return head;
+		}
+
+		/**
+		 * @return The referenced concepts or null if the index is not at this timepoint.
+		 */
+		synchronized Set<Long> findReferenced(long timepoint, Set<Long> conceptIds) {
+			if (timepoint != head) {
+				return null;
+			}
+			Set<Long> referenced = new LongOpenHashSet();
+			for (Long conceptId : conceptIds) {
+				if (referenceCounts.get((long) conceptId) > 0) {
+					referenced.add(conceptId);
+				}
+			}
+			return referenced;
+		}
+
+		/**
+		 * @return false if the index was not at the previous head of the branch so could not be updated.
+		 */
+		synchronized boolean apply(long previousHead, long newHead, ReferenceIndexDelta delta) {
+			if (head == newHead) {
+				return true;
+			}
+			if (head != previousHead) {
+				return false;
+			}
+			delta.added.long2IntEntrySet().fastForEach(entry -> referenceCounts.addTo(entry.getLongKey(), entry.getIntValue()));
+			delta.removed.long2IntEntrySet().fastForEach(entry -> {
+				long conceptId = entry.getLongKey();
+				int removed = entry.getIntValue();
+				// addTo returns the count before the change
+				int previousCount = referenceCounts.addTo(conceptId, -removed);
+				if (previousCount - removed <= 0) {
+					referenceCounts.remove(conceptId);
+				}
+			});
+			head = newHead;
+			return true;
+		}
+	}
+}
@@ -2,14 +2,18 @@ package org.snomed.snowstorm.core.data.services;
 
 import ch.qos.logback.classic.Level;
 import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonData;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.kaicode.elasticvc.api.*;
 import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
 import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
-
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.otf.owltoolkit.conversion.ConversionException;
@@ -17,7 +21,9 @@ import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.services.pojo.IntegrityIssueReport;
 import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ConceptIdSet;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHitsIterator;
 import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
@@ -25,6 +31,13 @@ import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import static java.lang.Long.parseLong;
 import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.*;
@@ -39,6 +52,11 @@ public class IntegrityService extends ComponentService implements CommitListener
 
 	public static final String FAILED_TO_DESERIALISE_AXIOM_DURING_REFERENCE_INTEGRITY_CHECK = "Failed to deserialise axiom during reference integrity check.";
 
+	private static final int RELATIONSHIP_ID_PARTITIONS = 9;
+
+	@Value("${integrity-check.full.threads}")
+	private int fullCheckThreads;
+
 	@Autowired
 	private ElasticsearchOperations elasticsearchOperations;
 
@@ -60,12 +78,28 @@ public class IntegrityService extends ComponentService implements CommitListener
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private IntegrityReferenceIndexService integrityReferenceIndexService;
+
 	public static final String INTEGRITY_ISSUE_METADATA_KEY = "integrityIssue";
 
+	private ExecutorService fullCheckExecutor;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
+	@PostConstruct
+	public void init() {
+		fullCheckExecutor = Executors.newFixedThreadPool(fullCheckThreads, new ThreadFactoryBuilder().setNameFormat("integrity-check-%d").setDaemon(true).build());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		fullCheckExecutor.shutdownNow();
+	}
+
 	@Override
 	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		integrityReferenceIndexService.updateForCommit(commit);
 		final String integrityIssueString = commit.getBranch().getMetadata().getMapOrCreate(INTERNAL_METADATA_KEY).get(INTEGRITY_ISSUE_METADATA_KEY);
 		if (Boolean.parseBoolean(integrityIssueString)) {
 			try {
@@ -77,7 +111,7 @@ public class IntegrityService extends ComponentService implements CommitListener
 				if (codeSystem.getBranchPath().equals(commit.getBranch().getPath())) {
 					// Run integrity check for content changed only on the CodeSystem branch
 					BranchCriteria branchCriteriaIncludingOpenCommit = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
-					integrityIssueReport = findChangedComponentsWithBadIntegrityNotFixed(branchCriteriaIncludingOpenCommit, commit.getBranch());
+					integrityIssueReport = findChangedComponentsWithBadIntegrityNotFixed(branchCriteriaIncludingOpenCommit, commit.getBranch(), commit.getTimepoint());
 				} else {
 					// check with fix branch against code system branch
 					integrityIssueReport = findChangedComponentsWithBadIntegrityNotFixed(commit.getBranch(), codeSystem.getBranchPath());
@@ -97,6 +131,13 @@ public class IntegrityService extends ComponentService implements CommitListener
 	}
 
 	public IntegrityIssueReport findChangedComponentsWithBadIntegrityNotFixed(BranchCriteria branchCriteria, Branch branch) throws ServiceException {
+		return findChangedComponentsWithBadIntegrityNotFixed(branchCriteria, branch, branch.getHead());
+	}
+
+	/**
+	 * @param timepoint The branch head or, during a commit, the commit timepoint which the branch criteria select.
+	 */
+	private IntegrityIssueReport findChangedComponentsWithBadIntegrityNotFixed(BranchCriteria branchCriteria, Branch branch, Date timepoint) throws ServiceException {
 
 		if (branch.getPath().equals("MAIN")) {
 			throw new RuntimeServiceException("This function can not be used on the MAIN branch. " +
@@ -115,49 +156,59 @@ public class IntegrityService extends ComponentService implements CommitListener
 		Set<Long> deletedOrInactiveConcepts = findDeletedOrInactivatedConcepts(branch, branchCriteria);
 		timer.checkpoint("Collect deleted or inactive concepts: " + deletedOrInactiveConcepts.size());
 
-		// Then find the relationships with bad integrity
-		try (SearchHitsIterator<Relationship> badRelationshipsStream = elasticsearchOperations.searchForStream(
-				new NativeQueryBuilder()
-						.withQuery(bool(b -> b
-								.must(branchCriteria.getEntityBranchCriteria(Relationship.class))
-								.must(termQuery(ACTIVE, true))
-								.mustNot(termQuery(CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP))
-								.must(bool(bq -> bq
-										.should(termsQuery(SOURCE_ID, deletedOrInactiveConcepts))
-										.should(termsQuery(TYPE_ID, deletedOrInactiveConcepts))
-										.should(termsQuery(DESTINATION_ID, deletedOrInactiveConcepts))))
-								)
-						)
-						.withPageable(LARGE_PAGE).build(),
-				Relationship.class)) {
-			badRelationshipsStream.forEachRemaining(hit -> {
-				Relationship relationship = hit.getContent();
-				if (deletedOrInactiveConcepts.contains(parseLong(relationship.getSourceId()))) {
-					relationshipWithInactiveSource.put(parseLong(relationship.getRelationshipId()), parseLong(relationship.getSourceId()));
-				}
-				if (deletedOrInactiveConcepts.contains(parseLong(relationship.getTypeId()))) {
-					relationshipWithInactiveType.put(parseLong(relationship.getRelationshipId()), parseLong(relationship.getTypeId()));
-				}
-				if (deletedOrInactiveConcepts.contains(parseLong(relationship.getDestinationId()))) {
-					relationshipWithInactiveDestination.put(parseLong(relationship.getRelationshipId()), parseLong(relationship.getDestinationId()));
-				}
-			});
+		// Of those, only concepts still referenced can make relationships or axioms bad, the reference index answers this without a search
+		Set<Long> referencedConcepts = deletedOrInactiveConcepts.isEmpty() ? deletedOrInactiveConcepts :
+				integrityReferenceIndexService.findReferenced(branch.getPath(), timepoint, branchCriteria, deletedOrInactiveConcepts);
+		Set<Long> conceptsToSearch = referencedConcepts != null ? referencedConcepts : deletedOrInactiveConcepts;
+		if (referencedConcepts != null) {
+			timer.checkpoint("Deleted or inactive concepts still referenced: " + referencedConcepts.size());
 		}
-		timer.checkpoint("Collect changed relationships referencing deleted or inactive concepts: " +
-				(relationshipWithInactiveSource.size() + relationshipWithInactiveType.size() + relationshipWithInactiveDestination.size()));
 
-		// Then find axioms with bad integrity using the stated semantic index
+		// Then find the relationships with bad integrity
 		Set<Long> conceptIdsWithBadAxioms = new LongOpenHashSet();
-		try (SearchHitsIterator<QueryConcept> badStatedIndexConcepts = elasticsearchOperations.searchForStream(
-				new NativeQueryBuilder()
-						.withQuery(bool(b -> b
-								.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
-								.must(termQuery(QueryConcept.Fields.STATED, true))
-								.must(termsQuery(QueryConcept.Fields.ATTR + "." + QueryConcept.ATTR_TYPE_WILDCARD, deletedOrInactiveConcepts)))
-						)
-						.withPageable(LARGE_PAGE).build(),
-				QueryConcept.class)) {
-			badStatedIndexConcepts.forEachRemaining(hit -> conceptIdsWithBadAxioms.add(hit.getContent().getConceptIdL()));
+		if (!conceptsToSearch.isEmpty()) {
+			try (SearchHitsIterator<Relationship> badRelationshipsStream = elasticsearchOperations.searchForStream(
+					new NativeQueryBuilder()
+							.withQuery(bool(b -> b
+									.must(branchCriteria.getEntityBranchCriteria(Relationship.class))
+									.must(termQuery(ACTIVE, true))
+									.mustNot(termQuery(CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP))
+									.must(bool(bq -> bq
+											.should(termsQuery(SOURCE_ID, conceptsToSearch))
+											.should(termsQuery(TYPE_ID, conceptsToSearch))
+											.should(termsQuery(DESTINATION_ID, conceptsToSearch))))
+									)
+							)
+							.withPageable(LARGE_PAGE).build(),
+					Relationship.class)) {
+				badRelationshipsStream.forEachRemaining(hit -> {
+					Relationship relationship = hit.getContent();
+					if (deletedOrInactiveConcepts.contains(parseLong(relationship.getSourceId()))) {
+						relationshipWithInactiveSource.put(parseLong(relationship.getRelationshipId()), parseLong(relationship.getSourceId()));
+					}
+					if (deletedOrInactiveConcepts.contains(parseLong(relationship.getTypeId()))) {
+						relationshipWithInactiveType.put(parseLong(relationship.getRelationshipId()), parseLong(relationship.getTypeId()));
+					}
+					if (deletedOrInactiveConcepts.contains(parseLong(relationship.getDestinationId()))) {
+						relationshipWithInactiveDestination.put(parseLong(relationship.getRelationshipId()), parseLong(relationship.getDestinationId()));
+					}
+				});
+			}
+			timer.checkpoint("Collect changed relationships referencing deleted or inactive concepts: " +
+					(relationshipWithInactiveSource.size() + relationshipWithInactiveType.size() + relationshipWithInactiveDestination.size()));
+
+			// Then find axioms with bad integrity using the stated semantic index
+			try (SearchHitsIterator<QueryConcept> badStatedIndexConcepts = elasticsearchOperations.searchForStream(
+					new NativeQueryBuilder()
+							.withQuery(bool(b -> b
+									.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+									.must(termQuery(QueryConcept.Fields.STATED, true))
+									.must(termsQuery(QueryConcept.Fields.ATTR + "." + QueryConcept.ATTR_TYPE_WILDCARD, conceptsToSearch)))
+							)
+							.withPageable(LARGE_PAGE).build(),
+					QueryConcept.class)) {
+				badStatedIndexConcepts.forEachRemaining(hit -> conceptIdsWithBadAxioms.add(hit.getContent().getConceptIdL()));
+			}
 		}
 
 		Map<String, String> axiomIdReferenceComponentMap = new HashMap<>();
@@ -454,29 +505,72 @@ public class IntegrityService extends ComponentService implements CommitListener
 	}
 
 
+	/**
+	 * Checks every active relationship and axiom on the branch for references to missing or inactive concepts.
+	 * Relationships are scanned in parallel partitions of relationship id and axioms are scanned using the stated semantic index at the same time.
+	 * All scans check references against a bitmap of the active concepts of the branch.
+	 *
+	 * @param stated Check stated relationships if true, otherwise inferred relationships. Axioms are checked either way.
+	 */
 	public IntegrityIssueReport findAllComponentsWithBadIntegrity(Branch branch, boolean stated) throws ServiceException {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		TimerUtil timer = new TimerUtil("Full integrity check on " + branch.getPath());
+
+		// Fetch all active concepts
+		ConceptIdSet activeConcepts = ConceptIdSet.of(conceptService.findAllActiveConcepts(branchCriteria));
+		timer.checkpoint("Fetch active concepts: " + activeConcepts.size());
+
+		List<Future<RelationshipFindings>> relationshipScans = new ArrayList<>();
+		for (int partition = 0; partition < RELATIONSHIP_ID_PARTITIONS; partition++) {
+			int relationshipIdPartition = partition;
+			relationshipScans.add(fullCheckExecutor.submit(() ->
+					findRelationshipsWithBadIntegrity(branch, branchCriteria, stated, relationshipIdPartition, activeConcepts)));
+		}
+		Future<Map<String, ConceptMini>> axiomScan = fullCheckExecutor.submit(() -> findAxiomsWithBadIntegrity(branch, branchCriteria, activeConcepts));
 
 		final Map<Long, Long> relationshipWithInactiveSource = new Long2LongOpenHashMap();
 		final Map<Long, Long> relationshipWithInactiveType = new Long2LongOpenHashMap();
 		final Map<Long, Long> relationshipWithInactiveDestination = new Long2LongOpenHashMap();
-		final Map<String, ConceptMini> axiomWithInactiveReferencedConcept = new HashMap<>();
+		final Map<String, ConceptMini> axiomWithInactiveReferencedConcept;
+		try {
+			for (Future<RelationshipFindings> relationshipScan : relationshipScans) {
+				RelationshipFindings findings = relationshipScan.get();
+				relationshipWithInactiveSource.putAll(findings.inactiveSource());
+				relationshipWithInactiveType.putAll(findings.inactiveType());
+				relationshipWithInactiveDestination.putAll(findings.inactiveDestination());
+			}
+			axiomWithInactiveReferencedConcept = axiomScan.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			relationshipScans.forEach(scan -> scan.cancel(true));
+			axiomScan.cancel(true);
+			throw new ServiceException("Full integrity check interrupted.", e);
+		} catch (ExecutionException e) {
+			relationshipScans.forEach(scan -> scan.cancel(true));
+			axiomScan.cancel(true);
+			if (e.getCause() instanceof ServiceException serviceException) {
+				throw serviceException;
+			}
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new ServiceException("Full integrity check failed.", e.getCause());
+		}
 
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
-		TimerUtil timer = new TimerUtil("Full integrity check on " + branch.getPath());
+		timer.finish();
 
-		// Fetch all active concepts
-		Set<Long> activeConcepts = new LongOpenHashSet(conceptService.findAllActiveConcepts(branchCriteria));
-		timer.checkpoint("Fetch active concepts: " + activeConcepts.size());
+		return getReport(axiomWithInactiveReferencedConcept, relationshipWithInactiveSource, relationshipWithInactiveType, relationshipWithInactiveDestination);
+	}
+
+	private RelationshipFindings findRelationshipsWithBadIntegrity(Branch branch, BranchCriteria branchCriteria, boolean stated, int relationshipIdPartition,
+			ConceptIdSet activeConcepts) {
 
-		// Find relationships pointing to something other than the active concepts
+		long start = System.currentTimeMillis();
+		RelationshipFindings findings = new RelationshipFindings(new Long2LongOpenHashMap(), new Long2LongOpenHashMap(), new Long2LongOpenHashMap());
 		BoolQuery.Builder boolQueryBuilder = bool()
 				.must(branchCriteria.getEntityBranchCriteria(Relationship.class))
 				.must(termQuery(ACTIVE, true))
-				.must(bool(b -> b
-						.should(bool(sb -> sb.mustNot(termsQuery(SOURCE_ID, activeConcepts))))
-						.should(bool(tb -> tb.mustNot(termsQuery(TYPE_ID, activeConcepts))))
-						.should(bool(rb -> rb.mustNot(termsQuery(Relationship.Fields.DESTINATION_ID, activeConcepts))))));
-
+				.must(getRelationshipIdPartitionQuery(relationshipIdPartition));
 		if (stated) {
 			boolQueryBuilder.mustNot(termQuery(CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP));
 		} else {
@@ -484,29 +578,62 @@ public class IntegrityService extends ComponentService implements CommitListener
 		}
 		NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
 				.withQuery(boolQueryBuilder.build()._toQuery())
+				.withSourceFilter(new FetchSourceFilter(new String[]{RELATIONSHIP_ID, SOURCE_ID, TYPE_ID, DESTINATION_ID}, null))
 				.withPageable(LARGE_PAGE);
+		AtomicLong checked = new AtomicLong();
 		try (SearchHitsIterator<Relationship> relationshipStream = elasticsearchOperations.searchForStream(queryBuilder.build(), Relationship.class)) {
 			relationshipStream.forEachRemaining(hit -> {
 				Relationship relationship = hit.getContent();
 				long relationshipId = parseLong(relationship.getRelationshipId());
-				putIfInactive(relationship.getSourceId(), activeConcepts, relationshipId, relationshipWithInactiveSource);
-				putIfInactive(relationship.getTypeId(), activeConcepts, relationshipId, relationshipWithInactiveType);
-				putIfInactive(relationship.getDestinationId(), activeConcepts, relationshipId, relationshipWithInactiveDestination);
+				putIfInactive(relationship.getSourceId(), activeConcepts, relationshipId, findings.inactiveSource());
+				putIfInactive(relationship.getTypeId(), activeConcepts, relationshipId, findings.inactiveType());
+				if (relationship.getDestinationId() != null) {
+					// Concrete relationships have a value rather than a destination
+					putIfInactive(relationship.getDestinationId(), activeConcepts, relationshipId, findings.inactiveDestination());
+				}
+				checked.incrementAndGet();
 			});
 		}
+		logger.info("Full integrity check of {} relationships partition {} on {}: {} checked, {} with issues in {} ms.",
+				stated ? "stated" : "inferred", relationshipIdPartition, branch.getPath(), checked.get(),
+				findings.inactiveSource().size() + findings.inactiveType().size() + findings.inactiveDestination().size(), System.currentTimeMillis() - start);
+		return findings;
+	}
+
+	// Relationship ids are partitioned by their first digit, ids never start with 0
+	private static Query getRelationshipIdPartitionQuery(int partition) {
+		if (partition == 0) {
+			return range(r -> r.field(RELATIONSHIP_ID).lt(JsonData.of("2")));
+		} else if (partition == RELATIONSHIP_ID_PARTITIONS - 1) {
+			return range(r -> r.field(RELATIONSHIP_ID).gte(JsonData.of(String.valueOf(partition + 1))));
+		}
+		return range(r -> r.field(RELATIONSHIP_ID).gte(JsonData.of(String.valueOf(partition + 1))).lt(JsonData.of(String.valueOf(partition + 2))));
+	}
+
+	private Map<String, ConceptMini> findAxiomsWithBadIntegrity(Branch branch, BranchCriteria branchCriteria, ConceptIdSet activeConcepts) throws ServiceException {
+
+		long start = System.currentTimeMillis();
+		Map<String, ConceptMini> axiomWithInactiveReferencedConcept = new HashMap<>();
 
-		// Find Axioms pointing to something other than the active concepts, use semantic index first.
+		// Find concepts with axioms pointing to something other than the active concepts, use semantic index first.
 		Set<Long> conceptIdsWithBadAxioms = new LongOpenHashSet();
-		try (SearchHitsIterator<QueryConcept> badStatedIndexConcepts = elasticsearchOperations.searchForStream(
+		AtomicLong checked = new AtomicLong();
+		try (SearchHitsIterator<QueryConcept> statedIndexConcepts = elasticsearchOperations.searchForStream(
 				new NativeQueryBuilder()
 						.withQuery(bool(b -> b
 								.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
-								.must(termQuery(QueryConcept.Fields.STATED, true))
-								.mustNot(termsQuery(QueryConcept.Fields.ATTR + "." + QueryConcept.ATTR_TYPE_WILDCARD, activeConcepts)))
+								.must(termQuery(QueryConcept.Fields.STATED, true)))
 						)
+						.withSourceFilter(new FetchSourceFilter(new String[]{QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.PARENTS, QueryConcept.Fields.ATTR_MAP}, null))
 						.withPageable(LARGE_PAGE).build(),
 				QueryConcept.class)) {
-			badStatedIndexConcepts.forEachRemaining(hit -> conceptIdsWithBadAxioms.add(hit.getContent().getConceptIdL()));
+			statedIndexConcepts.forEachRemaining(hit -> {
+				QueryConcept queryConcept = hit.getContent();
+				if (isReferencingInactiveConcept(queryConcept, activeConcepts)) {
+					conceptIdsWithBadAxioms.add(queryConcept.getConceptIdL());
+				}
+				checked.incrementAndGet();
+			});
 		}
 		if (!conceptIdsWithBadAxioms.isEmpty()) {
 			try (SearchHitsIterator<ReferenceSetMember> possiblyBadAxioms = elasticsearchOperations.searchForStream(
@@ -525,7 +652,7 @@ public class IntegrityService extends ComponentService implements CommitListener
 						ReferenceSetMember axiomMember = possiblyBadAxioms.next().getContent();
 						String owlExpression = axiomMember.getAdditionalField(OWL_EXPRESSION);
 						Set<Long> referencedConcepts = axiomConversionService.getReferencedConcepts(owlExpression);
-						Sets.SetView<Long> badReferences = Sets.difference(referencedConcepts, activeConcepts);
+						Set<Long> badReferences = referencedConcepts.stream().filter(conceptId -> !activeConcepts.contains(conceptId)).collect(Collectors.toSet());
 						if (!badReferences.isEmpty()) {
 							addConceptMini(axiomWithInactiveReferencedConcept, conceptMiniMap, axiomMember.getId(), axiomMember.getReferencedComponentId(), badReferences);
 						}
@@ -537,10 +664,20 @@ public class IntegrityService extends ComponentService implements CommitListener
 				}
 			}
 		}
+		logger.info("Full integrity check of axioms on {}: {} stated concepts checked, {} axioms with issues in {} ms.",
+				branch.getPath(), checked.get(), axiomWithInactiveReferencedConcept.size(), System.currentTimeMillis() - start);
+		return axiomWithInactiveReferencedConcept;
+	}
 
-		timer.finish();
-
-		return getReport(axiomWithInactiveReferencedConcept, relationshipWithInactiveSource, relationshipWithInactiveType, relationshipWithInactiveDestination);
+	// Any parent, attribute type or attribute value of the stated form not active
+	private static boolean isReferencingInactiveConcept(QueryConcept queryConcept, ConceptIdSet activeConcepts) {
+		AtomicBoolean inactiveReference = new AtomicBoolean();
+		IntegrityReferenceIndexService.forEachReference(queryConcept, conceptId -> {
+			if (!activeConcepts.contains(conceptId)) {
+				inactiveReference.set(true);
+			}
+		});
+		return inactiveReference.get();
 	}
 
 	private void addConceptMini(Map<String, ConceptMini> axiomsWithInactiveReferencedConcept, Map<String, ConceptMini> conceptMiniMap,
@@ -578,10 +715,10 @@ public class IntegrityService extends ComponentService implements CommitListener
 		return issueReport;
 	}
 
-	private void putIfInactive(String sourceId, Collection<Long> activeConcepts, long relationshipId, Map<Long, Long> relationshipWithInactiveSource) {
-		long source = parseLong(sourceId);
-		if (!activeConcepts.contains(source)) {
-			relationshipWithInactiveSource.put(relationshipId, source);
+	private void putIfInactive(String conceptId, ConceptIdSet activeConcepts, long relationshipId, Map<Long, Long> relationshipWithInactiveConcept) {
+		long concept = parseLong(conceptId);
+		if (!activeConcepts.contains(concept)) {
+			relationshipWithInactiveConcept.put(relationshipId, concept);
 		}
 	}
 
@@ -681,5 +818,7 @@ public class IntegrityService extends ComponentService implements CommitListener
 			this.inferredConceptIds = inferredConceptIds;
 		}
 	}
-}
 
+	private record RelationshipFindings(Map<Long, Long> inactiveSource, Map<Long, Long> inactiveType, Map<Long, Long> inactiveDestination) {
+	}
+}
@@ -7,6 +7,7 @@ import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
@@ -25,6 +26,7 @@ import org.snomed.snowstorm.ecl.domain.expressionconstraint.SSubExpressionConstr
 import org.snomed.snowstorm.rest.pojo.SearchAfterPageRequest;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.data.domain.Page;
@@ -41,6 +43,7 @@ import org.springframework.util.CollectionUtils;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
@@ -75,6 +78,12 @@ public class QueryService implements ApplicationContextAware {
 
 	private ConceptService conceptService;
 
+	@Value("${search.description.type-ahead.ecl.max-concepts}")
+	private int typeAheadEclMaxConcepts;
+
+	@Value("${search.description.type-ahead.max-concepts}")
+	private int typeAheadMaxConcepts;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public Page<ConceptMini> eclSearch(String ecl, boolean stated, String branchPath, PageRequest pageRequest) {
@@ -199,6 +208,14 @@ public class QueryService implements ApplicationContextAware {
 			return Optional.empty();
 		}
 
+		if (hasLexicalCriteria && isTypeAheadSearch(conceptQuery)) {
+			SearchAfterPage<Long> typeAheadPage = doTypeAheadSearch(conceptQuery, branchCriteria, pageRequest);
+			if (typeAheadPage != null) {
+				return Optional.of(typeAheadPage);
+			}
+			// ECL too large to hold in memory, fall back to the full lexical and logical search
+		}
+
 		SearchAfterPage<Long> conceptIdPage;
 		if (hasLogicalConditions && !hasLexicalCriteria) {
 			// Logical Only
@@ -262,7 +279,7 @@ public class QueryService implements ApplicationContextAware {
 			logger.info("{} lexical results, {} logical results", allConceptIdsSortedByTermOrder.size(), allFilteredLogicalMatches.size());
 
 			// Create page of ids which is an intersection of the lexical and logical lists using the lexical ordering
-			conceptIdPage = PageHelper.listIntersection(new ArrayList<>(allConceptIdsSortedByTermOrder), allFilteredLogicalMatches, pageRequest, CONCEPT_ID_SEARCH_AFTER_EXTRACTOR);
+			conceptIdPage = PageHelper.listIntersection(new ArrayList<>(allConceptIdsSortedByTermOrder), new LongOpenHashSet(allFilteredLogicalMatches), pageRequest, CONCEPT_ID_SEARCH_AFTER_EXTRACTOR);
 		}
 
 		if (conceptIdPage != null) {
@@ -272,6 +289,107 @@ public class QueryService implements ApplicationContextAware {
 		}
 	}
 
+	private boolean isTypeAheadSearch(ConceptQueryBuilder conceptQuery) {
+		if (!conceptQuery.isTypeAhead()) {
+			return false;
+		}
+		// Language and refset criteria are applied to the full set of matches
+		DescriptionCriteria descriptionCriteria = conceptQuery.getDescriptionCriteria();
+		return CollectionUtils.isEmpty(descriptionCriteria.getPreferredIn())
+				&& CollectionUtils.isEmpty(descriptionCriteria.getAcceptableIn())
+				&& CollectionUtils.isEmpty(descriptionCriteria.getPreferredOrAcceptableIn())
+				&& CollectionUtils.isEmpty(descriptionCriteria.getDisjunctionAcceptabilityCriteria())
+				&& descriptionCriteria.getConceptRefset() == null;
+	}
+
+	/**
+	 * Type-ahead search which reads matching descriptions in term order until the requested page of concepts is filled.
+	 * The ECL is selected once, up to a limit. When it matches fewer concepts than there are matching descriptions
+	 * the description search is restricted to those concepts, otherwise the ECL matches are used to filter each batch of descriptions.
+	 * @return the page of concept ids or null if the ECL matches too many concepts for a type-ahead search
+	 */
+	private SearchAfterPage<Long> doTypeAheadSearch(ConceptQueryBuilder conceptQuery, BranchCriteria branchCriteria, PageRequest pageRequest) {
+		TimerUtil timer = new TimerUtil("Type-ahead search");
+		DescriptionCriteria descriptionCriteria = conceptQuery.getDescriptionCriteria();
+
+		Set<Long> eclMatches = null;
+		Collection<Long> descriptionConceptIdFilter = null;
+		if (conceptQuery.getEcl() != null) {
+			Page<Long> eclPage = eclQueryService.selectConceptIds(conceptQuery.getEcl(), branchCriteria, conceptQuery.isStated(),
+					PageRequest.of(0, typeAheadEclMaxConcepts));
+			if (eclPage.getTotalElements() > typeAheadEclMaxConcepts) {
+				logger.debug("Type-ahead ECL matches {} concepts, more than the limit of {}.", eclPage.getTotalElements(), typeAheadEclMaxConcepts);
+				return null;
+			}
+			eclMatches = new LongOpenHashSet(eclPage.getContent());
+			timer.checkpoint(String.format("ECL selected %s concepts", eclMatches.size()));
+			if (eclMatches.isEmpty()) {
+				return PageHelper.fullListToPage(new LongArrayList(), pageRequest, CONCEPT_ID_SEARCH_AFTER_EXTRACTOR);
+			}
+			long descriptionCount = descriptionService.countForTypeAhead(descriptionCriteria, branchCriteria);
+			timer.checkpoint(String.format("Counted %s descriptions", descriptionCount));
+			if (eclMatches.size() < descriptionCount) {
+				descriptionConceptIdFilter = eclMatches;
+			}
+		}
+
+		boolean conceptFilterRequired = conceptQuery.hasPropertyFilter() || conceptQuery.getActiveFilter() != null
+				|| conceptQuery.getConceptIds() != null || descriptionCriteria.getConceptActive() != null;
+
+		Set<Long> eclFilter = eclMatches;
+		Function<Collection<Long>, Set<Long>> conceptFilter = candidateConceptIds -> {
+			Collection<Long> acceptedConceptIds = candidateConceptIds;
+			if (eclFilter != null) {
+				acceptedConceptIds = candidateConceptIds.stream().filter(eclFilter::contains).toList();
+			}
+			if (conceptFilterRequired && !acceptedConceptIds.isEmpty()) {
+				BoolQuery.Builder conceptFilterQuery = bool()
+						.must(getSearchByConceptIdQuery(conceptQuery, branchCriteria))
+						.filter(termsQuery(Concept.Fields.CONCEPT_ID, acceptedConceptIds));
+				if (descriptionCriteria.getConceptActive() != null) {
+					conceptFilterQuery.must(termQuery(Concept.Fields.ACTIVE, descriptionCriteria.getConceptActive()));
+				}
+				Set<Long> filteredConceptIds = new LongOpenHashSet();
+				try (SearchHitsIterator<Concept> stream = elasticsearchOperations.searchForStream(new NativeQueryBuilder()
+						.withQuery(conceptFilterQuery.build()._toQuery())
+						.withSourceFilter(new FetchSourceFilter(new String[]{Concept.Fields.CONCEPT_ID}, null))
+						.withPageable(LARGE_PAGE)
+						.build(), Concept.class)) {
+					stream.forEachRemaining(hit -> filteredConceptIds.add(hit.getContent().getConceptIdAsLong()));
+				}
+				return filteredConceptIds;
+			}
+			return new LongOpenHashSet(acceptedConceptIds);
+		};
+
+		List<Long> conceptIds = descriptionService.findConceptIdsForTypeAhead(descriptionCriteria, branchCriteria, descriptionConceptIdFilter, conceptFilter,
+				getTypeAheadResultsCompletePredicate(pageRequest), timer);
+		timer.finish();
+		return PageHelper.fullListToPage(conceptIds, pageRequest, CONCEPT_ID_SEARCH_AFTER_EXTRACTOR);
+	}
+
+	/**
+	 * Returns a predicate that is true once the collected ids fill the requested page, plus one more id
+	 * so that the page total shows whether there are more results.
+	 * No more than the type-ahead concept limit is collected, a searchAfter id which is not found within the limit gives an empty page.
+	 */
+	private Predicate<List<Long>> getTypeAheadResultsCompletePredicate(PageRequest pageRequest) {
+		int pageSize = pageRequest.getPageSize();
+		if (pageRequest instanceof SearchAfterPageRequest searchAfterPageRequest && searchAfterPageRequest.getSearchAfter() != null) {
+			Object[] searchAfter = searchAfterPageRequest.getSearchAfter();
+			int[] searchAfterIndex = {-1};
+			return conceptIds -> {
+				int lastIndex = conceptIds.size() - 1;
+				if (searchAfterIndex[0] == -1 && Arrays.equals(searchAfter, CONCEPT_ID_SEARCH_AFTER_EXTRACTOR.apply(conceptIds.get(lastIndex)))) {
+					searchAfterIndex[0] = lastIndex;
+				}
+				return (searchAfterIndex[0] != -1 && lastIndex > searchAfterIndex[0] + pageSize) || conceptIds.size() >= typeAheadMaxConcepts;
+			};
+		}
+		long limit = Math.min((pageRequest.getPageNumber() + 1L) * pageSize + 1, typeAheadMaxConcepts);
+		return conceptIds -> conceptIds.size() >= limit;
+	}
+
 	private Query getSearchByConceptIdQuery(ConceptQueryBuilder conceptQuery, BranchCriteria branchCriteria) {
 		BoolQuery.Builder queryBuilder = bool()
 				.must(branchCriteria.getEntityBranchCriteria(Concept.class));
@@ -629,6 +747,7 @@ public class QueryService implements ApplicationContextAware {
 		private Integer effectiveTime;
 		private Boolean isNullEffectiveTime;
 		private Boolean isReleased;
+		private boolean typeAhead;
 
 		private ConceptQueryBuilder(boolean stated) {
 			this.stated = stated;
@@ -704,6 +823,15 @@ public class QueryService implements ApplicationContextAware {
 			return this;
 		}
 
+		/**
+		 * Type-ahead mode returns the first page of concepts matching the term without collecting every match.
+		 * The total number of elements is not exact; it is only greater than the page when there are more results.
+		 */
+		public ConceptQueryBuilder typeAhead(boolean typeAhead) {
+			this.typeAhead = typeAhead;
+			return this;
+		}
+
 		public ConceptQueryBuilder descriptionCriteria(Consumer<DescriptionCriteria> descriptionCriteriaUpdater) {
 			descriptionCriteriaUpdater.accept(descriptionCriteria);
 			return this;
@@ -758,6 +886,10 @@ public class QueryService implements ApplicationContextAware {
 			return isReleased;
 		}
 
+		public boolean isTypeAhead() {
+			return typeAhead;
+		}
+
 		public void applyConceptClauses(BoolQuery.Builder conceptClauses) {
 			if (activeFilter != null) {
 				conceptClauses.must(termQuery(Concept.Fields.ACTIVE, activeFilter));
@@ -797,6 +929,7 @@ public class QueryService implements ApplicationContextAware {
 					", effectiveTime=" + effectiveTime +
 					", isNullEffectiveTime=" + isNullEffectiveTime +
 					", isReleased=" + isReleased +
+					", typeAhead=" + typeAhead +
 					'}';
 		}
 
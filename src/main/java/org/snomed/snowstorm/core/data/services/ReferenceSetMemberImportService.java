@@ -0,0 +1,297 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.collect.Iterables;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.ElasticVCRuntimeException;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2BooleanMap;
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+import org.snomed.snowstorm.core.data.services.pojo.AsyncRefsetMemberChangeBatch;
+import org.snomed.snowstorm.ecl.ConceptIdSet;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static io.kaicode.elasticvc.helper.QueryHelper.termsQuery;
+import static java.lang.Long.parseLong;
+
+/**
+ * Streaming import of reference set members from a file of one JSON member per line.
+ * <p>
+ * The file is read a line at a time and members are saved in windows within one commit, so the size of the import is not limited by memory.
+ * Referenced components are checked for each window, concepts against a bitmap of the active concepts of the branch and descriptions and
+ * relationships with one query per window. Rows which can not be read or fail the checks are skipped and written to an errors file
+ * which can be downloaded once the import has finished. A memberId repeated within a window is also an error, the first row is imported,
+ * while a row repeating the memberId of an earlier window updates the member saved by that window.
+ */
+@Service
+public class ReferenceSetMemberImportService {
+
+	private static final String ERRORS_HEADER = "row\treferencedComponentId\tmessage\n";
+
+	@Autowired
+	private ReferenceSetMemberService memberService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private BranchMetadataHelper branchMetadataHelper;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${refset.member.import.window-size}")
+	private int windowSize;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Imports the members in the file and deletes the file.
+	 * @param membersFile File with one reference set member per line, in the same JSON format as the bulk member endpoint.
+	 */
+	@Async
+	public void importMembersAsync(String batchId, String branch, File membersFile, SecurityContext securityContext) {
+		SecurityContextHolder.setContext(securityContext);
+		try {
+			AsyncRefsetMemberChangeBatch changeBatch = memberService.getBatchChange(batchId);
+			if (changeBatch == null) {
+				logger.error("Batch member import {} not found.", batchId);
+				return;
+			}
+			try {
+				importMembers(changeBatch, branch, membersFile);
+				changeBatch.setStatus(AsyncRefsetMemberChangeBatch.Status.COMPLETED);
+			} catch (IOException | IllegalArgumentException | IllegalStateException | ElasticVCRuntimeException e) {
+				changeBatch.setStatus(AsyncRefsetMemberChangeBatch.Status.FAILED);
+				changeBatch.setMessage(e.getMessage());
+				logger.error("Batch member import failed, id:{}, branch:{}", changeBatch.getId(), branch, e);
+			}
+		} finally {
+			SecurityContextHolder.clearContext();
+			if (!membersFile.delete()) {
+				logger.warn("Failed to delete temp member import file {}", membersFile.getAbsolutePath());
+			}
+		}
+	}
+
+	void importMembers(AsyncRefsetMemberChangeBatch changeBatch, String branch, File membersFile) throws IOException {
+		File errorsFile = Files.createTempFile(changeBatch.getId(), "-member-errors.txt").toFile();
+		changeBatch.setErrorsFile(errorsFile);
+		ObjectReader memberReader = objectMapper.readerFor(ReferenceSetMember.class);
+
+		try (BufferedReader reader = Files.newBufferedReader(membersFile.toPath(), StandardCharsets.UTF_8);
+				Writer errors = Files.newBufferedWriter(errorsFile.toPath(), StandardCharsets.UTF_8);
+				Commit commit = branchService.openCommit(branch, branchMetadataHelper.getBranchLockMetadata("Importing reference set members."))) {
+
+			errors.write(ERRORS_HEADER);
+			BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+			MemberWindow window = new MemberWindow(commit, branchCriteria, ConceptIdSet.of(conceptService.findAllActiveConcepts(branchCriteria)),
+					memberService.getDefaultModuleId(commit), errors);
+
+			int row = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				row++;
+				if (line.isBlank()) {
+					continue;
+				}
+				ReferenceSetMember member;
+				try {
+					member = memberReader.readValue(line);
+				} catch (JsonProcessingException e) {
+					window.error(row, null, "Member could not be read: " + e.getOriginalMessage());
+					continue;
+				}
+				if (!IdentifierService.isConceptId(member.getRefsetId())) {
+					window.error(row, member.getReferencedComponentId(), "refsetId must be a concept identifier.");
+				} else if (member.getReferencedComponentId() == null || member.getReferencedComponentId().isEmpty()) {
+					window.error(row, null, "referencedComponentId is required.");
+				} else {
+					window.add(row, member);
+					if (window.size() == windowSize) {
+						window.save();
+					}
+				}
+			}
+			window.save();
+			commit.markSuccessful();
+
+			changeBatch.setRowsRead(row);
+			changeBatch.setMembersSaved(window.saved);
+			changeBatch.setErrorCount(window.errorCount);
+			logger.info("Imported {} reference set members on {} from {} rows, {} rows with errors.", window.saved, branch, row, window.errorCount);
+		}
+	}
+
+	private final class MemberWindow {
+
+		private final Commit commit;
+		private final BranchCriteria branchCriteria;
+		private final ConceptIdSet activeConcepts;
+		private final String defaultModuleId;
+		private final Writer errors;
+
+		private final List<ReferenceSetMember> members = new ArrayList<>();
+		private final IntList rows = new IntArrayList();
+		private final Set<String> memberIds = new HashSet<>();
+		private int saved;
+		private int errorCount;
+
+		private MemberWindow(Commit commit, BranchCriteria branchCriteria, ConceptIdSet activeConcepts, String defaultModuleId, Writer errors) {
+			this.commit = commit;
+			this.branchCriteria = branchCriteria;
+			this.activeConcepts = activeConcepts;
+			this.defaultModuleId = defaultModuleId;
+			this.errors = errors;
+		}
+
+		private void add(int row, ReferenceSetMember member) throws IOException {
+			String memberId = member.getMemberId();
+			if (memberId != null && !memberIds.add(memberId)) {
+				error(row, member.getReferencedComponentId(), String.format("memberId %s is repeated within the window of rows saved together, " +
+						"only the first row is imported.", memberId));
+				return;
+			}
+			members.add(member);
+			rows.add(row);
+		}
+
+		private int size() {
+			return members.size();
+		}
+
+		private void save() throws IOException {
+			if (members.isEmpty()) {
+				return;
+			}
+
+			// Concepts which are not active and all descriptions and relationships are looked up with one query per type
+			LongList otherConceptIds = new LongArrayList();
+			LongList descriptionIds = new LongArrayList();
+			LongList relationshipIds = new LongArrayList();
+			for (ReferenceSetMember member : members) {
+				String referencedComponentId = member.getReferencedComponentId();
+				if (IdentifierService.isConceptId(referencedComponentId)) {
+					if (!activeConcepts.contains(parseLong(referencedComponentId))) {
+						otherConceptIds.add(parseLong(referencedComponentId));
+					}
+				} else if (IdentifierService.isDescriptionId(referencedComponentId)) {
+					descriptionIds.add(parseLong(referencedComponentId));
+				} else if (IdentifierService.isRelationshipId(referencedComponentId)) {
+					relationshipIds.add(parseLong(referencedComponentId));
+				}
+			}
+			Long2BooleanMap componentActive = new Long2BooleanOpenHashMap();
+			findComponentActive(otherConceptIds, Concept.class, Concept.Fields.CONCEPT_ID, Concept::getConceptId, componentActive);
+			findComponentActive(descriptionIds, Description.class, Description.Fields.DESCRIPTION_ID, Description::getDescriptionId, componentActive);
+			findComponentActive(relationshipIds, Relationship.class, Relationship.Fields.RELATIONSHIP_ID, Relationship::getRelationshipId, componentActive);
+
+			List<ReferenceSetMember> validMembers = new ArrayList<>(members.size());
+			for (int i = 0; i < members.size(); i++) {
+				ReferenceSetMember member = members.get(i);
+				String problem = validateReferences(member, componentActive);
+				if (problem != null) {
+					error(rows.getInt(i), member.getReferencedComponentId(), problem);
+				} else {
+					validMembers.add(member);
+				}
+			}
+			if (!validMembers.isEmpty()) {
+				saved += Iterables.size(memberService.doCreateUpdateMembers(validMembers, defaultModuleId, commit));
+			}
+			members.clear();
+			rows.clear();
+			memberIds.clear();
+		}
+
+		private String validateReferences(ReferenceSetMember member, Long2BooleanMap componentActive) {
+			if (!activeConcepts.contains(parseLong(member.getRefsetId()))) {
+				return String.format("Reference set %s is not an active concept on the branch.", member.getRefsetId());
+			}
+			String referencedComponentId = member.getReferencedComponentId();
+			if (!IdentifierService.isConceptId(referencedComponentId) && !IdentifierService.isDescriptionId(referencedComponentId)
+					&& !IdentifierService.isRelationshipId(referencedComponentId)) {
+				// Other identifiers, for example postcoordinated expressions, are not components on the branch
+				return null;
+			}
+			long componentId = parseLong(referencedComponentId);
+			if (activeConcepts.contains(componentId)) {
+				return null;
+			}
+			if (!componentActive.containsKey(componentId)) {
+				return String.format("Referenced component %s does not exist on the branch.", referencedComponentId);
+			}
+			// Inactivation indicators and historical associations refer to inactive components
+			if (!componentActive.get(componentId) && member.isActive() && !Concepts.inactivationAndAssociationRefsets.contains(member.getRefsetId())) {
+				return String.format("Referenced component %s is inactive.", referencedComponentId);
+			}
+			return null;
+		}
+
+		private <T extends SnomedComponent<?>> void findComponentActive(LongList ids, Class<T> componentClass, String idField,
+				Function<T, String> idGetter, Long2BooleanMap componentActive) {
+
+			if (ids.isEmpty()) {
+				return;
+			}
+			NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
+					.withQuery(bool(b -> b
+							.must(branchCriteria.getEntityBranchCriteria(componentClass))
+							.must(termsQuery(idField, ids))))
+					.withSourceFilter(new FetchSourceFilter(new String[]{idField, SnomedComponent.Fields.ACTIVE}, null))
+					.withPageable(LARGE_PAGE);
+			try (SearchHitsIterator<T> components = elasticsearchOperations.searchForStream(queryBuilder.build(), componentClass)) {
+				components.forEachRemaining(hit -> componentActive.put(parseLong(idGetter.apply(hit.getContent())), hit.getContent().isActive()));
+			}
+		}
+
+		private void error(int row, String referencedComponentId, String message) throws IOException {
+			errorCount++;
+			errors.write(row + "\t" + (referencedComponentId != null ? referencedComponentId : "") + "\t" + message.replaceAll("[\t\r\n]+", " ") + "\n");
+		}
+	}
+}
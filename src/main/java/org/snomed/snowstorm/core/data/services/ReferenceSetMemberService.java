@@ -7,6 +7,7 @@ import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
 import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.*;
 import io.kaicode.elasticvc.domain.Commit;
@@ -116,7 +117,9 @@ public class ReferenceSetMemberService extends ComponentService {
 	// FHIR map service is used to pull terms from other code systems for display
 	private FHIRConceptMapService fhirConceptMapService;
 
-	private final Cache<String, AsyncRefsetMemberChangeBatch> batchChanges = CacheBuilder.newBuilder().expireAfterWrite(2, TimeUnit.HOURS).build();
+	private final Cache<String, AsyncRefsetMemberChangeBatch> batchChanges = CacheBuilder.newBuilder().expireAfterWrite(2, TimeUnit.HOURS)
+			.removalListener((RemovalListener<String, AsyncRefsetMemberChangeBatch>) removal -> removal.getValue().deleteErrorsFile())
+			.build();
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -350,8 +353,8 @@ public class ReferenceSetMemberService extends ComponentService {
 		}
 	}
 
-	public String newCreateUpdateAsyncJob() {
-		final AsyncRefsetMemberChangeBatch batchChange = new AsyncRefsetMemberChangeBatch();
+	public String newCreateUpdateAsyncJob(String branch) {
+		final AsyncRefsetMemberChangeBatch batchChange = new AsyncRefsetMemberChangeBatch(branch);
 		synchronized (batchChanges) {
 			batchChanges.put(batchChange.getId(), batchChange);
 		}
@@ -369,34 +372,7 @@ public class ReferenceSetMemberService extends ComponentService {
 		try {
 			Iterable<ReferenceSetMember> savedMembers;
 			try (final Commit commit = branchService.openCommit(branch, branchMetadataHelper.getBranchLockMetadata(String.format("Saving %s refset members.", members.size())))) {
-
-				// Set missing moduleIds
-				Metadata metadata = branchService.findBranchOrThrow(commit.getBranch().getPath(), true).getMetadata();
-				String defaultModuleId = metadata.getString(Config.DEFAULT_MODULE_ID_KEY);
-				members.stream().filter(member -> member.getModuleId() == null).forEach(member -> member.setModuleId(defaultModuleId));
-
-				// Mark new/updated members. Existing members that have not changed will not be persisted.
-				final Map<String, ReferenceSetMember> membersWithIds =
-						members.stream().filter(member -> member.getMemberId() != null).collect(Collectors.toMap(ReferenceSetMember::getMemberId, Function.identity()));
-				final Map<String, ReferenceSetMember> existingMembers =
-						findMembers(branch, membersWithIds.keySet()).stream().collect(Collectors.toMap(ReferenceSetMember::getMemberId, Function.identity()));
-				membersWithIds.forEach((key, batchMember) -> {
-					final ReferenceSetMember existingMember = existingMembers.get(key);
-					if (batchMember.isComponentChanged(existingMember)) {
-						batchMember.markChanged();
-					}
-					if (existingMember != null) {
-						batchMember.copyReleaseDetails(existingMember);
-					}
-				});
-
-				// Set missing ids
-				members.stream().filter(member -> member.getMemberId() == null).forEach(member -> {
-					member.markChanged();
-					member.setMemberId(UUID.randomUUID().toString());
-				});
-
-				savedMembers = doSaveBatchMembers(members, commit);
+				savedMembers = doCreateUpdateMembers(members, getDefaultModuleId(commit), commit);
 				commit.markSuccessful();
 			}
 			changeBatch.setMemberIds(StreamSupport.stream(savedMembers.spliterator(), false).map(ReferenceSetMember::getMemberId).collect(Collectors.toList()));
@@ -415,6 +391,48 @@ public class ReferenceSetMemberService extends ComponentService {
 		return batchChanges.getIfPresent(bulkChangeId);
 	}
 
+	/**
+	 * @return The default module of the commit branch, resolved from branch metadata including values inherited from ancestor branches.
+	 */
+	public String getDefaultModuleId(Commit commit) {
+		Metadata metadata = branchService.findBranchOrThrow(commit.getBranch().getPath(), true).getMetadata();
+		return metadata.getString(Config.DEFAULT_MODULE_ID_KEY);
+	}
+
+	/**
+	 * Creates or updates members within commit.
+	 * Members without a moduleId are given the default module and members without an id are given a new id.
+	 * Existing members, including those saved earlier in the same commit, that have not changed will not be persisted.
+	 * @return List of persisted components with updated metadata and filtered by deleted status.
+	 */
+	public Iterable<ReferenceSetMember> doCreateUpdateMembers(List<ReferenceSetMember> members, String defaultModuleId, Commit commit) {
+		// Set missing moduleIds
+		members.stream().filter(member -> member.getModuleId() == null).forEach(member -> member.setModuleId(defaultModuleId));
+
+		// Mark new/updated members. Existing members that have not changed will not be persisted.
+		final Map<String, ReferenceSetMember> membersWithIds =
+				members.stream().filter(member -> member.getMemberId() != null).collect(Collectors.toMap(ReferenceSetMember::getMemberId, Function.identity()));
+		final Map<String, ReferenceSetMember> existingMembers = findMembers(versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit), membersWithIds.keySet())
+				.stream().collect(Collectors.toMap(ReferenceSetMember::getMemberId, Function.identity()));
+		membersWithIds.forEach((key, batchMember) -> {
+			final ReferenceSetMember existingMember = existingMembers.get(key);
+			if (batchMember.isComponentChanged(existingMember)) {
+				batchMember.markChanged();
+			}
+			if (existingMember != null) {
+				batchMember.copyReleaseDetails(existingMember);
+			}
+		});
+
+		// Set missing ids
+		members.stream().filter(member -> member.getMemberId() == null).forEach(member -> {
+			member.markChanged();
+			member.setMemberId(UUID.randomUUID().toString());
+		});
+
+		return doSaveBatchMembers(members, commit);
+	}
+
 	/**
 	 * Persists members updates within commit.
 	 * Inactive members which have not been released will be deleted
@@ -9,7 +9,7 @@ import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Commit;
 import io.kaicode.rest.util.branchpathrewrite.BranchPathUriUtil;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongArraySet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongComparators;
 
 import org.snomed.snowstorm.core.data.domain.Concepts;
@@ -180,7 +180,7 @@ public class RelationshipService extends ComponentService {
 			return Collections.emptyList();
 		}
 
-		Set<Long> destinationIds = new LongArraySet();
+		Set<Long> destinationIds = new LongOpenHashSet();
 		if (sourceConceptIds == null) {
 			NativeQuery query = constructDestinationSearchQuery(null, attributeTypeIds, branchCriteria, stated);
 			try (SearchHitsIterator<Relationship> stream = elasticsearchOperations.searchForStream(query, Relationship.class)) {
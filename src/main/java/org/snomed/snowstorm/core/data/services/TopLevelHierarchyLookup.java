@@ -0,0 +1,217 @@
+package org.snomed.snowstorm.core.data.services;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static io.kaicode.elasticvc.helper.QueryHelper.termQuery;
+import static io.kaicode.elasticvc.helper.QueryHelper.termsQuery;
+
+/**
+ * Lookup of the top level hierarchy of concepts on MAIN, used to choose the attribute sort order of a concept.
+ * <p>
+ * The index is derived from the stated ancestors in the semantic index and held as a primitive map of concept to top level hierarchy.
+ * It is built in the background on first use and rebuilt after each commit on MAIN, once the commit is visible, see {@link BranchHeadTaskQueue}.
+ * Lookups use the latest index built and never wait for a build, a concept created since is found through its stated parent.
+ */
+@Service
+public class TopLevelHierarchyLookup implements CommitListener {
+
+	private static final String BRANCH = "MAIN";
+	private static final byte NOT_INDEXED = -1;
+
+	@Value("${cache.top-level-hierarchy.commit-wait-seconds}")
+	private int commitWaitSeconds;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
+	@Autowired
+	private QueryService queryService;
+
+	private volatile TopLevelHierarchyIndex index;
+
+	// Rebuilds are only scheduled once the index has been used
+	private volatile boolean used;
+
+	// Timepoint of the latest commit on MAIN, the first build waits for it
+	private final AtomicLong latestCommit = new AtomicLong();
+
+	private final AtomicBoolean building = new AtomicBoolean();
+
+	private BranchHeadTaskQueue buildTasks;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		buildTasks = new BranchHeadTaskQueue("top-level-hierarchy", 1, commitWaitSeconds, branchService);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		buildTasks.shutdown();
+	}
+
+	/**
+	 * @param conceptId The concept, may be null if the concept is new.
+	 * @param statedParentId A stated parent of the concept, may be null.
+	 * @return The semantic tag of the top level hierarchy of the stated parent or else of the concept itself,
+	 * or null if neither is in the index or the index has not been built yet.
+	 */
+	public String getTopLevelTag(Long conceptId, Long statedParentId) {
+		used = true;
+		TopLevelHierarchyIndex current = index;
+		if (current == null) {
+			if (!building.get() && !buildTasks.hasPending(BRANCH)) {
+				// First build, or again after a failed build
+				buildTasks.submit(BRANCH, new Date(latestCommit.get()), this::build);
+			}
+			return null;
+		}
+		String tag = null;
+		if (statedParentId != null) {
+			tag = current.getTopLevelTag(statedParentId);
+		}
+		if (tag == null && conceptId != null) {
+			tag = current.getTopLevelTag(conceptId);
+		}
+		return tag;
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		if (BRANCH.equals(commit.getBranch().getPath())) {
+			latestCommit.accumulateAndGet(commit.getTimepoint().getTime(), Math::max);
+			if (used) {
+				buildTasks.submit(BRANCH, commit.getTimepoint(), this::build);
+			}
+		}
+	}
+
+	private void build(Branch branch) {
+		building.set(true);
+		try {
+			index = buildIndex(versionControlHelper.getBranchCriteria(branch));
+		} finally {
+			building.set(false);
+		}
+	}
+
+	private TopLevelHierarchyIndex buildIndex(BranchCriteria branchCriteria) {
+		long start = System.currentTimeMillis();
+
+		// Positions of the top level concepts, in concept id order
+		List<Long> topLevelConceptIds = new ArrayList<>(queryService.findChildrenIdsAsUnion(branchCriteria, true, List.of(Long.parseLong(Concepts.SNOMEDCT_ROOT))));
+		topLevelConceptIds.sort(null);
+		if (topLevelConceptIds.size() > Byte.MAX_VALUE) {
+			topLevelConceptIds = topLevelConceptIds.subList(0, Byte.MAX_VALUE);
+		}
+		Long2ObjectOpenHashMap<String> fsnTerms = findFsnTerms(branchCriteria, topLevelConceptIds);
+		String[] topLevelTags = new String[topLevelConceptIds.size()];
+		Long2ByteOpenHashMap topLevelPositions = new Long2ByteOpenHashMap();
+		topLevelPositions.defaultReturnValue(NOT_INDEXED);
+		for (int i = 0; i < topLevelConceptIds.size(); i++) {
+			long topLevelConceptId = topLevelConceptIds.get(i);
+			topLevelTags[i] = ConceptAttributeSortHelper.getEnSemanticTag(fsnTerms.get(topLevelConceptId));
+			topLevelPositions.put(topLevelConceptId, (byte) i);
+		}
+
+		Long2ByteOpenHashMap topLevelByConcept = new Long2ByteOpenHashMap(topLevelPositions);
+		topLevelByConcept.defaultReturnValue(NOT_INDEXED);
+		NativeQuery query = new NativeQueryBuilder()
+				.withQuery(bool(b -> b
+						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+						.must(termQuery(QueryConcept.Fields.STATED, true))))
+				.withSourceFilter(new FetchSourceFilter(new String[]{QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.ANCESTORS}, null))
+				.withPageable(LARGE_PAGE)
+				.build();
+		try (SearchHitsIterator<QueryConcept> queryConcepts = elasticsearchOperations.searchForStream(query, QueryConcept.class)) {
+			queryConcepts.forEachRemaining(hit -> {
+				Set<Long> ancestors = hit.getContent().getAncestors();
+				if (ancestors == null) {
+					return;
+				}
+				// A concept in more than one top level hierarchy takes the first
+				byte topLevel = NOT_INDEXED;
+				for (Long ancestor : ancestors) {
+					byte position = topLevelPositions.get(ancestor.longValue());
+					if (position != NOT_INDEXED && (topLevel == NOT_INDEXED || position < topLevel)) {
+						topLevel = position;
+					}
+				}
+				if (topLevel != NOT_INDEXED) {
+					topLevelByConcept.put(hit.getContent().getConceptIdL().longValue(), topLevel);
+				}
+			});
+		}
+		topLevelByConcept.trim();
+		logger.info("Built top level hierarchy index of {}@{} with {} concepts in {} ms.", BRANCH, branchCriteria.getTimepoint().getTime(), topLevelByConcept.size(),
+				System.currentTimeMillis() - start);
+		return new TopLevelHierarchyIndex(branchCriteria.getTimepoint().getTime(), topLevelByConcept, topLevelTags);
+	}
+
+	private Long2ObjectOpenHashMap<String> findFsnTerms(BranchCriteria branchCriteria, List<Long> conceptIds) {
+		Long2ObjectOpenHashMap<String> fsnTerms = new Long2ObjectOpenHashMap<>();
+		if (conceptIds.isEmpty()) {
+			return fsnTerms;
+		}
+		NativeQuery query = new NativeQueryBuilder()
+				.withQuery(bool(b -> b
+						.must(branchCriteria.getEntityBranchCriteria(Description.class))
+						.must(termsQuery(Description.Fields.CONCEPT_ID, conceptIds))
+						.must(termQuery(Description.Fields.ACTIVE, true))
+						.must(termQuery(Description.Fields.TYPE_ID, Concepts.FSN))
+						.must(termQuery(Description.Fields.LANGUAGE_CODE, "en"))))
+				.withSourceFilter(new FetchSourceFilter(new String[]{Description.Fields.CONCEPT_ID, Description.Fields.TERM}, null))
+				.withPageable(LARGE_PAGE)
+				.build();
+		try (SearchHitsIterator<Description> descriptions = elasticsearchOperations.searchForStream(query, Description.class)) {
+			descriptions.forEachRemaining(hit -> fsnTerms.putIfAbsent(Long.parseLong(hit.getContent().getConceptId()), hit.getContent().getTerm()));
+		}
+		return fsnTerms;
+	}
+
+	private record TopLevelHierarchyIndex(long head, Long2ByteOpenHashMap topLevelByConcept, String[] topLevelTags) {
+
+		String getTopLevelTag(long conceptId) {
+			byte position = topLevelByConcept.get(conceptId);
+			return position != NOT_INDEXED ? topLevelTags[position] : null;
+		}
+	}
+}
@@ -50,9 +50,49 @@ public class UpgradeInactivationService {
 	@Autowired
 	private BranchMetadataHelper branchMetadataHelper;
 
+	static final String DESCRIPTION_INACTIVATION_LOCK_DESCRIPTION = "Concept non-current description inactivation";
+	static final String LANGUAGE_REFSETS_LOCK_DESCRIPTION = "updating language refset members";
+	static final String ADDITIONAL_AXIOMS_LOCK_DESCRIPTION = "additional axioms updating during upgrade";
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public void findAndUpdateDescriptionsInactivation(CodeSystem codeSystem) {
+		List<ReferenceSetMember> membersToSave = findDescriptionsInactivationChanges(codeSystem);
+		if (!membersToSave.isEmpty()) {
+			saveChanges(codeSystem, membersToSave, DESCRIPTION_INACTIVATION_LOCK_DESCRIPTION);
+			logger.info("Added {} concept non-current indicators for descriptions having inactive concepts. Member uuids: {}",
+					membersToSave.size(), membersToSave.stream().map(ReferenceSetMember::getMemberId).collect(Collectors.toList()));
+		}
+		logger.info("Completed description inactivation for inactive concepts for code system {} on branch {}", codeSystem.getShortName(), codeSystem.getBranchPath());
+	}
+
+	public void findAndUpdateLanguageRefsets(CodeSystem codeSystem) {
+		saveChanges(codeSystem, findLanguageRefsetChanges(codeSystem), LANGUAGE_REFSETS_LOCK_DESCRIPTION);
+		logger.info("Completed language reference set auto inactivation for code system {} on branch {}", codeSystem.getShortName(), codeSystem.getBranchPath());
+	}
+
+	public void findAndUpdateAdditionalAxioms(CodeSystem codeSystem) {
+		saveChanges(codeSystem, findAdditionalAxiomChanges(codeSystem), ADDITIONAL_AXIOMS_LOCK_DESCRIPTION);
+		logger.info("Completed additional axioms auto inactivation for code system {} on branch {}", codeSystem.getShortName(), codeSystem.getBranchPath());
+	}
+
+	/**
+	 * Saves the changes found by one of the find methods in a single commit, if there are any.
+	 */
+	public void saveChanges(CodeSystem codeSystem, List<ReferenceSetMember> toSave, String lockDescription) {
+		if (!toSave.isEmpty()) {
+			try (Commit commit = branchService.openCommit(codeSystem.getBranchPath(), branchMetadataHelper.getBranchLockMetadata(lockDescription))) {
+				conceptUpdateHelper.doSaveBatchComponents(toSave, ReferenceSetMember.class, commit);
+				commit.markSuccessful();
+			}
+		}
+	}
+
+	/**
+	 * Finds active descriptions of inactive concepts without a concept non-current indicator and creates the missing indicators.
+	 * Nothing is saved, the finds of each content automation only read the branch so they can run at the same time.
+	 */
+	public List<ReferenceSetMember> findDescriptionsInactivationChanges(CodeSystem codeSystem) {
 		if (codeSystem == null) {
 			throw new IllegalArgumentException("CodeSystem must not be null");
 		}
@@ -130,19 +170,13 @@ public class UpgradeInactivationService {
 		}
 
 		logger.info("{} descriptions found with inactive concepts but without concept non-current indicators", membersToSave.size());
-		if (!membersToSave.isEmpty()) {
-			//TODO What exception does this throw if we are unable to lock the branch?
-			try (Commit commit = branchService.openCommit(branchPath, branchMetadataHelper.getBranchLockMetadata("Concept non-current description inactivation"))) {
-				conceptUpdateHelper.doSaveBatchComponents(membersToSave, ReferenceSetMember.class, commit);
-				logger.info("Added {} concept non-current indicators for descriptions having inactive concepts. Member uuids: {}",
-						membersToSave.size(), membersToSave.stream().map(ReferenceSetMember::getMemberId).collect(Collectors.toList()));
-				commit.markSuccessful();
-			}
-		}
-		logger.info("Completed description inactivation for inactive concepts for code system {} on branch {}", codeSystem.getShortName(), branchPath);
+		return membersToSave;
 	}
 
-	public void findAndUpdateLanguageRefsets(CodeSystem codeSystem) {
+	/**
+	 * Finds active language reference set members of inactive descriptions, to be inactivated or deleted if unpublished.
+	 */
+	public List<ReferenceSetMember> findLanguageRefsetChanges(CodeSystem codeSystem) {
 		logger.info("Start language reference set auto inactivation for code system {} on branch {}", codeSystem.getShortName(), codeSystem.getBranchPath());
 		// find inactive descriptions
 		List<Long> inactiveDescriptionIds = findInactiveDescriptions(codeSystem.getBranchPath());
@@ -171,16 +205,13 @@ public class UpgradeInactivationService {
 		List<ReferenceSetMember> toSave = new ArrayList<>();
 		toSave.addAll(toInactivate);
 		toSave.addAll(toDelete);
-		if (!toSave.isEmpty()) {
-			try (Commit commit = branchService.openCommit(codeSystem.getBranchPath(), branchMetadataHelper.getBranchLockMetadata("updating language refset members"))) {
-				conceptUpdateHelper.doSaveBatchComponents(toSave, ReferenceSetMember.class, commit);
-				commit.markSuccessful();
-			}
-		}
-		logger.info("Completed language reference set auto inactivation for code system {} on branch {}", codeSystem.getShortName(), codeSystem.getBranchPath());
+		return toSave;
 	}
 
-	public void findAndUpdateAdditionalAxioms(CodeSystem codeSystem) {
+	/**
+	 * Finds active additional axioms of the extension belonging to inactive concepts, to be inactivated or deleted if unpublished.
+	 */
+	public List<ReferenceSetMember> findAdditionalAxiomChanges(CodeSystem codeSystem) {
 		logger.info("Start additional axioms auto inactivation for code system {} on branch {}", codeSystem.getShortName(), codeSystem.getBranchPath());
 		// find active axioms changed on extension MAIN branch
 		Map<Long, List<ReferenceSetMember>> conceptToAxiomsMap = new HashMap<>();
@@ -197,7 +228,7 @@ public class UpgradeInactivationService {
 
 		// check referenced components are still active
 		if (conceptToAxiomsMap.isEmpty()) {
-			return;
+			return new ArrayList<>();
 		}
 		Set<Long> activeConceptIds = new LongOpenHashSet();
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(codeSystem.getBranchPath());
@@ -237,13 +268,7 @@ public class UpgradeInactivationService {
 		List<ReferenceSetMember> toSave = new ArrayList<>();
 		toSave.addAll(toInactivate);
 		toSave.addAll(toDelete);
-		if (!toSave.isEmpty()) {
-			try (Commit commit = branchService.openCommit(codeSystem.getBranchPath(), branchMetadataHelper.getBranchLockMetadata("additional axioms updating during upgrade"))) {
-				conceptUpdateHelper.doSaveBatchComponents(toSave, ReferenceSetMember.class, commit);
-				commit.markSuccessful();
-			}
-		}
-		logger.info("Completed additional axioms auto inactivation for code system {} on branch {}", codeSystem.getShortName(), codeSystem.getBranchPath());
+		return toSave;
 	}
 
 	private void removeOrInactivate(ReferenceSetMember member, List<ReferenceSetMember> toDelete, List<ReferenceSetMember> toInactivate) {
@@ -3,9 +3,9 @@ package org.snomed.snowstorm.core.data.services.classification;
 import co.elastic.clients.elasticsearch._types.ElasticsearchException;
 import co.elastic.clients.elasticsearch._types.SortOptions;
 import co.elastic.clients.elasticsearch._types.SortOrder;
-import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
@@ -34,6 +34,7 @@ import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.snomed.snowstorm.core.rf2.export.ExportException;
 import org.snomed.snowstorm.core.rf2.export.ExportService;
 import org.snomed.snowstorm.core.util.DateUtil;
+import org.snomed.snowstorm.core.util.TabDelimitedLine;
 import org.snomed.snowstorm.rest.pojo.SearchAfterPageRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -45,6 +46,7 @@ import org.springframework.data.elasticsearch.UncategorizedElasticsearchExceptio
 import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.*;
 import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.core.context.SecurityContext;
@@ -58,8 +60,10 @@ import java.io.*;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -119,6 +123,9 @@ public class ClassificationService {
 	@Autowired
 	private RelationshipService relationshipService;
 
+	@Autowired
+	private ConceptUpdateHelper conceptUpdateHelper;
+
 	@Autowired
 	private JmsTemplate jmsTemplate;
 
@@ -130,12 +137,20 @@ public class ClassificationService {
 	public static final int RESULT_PROCESSING_THREADS = 2;// Two threads is a good limit here. The processing is very Elasticsearch heavy while looking up inferred-not-stated values.
 	private final ExecutorService classificationProcessingExecutor = Executors.newFixedThreadPool(RESULT_PROCESSING_THREADS);
 
+	private static final int RESULTS_BATCH_SIZE = 10_000;
+	private static final int RESULTS_SAVES_IN_FLIGHT = 2;
+	private final ExecutorService resultsSavingExecutor = Executors.newFixedThreadPool(RESULT_PROCESSING_THREADS * RESULTS_SAVES_IN_FLIGHT,
+			new ThreadFactoryBuilder().setNameFormat("classification-results-saving-%d").setDaemon(true).build());
+
 	private static final int SECOND = 1000;
 
 	private static final PageRequest PAGE_FIRST_1K = PageRequest.of(0, 1000);
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
+	@Value("${classification.save.bulk.enabled}")
+	private boolean bulkSave;
+
 	@Value("${jms.queue.prefix}")
 	private String jmsQueuePrefix;
 
@@ -230,7 +245,11 @@ public class ClassificationService {
 										try {
 											logger.info("Classification {} remote step complete after {} seconds. Processing results...", classification.getId(), getSecondsSince(classification.getCreationDate()));
 
+											// Results are not available until they are all saved, progress is saved while the status remains running
+											classification.setStatus(RUNNING);
+											classification.setRelationshipChangesProcessed(0L);
 											downloadRemoteResults(classification);
+											classification.setStatus(COMPLETED);
 
 											final String branchPath = classification.getPath();
 											boolean inferredRelationshipChangesFound = doGetRelationshipChanges(branchPath, classification.getId(),
@@ -305,6 +324,7 @@ public class ClassificationService {
 	public void shutdownPolling() {
 		shutdownRequested = true;
 		classificationProcessingExecutor.shutdown();
+		resultsSavingExecutor.shutdown();
 	}
 
 	public Page<Classification> findClassifications(String path) {
@@ -425,32 +445,11 @@ public class ClassificationService {
 								conceptToChangeMap.computeIfAbsent(parseLong(relationshipChange.getSourceId()), conceptId -> new ArrayList<>()).add(relationshipChange);
 							}
 
-							// Load concepts
-							final BranchCriteria branchCriteriaIncludingOpenCommit = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
-							Collection<Concept> concepts = conceptService.find(branchCriteriaIncludingOpenCommit, path, conceptToChangeMap.keySet(), Config.DEFAULT_LANGUAGE_DIALECTS);
-							Map<Long, Concept> conceptMap = concepts.stream().collect(Collectors.toMap(Concept::getConceptIdAsLong, Function.identity()));
-
-							// Apply changes to concepts
-							Set<String> orphanedRelationshipsToDelete = new HashSet<>();
-							for (Map.Entry<Long, List<RelationshipChange>> changes : conceptToChangeMap.entrySet()) {
-								Concept concept = conceptMap.get(changes.getKey());
-								List<RelationshipChange> relationshipChanges = changes.getValue();
-								if (concept != null) {
-									applyRelationshipChangesToConcept(concept, relationshipChanges, false);
-								} else {
-									// Concept must have been deleted. Remove orphaned inactive relationships.
-									orphanedRelationshipsToDelete.addAll(relationshipChanges.stream()
-											.filter(Predicate.not(RelationshipChange::isActive))
-											.map(RelationshipChange::getRelationshipId)
-											.collect(Collectors.toSet()));
-								}
-							}
-							if (!orphanedRelationshipsToDelete.isEmpty()) {
-								relationshipService.deleteRelationshipsWithinCommit(orphanedRelationshipsToDelete, commit);
+							if (bulkSave) {
+								saveRelationshipChangesInBulk(conceptToChangeMap, commit);
+							} else {
+								saveRelationshipChangesThroughConcepts(conceptToChangeMap, commit);
 							}
-
-							// Update concepts
-							conceptService.updateWithinCommit(concepts, commit);// Traceability is skipped here because it gets logged soon after
 						}
 
 						BranchClassificationStatusService.setClassificationStatus(commit.getBranch(), true);
@@ -473,6 +472,120 @@ public class ClassificationService {
 		}
 	}
 
+	private void saveRelationshipChangesThroughConcepts(Map<Long, List<RelationshipChange>> conceptToChangeMap, Commit commit) throws ServiceException {
+		// Load concepts
+		final BranchCriteria branchCriteriaIncludingOpenCommit = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+		Collection<Concept> concepts = conceptService.find(branchCriteriaIncludingOpenCommit, commit.getBranch().getPath(), conceptToChangeMap.keySet(), Config.DEFAULT_LANGUAGE_DIALECTS);
+		Map<Long, Concept> conceptMap = concepts.stream().collect(Collectors.toMap(Concept::getConceptIdAsLong, Function.identity()));
+
+		// Apply changes to concepts
+		Set<String> orphanedRelationshipsToDelete = new HashSet<>();
+		for (Map.Entry<Long, List<RelationshipChange>> changes : conceptToChangeMap.entrySet()) {
+			Concept concept = conceptMap.get(changes.getKey());
+			List<RelationshipChange> relationshipChanges = changes.getValue();
+			if (concept != null) {
+				applyRelationshipChangesToConcept(concept, relationshipChanges, false);
+			} else {
+				// Concept must have been deleted. Remove orphaned inactive relationships.
+				orphanedRelationshipsToDelete.addAll(relationshipChanges.stream()
+						.filter(Predicate.not(RelationshipChange::isActive))
+						.map(RelationshipChange::getRelationshipId)
+						.collect(Collectors.toSet()));
+			}
+		}
+		if (!orphanedRelationshipsToDelete.isEmpty()) {
+			relationshipService.deleteRelationshipsWithinCommit(orphanedRelationshipsToDelete, commit);
+		}
+
+		// Update concepts
+		conceptService.updateWithinCommit(concepts, commit);// Traceability is skipped here because it gets logged soon after
+	}
+
+	/**
+	 * Applies the changes to the relationships directly, without loading or saving whole concepts.
+	 * Only the concept modules and the existing versions of the changed relationships are loaded.
+	 */
+	private void saveRelationshipChangesInBulk(Map<Long, List<RelationshipChange>> conceptToChangeMap, Commit commit) throws ServiceException {
+		final BranchCriteria branchCriteriaIncludingOpenCommit = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+
+		// Load concept modules
+		Map<Long, String> conceptModules = new Long2ObjectOpenHashMap<>();
+		try (SearchHitsIterator<Concept> conceptHits = elasticsearchOperations.searchForStream(new NativeQueryBuilder()
+				.withQuery(bool(b -> b
+						.must(branchCriteriaIncludingOpenCommit.getEntityBranchCriteria(Concept.class))
+						.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptToChangeMap.keySet()))))
+				.withSourceFilter(new FetchSourceFilter(new String[]{Concept.Fields.CONCEPT_ID, SnomedComponent.Fields.MODULE_ID}, null))
+				.withPageable(LARGE_PAGE)
+				.build(), Concept.class)) {
+			conceptHits.forEachRemaining(hit -> conceptModules.put(hit.getContent().getConceptIdAsLong(), hit.getContent().getModuleId()));
+		}
+
+		// Load existing versions of the changed relationships
+		Set<String> relationshipIds = conceptToChangeMap.values().stream().flatMap(Collection::stream)
+				.map(RelationshipChange::getRelationshipId).filter(Predicate.not(Strings::isNullOrEmpty)).collect(Collectors.toSet());
+		Map<String, Relationship> existingRelationships = new HashMap<>();
+		if (!relationshipIds.isEmpty()) {
+			try (SearchHitsIterator<Relationship> relationshipHits = elasticsearchOperations.searchForStream(new NativeQueryBuilder()
+					.withQuery(bool(b -> b
+							.must(branchCriteriaIncludingOpenCommit.getEntityBranchCriteria(Relationship.class))
+							.must(termsQuery(Relationship.Fields.RELATIONSHIP_ID, relationshipIds))))
+					.withPageable(LARGE_PAGE)
+					.build(), Relationship.class)) {
+				relationshipHits.forEachRemaining(hit -> existingRelationships.put(hit.getContent().getRelationshipId(), hit.getContent()));
+			}
+		}
+
+		// Build the new and existing versions of each concept's changed relationships
+		List<Concept> newVersionConcepts = new ArrayList<>();
+		Map<String, Concept> existingConcepts = new HashMap<>();
+		Set<String> orphanedRelationshipsToDelete = new HashSet<>();
+		for (Map.Entry<Long, List<RelationshipChange>> changes : conceptToChangeMap.entrySet()) {
+			String moduleId = conceptModules.get(changes.getKey());
+			if (moduleId == null) {
+				// Concept must have been deleted. Remove orphaned inactive relationships.
+				changes.getValue().stream()
+						.filter(Predicate.not(RelationshipChange::isActive))
+						.map(RelationshipChange::getRelationshipId)
+						.forEach(orphanedRelationshipsToDelete::add);
+				continue;
+			}
+			String conceptId = changes.getKey().toString();
+			Concept newVersionConcept = new Concept(conceptId, moduleId);
+			Concept existingConcept = new Concept(conceptId, moduleId);
+			for (RelationshipChange relationshipChange : changes.getValue()) {
+				if (Strings.isNullOrEmpty(relationshipChange.getRelationshipId())) {
+					if (relationshipChange.isActive()) {
+						// Newly inferred relationship
+						newVersionConcept.addRelationship(new Relationship(null, null, true, moduleId, null, relationshipChange.getDestinationOrValue(),
+								relationshipChange.getGroup(), relationshipChange.getTypeId(), relationshipChange.getCharacteristicTypeId(), relationshipChange.getModifierId()));
+					}
+					continue;
+				}
+				Relationship existing = existingRelationships.get(relationshipChange.getRelationshipId());
+				if (existing == null) {
+					throw new ServiceException(String.format("Relationship %s not found within Concept %s so can not apply update.", relationshipChange.getRelationshipId(), conceptId));
+				}
+				existingConcept.addRelationship(existing);
+				if (relationshipChange.isActive()) {
+					// Existing relationship change - could be a reactivation or group change
+					Relationship relationship = new Relationship();
+					relationship.clone(existing);
+					relationship.setActive(true);
+					relationship.setGroupId(relationshipChange.getGroup());
+					newVersionConcept.addRelationship(relationship);
+				}
+				// Redundant relationships are left out of the new version
+			}
+			newVersionConcepts.add(newVersionConcept);
+			existingConcepts.put(conceptId, existingConcept);
+		}
+		if (!orphanedRelationshipsToDelete.isEmpty()) {
+			relationshipService.deleteRelationshipsWithinCommit(orphanedRelationshipsToDelete, commit);
+		}
+
+		conceptUpdateHelper.saveRelationshipChanges(newVersionConcepts, existingConcepts, commit);
+	}
+
 	private void setClassificationSaveMetadata(Commit commit) {
 		BranchMetadataHelper.disableContentAutomationsForCommit(commit);
 		BranchMetadataHelper.classificationCommit(commit);
@@ -636,113 +749,137 @@ public class ClassificationService {
 
 		reader.readLine(); // Read and discard header line
 
-		List<RelationshipChange> relationshipChanges = new ArrayList<>();
+		// Changes are read, marked and saved in batches. The save of one batch overlaps with reading and marking the next.
+		NumberFormat numberFormat = NumberFormat.getIntegerInstance();
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(classification.getPath());
+		Deque<Future<?>> saves = new ArrayDeque<>();
+		TabDelimitedLine values = new TabDelimitedLine();
+		List<RelationshipChange> batch = new ArrayList<>(RESULTS_BATCH_SIZE);
+		long total = 0;
 		String line;
-		long activeRows = 0;
-		boolean active;
-		while ((line = reader.readLine()) != null) {
+		try {
+			while ((line = reader.readLine()) != null) {
+
+				// Relationship Header:
+				// id	effectiveTime	active	moduleId	sourceId	destinationId	relationshipGroup	typeId	characteristicTypeId	modifierId
+
+				// Concrete Relationship Header:
+				// id	effectiveTime	active	moduleId	sourceId	value	relationshipGroup	typeId	characteristicTypeId	modifierId
+
+				values.reset(line);
+				batch.add(new RelationshipChange(
+						classification.getId(),
+						values.get(RelationshipFieldIndexes.id),
+						values.equals(RelationshipFieldIndexes.active, "1"),
+						values.get(RelationshipFieldIndexes.sourceId),
+						values.get(RelationshipFieldIndexes.destinationId),// destination or value depending on value of concrete flag
+						values.getInt(RelationshipFieldIndexes.relationshipGroup),
+						values.get(RelationshipFieldIndexes.typeId),
+						values.get(RelationshipFieldIndexes.modifierId),
+						concrete));
+				if (batch.size() == RESULTS_BATCH_SIZE) {
+					total += batch.size();
+					processRelationshipChangeBatch(classification, batch, branchCriteria, saves, total);
+					batch = new ArrayList<>(RESULTS_BATCH_SIZE);
+				}
+			}
+			if (!batch.isEmpty()) {
+				total += batch.size();
+				processRelationshipChangeBatch(classification, batch, branchCriteria, saves, total);
+			}
+			while (!saves.isEmpty()) {
+				awaitSave(saves.removeFirst());
+			}
+		} finally {
+			saves.forEach(save -> save.cancel(false));
+		}
+		if (total > 0) {
+			logger.info("Saved {} classification relationship changes for classification {}.", numberFormat.format(total), classification.getId());
+		}
+	}
 
-			// Relationship Header:
-			// id	effectiveTime	active	moduleId	sourceId	destinationId	relationshipGroup	typeId	characteristicTypeId	modifierId
+	private void processRelationshipChangeBatch(Classification classification, List<RelationshipChange> batch, BranchCriteria branchCriteria,
+			Deque<Future<?>> saves, long total) throws ElasticsearchException {
 
-			// Concrete Relationship Header:
-			// id	effectiveTime	active	moduleId	sourceId	value	relationshipGroup	typeId	characteristicTypeId	modifierId
+		markInferredNotStated(batch, branchCriteria);
 
-			String[] values = line.split("\\t");
-			active = "1".equals(values[RelationshipFieldIndexes.active]);
-			relationshipChanges.add(new RelationshipChange(
-					classification.getId(),
-					values[RelationshipFieldIndexes.id],
-					active,
-					values[RelationshipFieldIndexes.sourceId],
-					values[RelationshipFieldIndexes.destinationId],// destination or value depending on value of concrete flag
-					Integer.parseInt(values[RelationshipFieldIndexes.relationshipGroup]),
-					values[RelationshipFieldIndexes.typeId],
-					values[RelationshipFieldIndexes.modifierId],
-					concrete));
-			if (active) {
-				activeRows++;
-			}
+		// Limit the batches held in memory
+		if (saves.size() == RESULTS_SAVES_IN_FLIGHT) {
+			awaitSave(saves.removeFirst());
 		}
+		saves.add(resultsSavingExecutor.submit(() -> relationshipChangeRepository.saveAll(batch)));
 
-		// - Mark inferred not previously stated changes -
-		// Build query to find concepts in the stated semantic index which do not contain the inferred parents or attributes
-		NumberFormat numberFormat = NumberFormat.getIntegerInstance();
-		if (activeRows > 0) {
-			logger.info("Looking up 'inferred not previously stated' values for {} active inferred relationship changes for classification {}.",
-					numberFormat.format(activeRows), classification.getId());
+		Long processed = classification.getRelationshipChangesProcessed();
+		classification.setRelationshipChangesProcessed((processed != null ? processed : 0) + batch.size());
+		if (total > RESULTS_BATCH_SIZE || batch.size() == RESULTS_BATCH_SIZE) {
+			logger.info("Processed {} classification relationship changes for classification {}.", NumberFormat.getIntegerInstance().format(total), classification.getId());
+			classificationRepository.save(classification);
 		}
-		long rowsProcessed = 0;
-		Map<Long, List<RelationshipChange>> activeConceptChanges = new HashMap<>();
-
-		// The max clauses for bool query in elastic search by default is 1024
-		for (List<RelationshipChange> relationshipChangePartition : Lists.partition(relationshipChanges, 1000)) {
-			BoolQuery.Builder allConceptsQueryBuilder = bool();
-			for (RelationshipChange relationshipChange : relationshipChangePartition) {
-				if (relationshipChange.isActive()) {
-					Long sourceId = parseLong(relationshipChange.getSourceId());
-					BoolQuery.Builder conceptQuery = bool().must(termQuery(QueryConcept.Fields.CONCEPT_ID, sourceId));
-					if (relationshipChange.getTypeId().equals(Concepts.ISA)) {
-						conceptQuery.mustNot(termQuery(QueryConcept.Fields.PARENTS, relationshipChange.getDestinationId()));
-					} else {
-						conceptQuery.mustNot(termQuery(QueryConcept.Fields.ATTR + "." + relationshipChange.getTypeId(), relationshipChange.getDestinationOrValueWithoutPrefix()));
-					}
-					allConceptsQueryBuilder.should(conceptQuery.build()._toQuery());
-					activeConceptChanges.computeIfAbsent(sourceId, id -> new ArrayList<>()).add(relationshipChange);
-					rowsProcessed++;
-					if (rowsProcessed % 1_000 == 0) {
-						logger.info("Processing row {} of {} for classification {}", numberFormat.format(rowsProcessed), numberFormat.format(activeRows), classification.getId());
-					}
-				}
-			}
+	}
 
-			// make sure the should clause is not empty before running semantic index search
-			if (!allConceptsQueryBuilder.hasClauses()) {
-				continue;
+	/**
+	 * Marks active changes with a parent or attribute which is not in the stated semantic index of the source concept.
+	 * The stated semantic index entries of all source concepts in the batch are fetched in one query and compared in memory.
+	 */
+	private void markInferredNotStated(List<RelationshipChange> batch, BranchCriteria branchCriteria) {
+		Map<Long, List<RelationshipChange>> activeConceptChanges = new Long2ObjectOpenHashMap<>();
+		for (RelationshipChange relationshipChange : batch) {
+			if (relationshipChange.isActive()) {
+				activeConceptChanges.computeIfAbsent(parseLong(relationshipChange.getSourceId()), id -> new ArrayList<>()).add(relationshipChange);
 			}
+		}
+		if (activeConceptChanges.isEmpty()) {
+			return;
+		}
 
-			BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(classification.getPath());
-			try (SearchHitsIterator<QueryConcept> semanticIndexConcepts = elasticsearchOperations.searchForStream(
-					new NativeQueryBuilder()
-							.withQuery(bool(b -> b
-									.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
-									.must(termQuery(QueryConcept.Fields.STATED, true))))
-							.withFilter(allConceptsQueryBuilder.build()._toQuery())
-							.withPageable(LARGE_PAGE).build(),
-					QueryConcept.class)) {
-
-				semanticIndexConcepts.forEachRemaining(hit -> {
-					// One or more inferred attributes or parents do not exist on this stated semanticIndexConcept
-					List<RelationshipChange> conceptChanges = activeConceptChanges.get(hit.getContent().getConceptIdL());
-					if (conceptChanges != null) {
-						Map<String, Set<Object>> conceptAttributes = hit.getContent().getAttr();
-						for (RelationshipChange relationshipChange : conceptChanges) {
-							if (relationshipChange.getTypeId().equals(Concepts.ISA)) {
-								if (!hit.getContent().getParents().contains(parseLong(relationshipChange.getDestinationId()))) {
-									relationshipChange.setInferredNotStated(true);
-								}
-							} else {
-								if (!conceptAttributes.getOrDefault(relationshipChange.getTypeId(), Collections.emptySet())
-                                        .contains(relationshipChange.getDestinationOrRawValue())) {
-									relationshipChange.setInferredNotStated(true);
-								}
+		try (SearchHitsIterator<QueryConcept> semanticIndexConcepts = elasticsearchOperations.searchForStream(
+				new NativeQueryBuilder()
+						.withQuery(bool(b -> b
+								.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+								.must(termQuery(QueryConcept.Fields.STATED, true))))
+						.withFilter(termsQuery(QueryConcept.Fields.CONCEPT_ID, activeConceptChanges.keySet()))
+						.withSourceFilter(new FetchSourceFilter(new String[]{QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.PARENTS, QueryConcept.Fields.ATTR_MAP}, null))
+						.withPageable(LARGE_PAGE).build(),
+				QueryConcept.class)) {
+
+			semanticIndexConcepts.forEachRemaining(hit -> {
+				List<RelationshipChange> conceptChanges = activeConceptChanges.get(hit.getContent().getConceptIdL());
+				if (conceptChanges != null) {
+					Map<String, Set<Object>> conceptAttributes = hit.getContent().getAttr();
+					for (RelationshipChange relationshipChange : conceptChanges) {
+						if (relationshipChange.getTypeId().equals(Concepts.ISA)) {
+							if (!hit.getContent().getParents().contains(parseLong(relationshipChange.getDestinationId()))) {
+								relationshipChange.setInferredNotStated(true);
 							}
+						} else if (!isAttributeStated(conceptAttributes.getOrDefault(relationshipChange.getTypeId(), Collections.emptySet()), relationshipChange)) {
+							relationshipChange.setInferredNotStated(true);
 						}
 					}
-				});
-			}
+				}
+			});
 		}
+	}
 
-		if (!relationshipChanges.isEmpty()) {
-			logger.info("Saving {} classification relationship changes total.", numberFormat.format(relationshipChanges.size()));
-			int chunkSize = 10_000;
-			List<List<RelationshipChange>> partition = Lists.partition(relationshipChanges, chunkSize);
-			for (List<RelationshipChange> changes : partition) {
-				if (relationshipChanges.size() > chunkSize) {
-					logger.info("Saving batch of {} classification relationship changes.", numberFormat.format(changes.size()));
-				}
-				relationshipChangeRepository.saveAll(changes);
+	private static boolean isAttributeStated(Set<Object> statedValues, RelationshipChange relationshipChange) {
+		if (statedValues.contains(relationshipChange.getDestinationOrRawValue())) {
+			return true;
+		}
+		// Concrete values are matched by their text, as they were by the semantic index query
+		String value = relationshipChange.getDestinationOrValueWithoutPrefix();
+		return statedValues.stream().anyMatch(statedValue -> statedValue.toString().equals(value));
+	}
+
+	private void awaitSave(Future<?> save) throws ElasticsearchException {
+		try {
+			save.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeServiceException("Interrupted while saving classification relationship changes.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
 			}
+			throw new RuntimeServiceException("Failed to save classification relationship changes.", e.getCause());
 		}
 	}
 
@@ -1,25 +1,43 @@
 package org.snomed.snowstorm.core.data.services.identifier;
 
-import java.util.Deque;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Lock-free pool of reserved identifiers for one namespace/partition.
+ * <p>
+ * Each top up is held as a segment of identifiers in a primitive array with a claim cursor. Identifiers are taken by first reserving a count
+ * against the number available and then claiming ranges from the oldest segments, so a request for many identifiers costs one compare-and-set
+ * per segment rather than one operation per identifier and requests never wait for each other or for a top up.
+ */
 public class IdentifierCache {
-	
+
 	private final int namespaceId;
 	private final String partitionId;
 	private final int maxCapacity;
-	private boolean topUpInProgress = false;
-	private boolean isLocked = false;
-	
-	private Deque<Long> identifiers = new ConcurrentLinkedDeque<>();
-	
+
+	// Capacity to top up to, grows above the configured capacity while identifiers are being used quickly
+	private volatile int targetCapacity;
+	private final AtomicBoolean topUpInProgress = new AtomicBoolean();
+	private volatile boolean toppedUp;
+
+	private final Queue<Segment> segments = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger available = new AtomicInteger();
+
+	// Identifiers taken since the last top up check
+	private final LongAdder taken = new LongAdder();
+
 	IdentifierCache(int namespaceId, String partitionId, int maxCapacity) {
 		this.namespaceId = namespaceId;
 		this.partitionId = partitionId;
 		this.maxCapacity = maxCapacity;
+		this.targetCapacity = maxCapacity;
 	}
-	
+
 	public int getNamespaceId() {
 		return namespaceId;
 	}
@@ -29,42 +47,114 @@ public class IdentifierCache {
 	public int getMaxCapacity() {
 		return maxCapacity;
 	}
-	
+
+	public int getTargetCapacity() {
+		return targetCapacity;
+	}
+
 	public int identifiersAvailable() {
-		return identifiers.size();
+		return available.get();
 	}
-	
-	Long getIdentifier() {
-		return identifiers.pop();
+
+	/**
+	 * Takes the given number of identifiers, or none if not enough are available.
+	 * @return The identifiers or null if not enough are available.
+	 */
+	long[] take(int quantity) {
+		int current;
+		do {
+			current = available.get();
+			if (current < quantity) {
+				return null;
+			}
+		} while (!available.compareAndSet(current, current - quantity));
+
+		// The count is reserved so the segments are sure to hold enough unclaimed identifiers
+		long[] identifiers = new long[quantity];
+		int filled = 0;
+		while (filled < quantity) {
+			Segment segment = segments.peek();
+			if (segment == null) {
+				// Not expected, segments are queued before their identifiers are counted as available
+				Thread.onSpinWait();
+				continue;
+			}
+			int wanted = quantity - filled;
+			int start = segment.cursor.getAndAdd(wanted);
+			if (start >= segment.identifiers.length) {
+				segments.remove(segment);
+				continue;
+			}
+			int count = Math.min(wanted, segment.identifiers.length - start);
+			System.arraycopy(segment.identifiers, start, identifiers, filled, count);
+			filled += count;
+			if (start + count == segment.identifiers.length) {
+				segments.remove(segment);
+			}
+		}
+		taken.add(quantity);
+		return identifiers;
 	}
 
 	public boolean isTopUpInProgress() {
-		return topUpInProgress;
+		return topUpInProgress.get();
+	}
+
+	/**
+	 * @return false if another top up is already in progress.
+	 */
+	boolean startTopUp() {
+		return topUpInProgress.compareAndSet(false, true);
 	}
 
-	public synchronized void setTopUpInProgress(boolean topUpInProgress) {
-		this.topUpInProgress = topUpInProgress;
+	void endTopUp() {
+		topUpInProgress.set(false);
 	}
 
 	public void topUp(List<Long> newIdentifiers) {
-		identifiers.addAll(newIdentifiers);
+		long[] identifiers = new long[newIdentifiers.size()];
+		for (int i = 0; i < identifiers.length; i++) {
+			identifiers[i] = newIdentifiers.get(i);
+		}
+		segments.add(new Segment(identifiers));
+		available.addAndGet(identifiers.length);
+		toppedUp = true;
+	}
+
+	boolean hasBeenToppedUp() {
+		return toppedUp;
 	}
 
-	public boolean lock() {
-		if (isLocked) {
-			return false;
-		} 
-		isLocked = true;
-		return true;
+	/**
+	 * Doubles the capacity, up to a limit, when the identifiers ran low between top ups.
+	 */
+	void growCapacity(int maxGrowth) {
+		targetCapacity = (int) Math.min((long) targetCapacity * 2, (long) maxCapacity * maxGrowth);
 	}
-	
-	public void unlock() {
-		isLocked = false;
+
+	/**
+	 * Halves the capacity, down to the configured capacity, if few identifiers were taken since the last check.
+	 */
+	void shrinkCapacityIfUnused(double topUpLevel) {
+		long takenSinceLastCheck = taken.sumThenReset();
+		int capacity = targetCapacity;
+		if (capacity > maxCapacity && takenSinceLastCheck < capacity * (1 - topUpLevel) / 2) {
+			targetCapacity = Math.max(maxCapacity, capacity / 2);
+		}
 	}
-	
+
 	@Override
 	public String toString() {
 		return "IdCache(" + namespaceId + " - " + partitionId + ")";
 	}
 
+	private static final class Segment {
+
+		private final long[] identifiers;
+		private final AtomicInteger cursor = new AtomicInteger();
+
+		private Segment(long[] identifiers) {
+			this.identifiers = identifiers;
+		}
+	}
 }
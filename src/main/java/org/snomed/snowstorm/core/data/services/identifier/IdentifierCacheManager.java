@@ -3,7 +3,6 @@ package org.snomed.snowstorm.core.data.services.identifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.ComponentType;
-import org.snomed.snowstorm.core.data.services.RuntimeServiceException;
 import org.snomed.snowstorm.core.data.services.ServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -11,22 +10,24 @@ import org.springframework.beans.factory.annotation.Value;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 public class IdentifierCacheManager implements Runnable {
 
 	// Time between successive polls in minutes
 	private int pollingIntervalMinutes = 10;
 
-	// Wait max to have access to cache
-	private int lockWaitLimitMilliseconds = 5 * 1000;
-	private int lockRetryMilliseconds = 200;
-
 	// Proportion below which cache will be topped up on next poll
 	final static double topUpLevel = 0.7;
 
 	// Proportion below which cache will be topped up during next bulk request
 	private final static double criticalLevel = 0.1;
 
+	// Limit to how far the capacity of a cache grows while identifiers are used faster than it is topped up, as a multiple of the configured capacity
+	private final static int maxCapacityGrowth = 8;
+
 	@Autowired
 	private IdentifierSource identifierSource;
 
@@ -34,15 +35,15 @@ public class IdentifierCacheManager implements Runnable {
 	private int conceptIdPrefetchCount;
 
 	// Separate cache for each namespace/partition combination configured.
-	private Set<IdentifierCache> identifierCaches = Collections.synchronizedSet(new HashSet<>());
-	private Thread cacheDaemon;
-	private boolean stayAlive = true;
-	boolean isSleeping = false;
+	private final Map<String, IdentifierCache> identifierCaches = new ConcurrentHashMap<>();
+	private volatile Thread cacheDaemon;
+	private volatile boolean stayAlive = true;
+	volatile boolean isSleeping = false;
 
 	private static final Logger logger = LoggerFactory.getLogger(IdentifierCacheManager.class);
 
 	public void addCache(int namespaceId, String partitionId, int quantity) {
-		identifierCaches.add(new IdentifierCache(namespaceId, partitionId, quantity));
+		identifierCaches.putIfAbsent(getCacheKey(namespaceId, partitionId), new IdentifierCache(namespaceId, partitionId, quantity));
 	}
 
 	@PostConstruct
@@ -72,12 +73,11 @@ public class IdentifierCacheManager implements Runnable {
 				logger.warn("Identifier cache top ups took longer than polling interval: {}ms", timeTaken);
 			} else {
 				long timeRemaining = pollingIntervalMillis - timeTaken;
-				try {
-					isSleeping = true;
-					//Don't mind being interrupted while sleeping.
-					Thread.sleep(timeRemaining);
-					isSleeping = false;
-				} catch (InterruptedException e) {
+				isSleeping = true;
+				// Woken early when a cache runs below the top up level
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(timeRemaining));
+				isSleeping = false;
+				if (Thread.interrupted()) {
 					logger.info("Identifier cache manager sleep interrupted.");
 				}
 			}
@@ -86,7 +86,7 @@ public class IdentifierCacheManager implements Runnable {
 	}
 	
 	public boolean topUpInProgress() {
-		for (IdentifierCache thisCache : identifierCaches) {
+		for (IdentifierCache thisCache : identifierCaches.values()) {
 			if (thisCache.isTopUpInProgress()) {
 				return true;
 			}
@@ -97,8 +97,9 @@ public class IdentifierCacheManager implements Runnable {
 	void checkTopUpRequired() {
 		try {
 			//Work through each cache and see if number of identifiers is below top up level
-			for (IdentifierCache thisCache : identifierCaches) {
-				if ((double)thisCache.identifiersAvailable() < (double)thisCache.getMaxCapacity() * topUpLevel) {
+			for (IdentifierCache thisCache : identifierCaches.values()) {
+				thisCache.shrinkCapacityIfUnused(topUpLevel);
+				if ((double)thisCache.identifiersAvailable() < (double)thisCache.getTargetCapacity() * topUpLevel) {
 					topUp(thisCache, 0);
 				}
 			}
@@ -108,12 +109,11 @@ public class IdentifierCacheManager implements Runnable {
 	}
 
 	void topUp(IdentifierCache cache, int extraRequired) {
-		if (cache.isTopUpInProgress()) {
+		if (!cache.startTopUp()) {
 			logger.warn("Top-up already in progress for {}", cache);
 			return;
 		}
-		cache.setTopUpInProgress(true);
-		int quantityRequired = cache.getMaxCapacity() - cache.identifiersAvailable() + extraRequired;
+		int quantityRequired = cache.getTargetCapacity() - cache.identifiersAvailable() + extraRequired;
 		try {
 			logger.info("Topping up {} by {}", cache, quantityRequired);
 			List<Long> newIdentifiers = identifierSource.reserveIds(cache.getNamespaceId(), cache.getPartitionId(), quantityRequired);
@@ -122,7 +122,15 @@ public class IdentifierCacheManager implements Runnable {
 		} catch (Exception e) {
 			logger.error("Failed to top-up {} with {} identifiers ",cache, quantityRequired,e);
 		} finally {
-			cache.setTopUpInProgress(false);
+			cache.endTopUp();
+		}
+	}
+
+	// Wakes the background task to top up without waiting for the next poll
+	private void requestTopUp() {
+		Thread daemon = cacheDaemon;
+		if (daemon != null) {
+			LockSupport.unpark(daemon);
 		}
 	}
 
@@ -141,20 +149,24 @@ public class IdentifierCacheManager implements Runnable {
 		if (cache != null) {
 			//Does cache need topping up anyway?
 			if (cache.identifiersAvailable() == 0 || 
-					( cache.identifiersAvailable() < (double)cache.getMaxCapacity() * criticalLevel 
+					( cache.identifiersAvailable() < (double)cache.getTargetCapacity() * criticalLevel
 							&& quantityRequired > 5)
 					){
+				if (cache.hasBeenToppedUp()) {
+					// Identifiers are being used faster than the cache is topped up
+					cache.growCapacity(maxCapacityGrowth);
+				}
 				topUp(cache, quantityRequired);
 			}
 
-			//Does it have enough available?
-			if (cache.identifiersAvailable() > quantityRequired) {
-				waitForLock(cache);
-				for (int i=0; i < quantityRequired; i++) {
-					idBlock.addId(componentType, cache.getIdentifier());
-				}
-				cache.unlock();
+			//Take from the cache if it has enough available, without waiting for other requests
+			long[] identifiers = cache.take(quantityRequired);
+			if (identifiers != null) {
+				idBlock.addAll(componentType, identifiers);
 				requestSatisfied = true;
+				if (cache.identifiersAvailable() < (double)cache.getTargetCapacity() * topUpLevel) {
+					requestTopUp();
+				}
 			}
 		} else {
 			//If no cache available & not requesting for International (as already prefetched),
@@ -184,32 +196,12 @@ public class IdentifierCacheManager implements Runnable {
         };
 	}
 
-	private void waitForLock(IdentifierCache cache) {
-		boolean lockedSuccessfully = false;
-		int totalWaitTime = 0;
-		do {
-			lockedSuccessfully = cache.lock();
-			if (!lockedSuccessfully) {
-				if (totalWaitTime > lockWaitLimitMilliseconds) {
-					throw new RuntimeServiceException("Lock wait limit exceeded on identifier cache " + cache);
-				}
-				try {
-					Thread.sleep(lockRetryMilliseconds);
-				} catch (InterruptedException e) {
-					throw new RuntimeServiceException("Lock wait interrupted",e);
-				}
-				totalWaitTime += lockRetryMilliseconds;
-			}
-		} while (!lockedSuccessfully);
+	IdentifierCache getCache(int namespaceId, String partitionId) {
+		return identifierCaches.get(getCacheKey(namespaceId, partitionId));
 	}
 
-	IdentifierCache getCache(int namespaceId, String partitionId) {
-		for (IdentifierCache thisCache : identifierCaches) {
-			if (thisCache.getPartitionId().equals(partitionId) && thisCache.getNamespaceId() == namespaceId) {
-				return thisCache;
-			}
-		}
-		return null;
+	private static String getCacheKey(int namespaceId, String partitionId) {
+		return namespaceId + "_" + partitionId;
 	}
 
 	public void stopBackgroundTask() {
@@ -37,6 +37,13 @@ public class IdentifierReservedBlock {
 		idsReserved.get(componentType).addAll(sctIds);
 	}
 
+	void addAll(ComponentType componentType, long[] sctIds) {
+		Queue<Long> reserved = idsReserved.get(componentType);
+		for (long sctId : sctIds) {
+			reserved.add(sctId);
+		}
+	}
+
 	Collection<Long> getIdsAssigned(ComponentType componentType) {
 		return idsAssigned.get(componentType);
 	}
@@ -17,6 +17,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 @Service
@@ -47,6 +48,9 @@ public class IdentifierService {
 	@Autowired
 	private IdentifiersForRegistrationRepository identifiersForRegistrationRepository;
 
+	// Set while a registration round runs, another round is skipped rather than waiting
+	private final AtomicBoolean registering = new AtomicBoolean();
+
 	private static final Logger logger = LoggerFactory.getLogger(IdentifierService.class);
 
 	public static boolean isConceptId(String sctid) {
@@ -113,25 +117,34 @@ public class IdentifierService {
 	}
 
 	@Scheduled(fixedDelay = 30_000)
-	public synchronized void registerIdentifiers() {
+	public void registerIdentifiers() {
 		if (!registrationEnabled) {
 			logger.debug("SCTID Registration process disabled.");
 			return;
 		}
-		// Gather sets of identifiers and group by namespace, then register
-		Iterable<IdentifiersForRegistration> roundOfIdentifiers = identifiersForRegistrationRepository.findAll();
-		Map<Integer, Set<Long>> namespaceIdentifierMap = getNamespaceIdentifierMap(roundOfIdentifiers);
+		if (!registering.compareAndSet(false, true)) {
+			logger.debug("SCTID Registration already running.");
+			return;
+		}
 		try {
+			// Gather sets of identifiers and group by namespace, then register
+			Iterable<IdentifiersForRegistration> roundOfIdentifiers = identifiersForRegistrationRepository.findAll();
+			Map<Integer, Set<Long>> namespaceIdentifierMap = getNamespaceIdentifierMap(roundOfIdentifiers);
 			for (Map.Entry<Integer, Set<Long>> entry : namespaceIdentifierMap.entrySet()) {
 				Integer namespace = entry.getKey();
-				identifierSource.registerIds(namespace, entry.getValue());
+				// Bulk registration calls of at most one chunk each
+				for (List<Long> chunk : ListUtils.partition(new ArrayList<>(entry.getValue()), registrationChunkSize)) {
+					identifierSource.registerIds(namespace, chunk);
+				}
 				logger.info("Registered {} identifiers for namespace {}", entry.getValue().size(), namespace);
 			}
 			// Once registered delete identifiers from temp store
 			identifiersForRegistrationRepository.deleteAll(roundOfIdentifiers);
 		} catch (ServiceException e) {
 			logger.warn("Failed to register identifiers. They are in persistent storage, will retry later.", e);
-		} 
+		} finally {
+			registering.set(false);
+		}
 	}
 
 	protected Map<Integer, Set<Long>> getNamespaceIdentifierMap(Iterable<IdentifiersForRegistration> roundOfIdentifiers) {
@@ -0,0 +1,261 @@
+package org.snomed.snowstorm.core.data.services.identifier;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.*;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static io.kaicode.elasticvc.helper.QueryHelper.regexpQuery;
+import static io.kaicode.elasticvc.helper.QueryHelper.termsQuery;
+
+/**
+ * The item identifiers used in one namespace and partition across all branches and versions, for the local identifier sources.
+ * <p>
+ * The identifiers are read from the store once, as a stream, when first needed and held as a bitmap of item identifiers.
+ * The store remains the record of which identifiers are used, the bitmap is rebuilt from it after a restart.
+ * The read runs in the background without holding the lock of the bitmap, so blocks can be released and identifiers found in the store
+ * can be added meanwhile. Sequential reservations wait for the read because they need the highest identifier used,
+ * random identifiers are not held up, until the read completes they are only checked against the store.
+ * Identifiers saved without being reserved here, for example by an import, are found by checking each new block of identifiers
+ * against the store with one query, those found are added to the bitmap.
+ */
+class UsedItemIdentifiers {
+
+	// Item identifiers of up to 8 digits keep the SCTID within 18 digits
+	static final int MAX_ITEM_ID = 99_999_999;
+
+	private static final int CHECK_BATCH_SIZE = 10_000;
+
+	private static final ExecutorService LOAD_EXECUTOR = Executors.newCachedThreadPool(
+			new ThreadFactoryBuilder().setNameFormat("used-item-identifiers-%d").setDaemon(true).build());
+
+	private final ElasticsearchOperations elasticsearchOperations;
+	private final int namespaceId;
+	private final String partitionId;
+	private final Class<? extends SnomedComponent<?>> componentClass;
+	private final String idField;
+
+	// SCTID without check digit = item identifier * itemMultiplier + namespaceAndPartition
+	private final long itemMultiplier;
+	private final long namespaceAndPartition;
+
+	private final RoaringBitmap itemIds = new RoaringBitmap();
+	private volatile boolean loaded;
+	private CompletableFuture<Void> loading;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	UsedItemIdentifiers(ElasticsearchOperations elasticsearchOperations, int namespaceId, String partitionId) {
+		this.elasticsearchOperations = elasticsearchOperations;
+		this.namespaceId = namespaceId;
+		this.partitionId = partitionId;
+		switch (partitionId) {
+			case "00", "10" -> {
+				// Concept identifier
+				componentClass = Concept.class;
+				idField = Concept.Fields.CONCEPT_ID;
+			}
+			case "01", "11" -> {
+				// Description identifier
+				componentClass = Description.class;
+				idField = Description.Fields.DESCRIPTION_ID;
+			}
+			case "02", "12" -> {
+				// Relationship identifier
+				componentClass = Relationship.class;
+				idField = Relationship.Fields.RELATIONSHIP_ID;
+			}
+			case "16" -> {
+				// Expression identifier
+				componentClass = ReferenceSetMember.class;
+				idField = ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID;
+			}
+			default -> throw new IllegalArgumentException(String.format("Partition '%s' is not handled by the configured identifier generator.", partitionId));
+		}
+
+		long namespaceMultiplier = 1;
+		if (namespaceId != 0) {
+			for (int remaining = namespaceId; remaining != 0; remaining /= 10) {
+				namespaceMultiplier *= 10;
+			}
+		}
+		itemMultiplier = namespaceMultiplier * 100;
+		namespaceAndPartition = (long) namespaceId * 100 + Integer.parseInt(partitionId);
+	}
+
+	/**
+	 * @return The SCTID, including the check digit, of the item identifier in this namespace and partition.
+	 */
+	long toSctid(long itemId) {
+		return VerhoeffCheck.appendChecksumDigit(itemId * itemMultiplier + namespaceAndPartition);
+	}
+
+	/**
+	 * Marks a contiguous block of item identifiers after the highest used as used.
+	 * @return The first item identifier of the block.
+	 */
+	int reserveBlockAfterHighest(int minimumItemId, int quantity) {
+		awaitLoaded();
+		synchronized (this) {
+			int first = Math.max(itemIds.isEmpty() ? 0 : itemIds.last(), minimumItemId - 1) + 1;
+			if ((long) first + quantity - 1 > MAX_ITEM_ID) {
+				throw new IllegalStateException(String.format("No more item identifiers available in namespace %s partition %s.", namespaceId, partitionId));
+			}
+			itemIds.add((long) first, (long) first + quantity);
+			return first;
+		}
+	}
+
+	/**
+	 * Releases a block of item identifiers that was reserved but not handed out, apart from those found in the store.
+	 */
+	synchronized void releaseBlock(int first, int quantity, Collection<Long> storedSctids) {
+		itemIds.remove((long) first, (long) first + quantity);
+		for (Long storedSctid : storedSctids) {
+			long itemId = toItemId(storedSctid);
+			if (itemId != -1) {
+				itemIds.add((int) itemId);
+			}
+		}
+	}
+
+	/**
+	 * Until the used identifiers have been read from the store only identifiers found by {@link #findStored(List)} are known to be used.
+	 */
+	boolean isUsed(long itemId) {
+		if (itemId > MAX_ITEM_ID) {
+			return true;
+		}
+		if (!loaded) {
+			startLoading();
+		}
+		synchronized (this) {
+			return itemIds.contains((int) itemId);
+		}
+	}
+
+	/**
+	 * Checks the identifiers against the store, in any branch or version, and marks the item identifiers of those found as used.
+	 * @return The identifiers found in the store.
+	 */
+	LongList findStored(List<Long> sctids) {
+		LongList stored = new LongArrayList();
+		for (List<Long> batch : Lists.partition(sctids, CHECK_BATCH_SIZE)) {
+			NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
+					.withQuery(termsQuery(idField, batch))
+					.withSourceFilter(new FetchSourceFilter(new String[]{idField}, null))
+					.withPageable(PageRequest.of(0, batch.size()));
+			elasticsearchOperations.search(queryBuilder.build(), componentClass)
+					.forEach(hit -> stored.add(Long.parseLong(getSctid(hit.getContent()))));
+		}
+		if (!stored.isEmpty()) {
+			synchronized (this) {
+				for (long storedSctid : stored) {
+					long itemId = toItemId(storedSctid);
+					if (itemId != -1) {
+						itemIds.add((int) itemId);
+					}
+				}
+			}
+		}
+		return stored;
+	}
+
+	private void awaitLoaded() {
+		if (loaded) {
+			return;
+		}
+		try {
+			startLoading().join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw e;
+		}
+	}
+
+	private synchronized CompletableFuture<Void> startLoading() {
+		// A failed read is tried again by the next caller
+		if (loading == null || loading.isCompletedExceptionally()) {
+			loading = CompletableFuture.runAsync(this::load, LOAD_EXECUTOR).whenComplete((result, e) -> {
+				if (e != null) {
+					logger.warn("Failed to load the used item identifiers of namespace {} partition {}.", namespaceId, partitionId, e);
+				}
+			});
+		}
+		return loading;
+	}
+
+	private void load() {
+		long start = System.currentTimeMillis();
+		String regex;
+		if (namespaceId == 0) {
+			// International
+			// Restricting sequence length avoids matching extensions and long International model ids like "900000000000550004"
+			regex = String.format("[0-9]{1,8}%s[0-9]", partitionId);
+		} else {
+			// Extension
+			regex = String.format("[0-9]{1,8}%s%s[0-9]", namespaceId, partitionId);
+		}
+		NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
+				.withQuery(regexpQuery(idField, regex))
+				.withSourceFilter(new FetchSourceFilter(new String[]{idField}, null))
+				.withPageable(LARGE_PAGE);
+		RoaringBitmap storedItemIds = new RoaringBitmap();
+		try (SearchHitsIterator<? extends SnomedComponent<?>> stream = elasticsearchOperations.searchForStream(queryBuilder.build(), componentClass)) {
+			stream.forEachRemaining(hit -> {
+				long itemId = toItemId(Long.parseLong(getSctid(hit.getContent())));
+				if (itemId != -1) {
+					storedItemIds.add((int) itemId);
+				}
+			});
+		}
+		long count;
+		synchronized (this) {
+			// Keep any identifiers added while reading
+			itemIds.or(storedItemIds);
+			itemIds.runOptimize();
+			count = itemIds.getLongCardinality();
+			loaded = true;
+		}
+		logger.info("Loaded {} used item identifiers of namespace {} partition {} in {} ms.", count, namespaceId, partitionId,
+				System.currentTimeMillis() - start);
+	}
+
+	private String getSctid(SnomedComponent<?> component) {
+		if (component instanceof ReferenceSetMember member) {
+			return member.getReferencedComponentId();
+		}
+		return component.getId();
+	}
+
+	/**
+	 * @return The item identifier of the SCTID or -1 if the SCTID is not in this namespace and partition.
+	 */
+	private long toItemId(long sctid) {
+		long withoutCheckDigit = sctid / 10;
+		if (withoutCheckDigit % itemMultiplier != namespaceAndPartition) {
+			return -1;
+		}
+		long itemId = withoutCheckDigit / itemMultiplier;
+		return itemId > 0 && itemId <= MAX_ITEM_ID ? itemId : -1;
+	}
+}
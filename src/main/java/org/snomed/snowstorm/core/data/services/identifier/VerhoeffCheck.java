@@ -54,6 +54,21 @@ public class VerhoeffCheck {
 	 */
 	private static final char[] INV_TABLE = new char[] { 0, 4, 3, 2, 1, 5, 6, 7, 8, 9 };
 
+	/**
+	 * Multiplication and permutation tables combined for the primitive path,
+	 * indexed by <tt>checksum * 80 + position % 8 * 10 + digit</tt>.
+	 */
+	private static final byte[] D_P_TABLE = new byte[10 * 8 * 10];
+	static {
+		for (int checksum = 0; checksum < 10; checksum++) {
+			for (int position = 0; position < 8; position++) {
+				for (int digit = 0; digit < 10; digit++) {
+					D_P_TABLE[checksum * 80 + position * 10 + digit] = (byte) D_TABLE[checksum][P_TABLE[position][digit]];
+				}
+			}
+		}
+	}
+
 	/**
 	 * Verifies that the specified code has the right checksum digit at the end.
 	 * 
@@ -115,4 +130,32 @@ public class VerhoeffCheck {
 		}
 		return Character.forDigit(INV_TABLE[checksum], 10);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Calculates the check digit of a number without converting it to characters.
+	 * @param codeWithoutCheckDigit the number to be checked, not negative.
+	 * @return the proper value to use as a check digit, from 0 to 9.
+	 */
+	public static int calculateChecksumDigit(long codeWithoutCheckDigit) {
+		if (codeWithoutCheckDigit < 0) {
+			throw new IllegalArgumentException(String.format("Invalid negative code %d", codeWithoutCheckDigit));
+		}
+		int checksum = 0;
+		int position = 1;
+		long remaining = codeWithoutCheckDigit;
+		do {
+			checksum = D_P_TABLE[checksum * 80 + (position & 7) * 10 + (int) (remaining % 10)];
+			remaining /= 10;
+			position++;
+		} while (remaining != 0);
+		return INV_TABLE[checksum];
+	}
+
+	/**
+	 * @param codeWithoutCheckDigit the number to be checked, not negative.
+	 * @return the number with the check digit appended.
+	 */
+	public static long appendChecksumDigit(long codeWithoutCheckDigit) {
+		return codeWithoutCheckDigit * 10 + calculateChecksumDigit(codeWithoutCheckDigit);
+	}
+}
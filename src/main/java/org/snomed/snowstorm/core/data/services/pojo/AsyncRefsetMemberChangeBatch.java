@@ -1,7 +1,9 @@
 package org.snomed.snowstorm.core.data.services.pojo;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.snomed.snowstorm.core.util.TimerUtil;
 
+import java.io.File;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -9,6 +11,7 @@ import java.util.UUID;
 public class AsyncRefsetMemberChangeBatch {
 
 	private final String id;
+	private final String branch;
 	private final Date startTime;
 	private Status status;
 	private List<String> memberIds;
@@ -16,8 +19,15 @@ public class AsyncRefsetMemberChangeBatch {
 	private String message;
 	private Float secondsDuration;
 
-	public AsyncRefsetMemberChangeBatch() {
+	// Set by streaming imports, which do not list the member ids
+	private Integer rowsRead;
+	private Integer membersSaved;
+	private Integer errorCount;
+	private File errorsFile;
+
+	public AsyncRefsetMemberChangeBatch(String branch) {
 		id = UUID.randomUUID().toString();
+		this.branch = branch;
 		status = Status.RUNNING;
 		startTime = new Date();
 	}
@@ -26,6 +36,10 @@ public class AsyncRefsetMemberChangeBatch {
 		return id;
 	}
 
+	public String getBranch() {
+		return branch;
+	}
+
 	public Status getStatus() {
 		return status;
 	}
@@ -66,6 +80,45 @@ public class AsyncRefsetMemberChangeBatch {
 		return secondsDuration;
 	}
 
+	public Integer getRowsRead() {
+		return rowsRead;
+	}
+
+	public void setRowsRead(Integer rowsRead) {
+		this.rowsRead = rowsRead;
+	}
+
+	public Integer getMembersSaved() {
+		return membersSaved;
+	}
+
+	public void setMembersSaved(Integer membersSaved) {
+		this.membersSaved = membersSaved;
+	}
+
+	public Integer getErrorCount() {
+		return errorCount;
+	}
+
+	public void setErrorCount(Integer errorCount) {
+		this.errorCount = errorCount;
+	}
+
+	@JsonIgnore
+	public File getErrorsFile() {
+		return errorsFile;
+	}
+
+	public void setErrorsFile(File errorsFile) {
+		this.errorsFile = errorsFile;
+	}
+
+	public void deleteErrorsFile() {
+		if (errorsFile != null && errorsFile.isFile() && !errorsFile.delete()) {
+			errorsFile.deleteOnExit();
+		}
+	}
+
 	public enum Status {
 		RUNNING, COMPLETED, FAILED
 	}
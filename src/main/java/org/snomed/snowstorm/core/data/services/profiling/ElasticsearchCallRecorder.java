@@ -0,0 +1,120 @@
+package org.snomed.snowstorm.core.data.services.profiling;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.elasticsearch.core.query.StringQuery;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every Elasticsearch request made through the application's ElasticsearchOperations.
+ * Each request is timed against a Micrometer timer for its call site when metrics are enabled, added to the profile of the current request if one is
+ * being collected and logged when slower than the configured threshold. The call site is only looked up for requests recorded in one of these ways.
+ */
+@Service
+public class ElasticsearchCallRecorder {
+
+	public static final String TIMER_NAME = "snowstorm.elasticsearch.requests";
+
+	private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+	private static final String APPLICATION_PACKAGE = "org.snomed.snowstorm.";
+	private static final int MAX_LOGGED_QUERY_LENGTH = 2_000;
+
+	@Value("${elasticsearch.profiling.metrics.enabled}")
+	private boolean metricsEnabled;
+
+	@Value("${elasticsearch.profiling.slow-query-log.threshold-ms}")
+	private long slowQueryThresholdMillis;
+
+	@Autowired
+	private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * @param operation The type of request, for example "search" or "count".
+	 * @param query The query sent.
+	 * @param index The index coordinates the query was sent to.
+	 * @param hits The number of hits returned.
+	 * @param tookMillis Time reported by Elasticsearch, -1 if not known.
+	 * @param startNanos Value of {@link System#nanoTime()} before the request was sent.
+	 */
+	public void record(String operation, Query query, IndexCoordinates index, long hits, long tookMillis, long startNanos) {
+		long totalNanos = System.nanoTime() - startNanos;
+		QueryProfile profile = QueryProfile.current();
+		boolean slow = slowQueryThresholdMillis > 0 && totalNanos >= TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+		if (profile == null && !metricsEnabled && !slow) {
+			return;
+		}
+
+		String callSite = findCallSite();
+		String indexName = index != null ? String.join(",", index.getIndexNames()) : "";
+		String queryType = operation + ":" + getQueryKind(query);
+		long totalMillis = TimeUnit.NANOSECONDS.toMillis(totalNanos);
+
+		if (profile != null) {
+			profile.record(new QueryProfile.Call(callSite, indexName, queryType, hits, tookMillis, totalMillis));
+		}
+		if (metricsEnabled) {
+			MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+			if (meterRegistry != null) {
+				Timer.builder(TIMER_NAME)
+						.tag("callSite", callSite)
+						.tag("index", indexName)
+						.tag("operation", operation)
+						.register(meterRegistry)
+						.record(totalNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+		if (slow) {
+			logger.warn("Slow Elasticsearch {} from {} on {}: took {}ms, total {}ms, {} hits. Query: {}",
+					operation, callSite, indexName, tookMillis, totalMillis, hits, describeQuery(query));
+		}
+	}
+
+	private static String findCallSite() {
+		Optional<StackWalker.StackFrame> frame = STACK_WALKER.walk(frames -> frames
+				.filter(f -> f.getClassName().startsWith(APPLICATION_PACKAGE)
+						&& !f.getClassName().startsWith(ElasticsearchCallRecorder.class.getPackageName())
+						&& !f.getClassName().startsWith("org.snomed.snowstorm.config."))
+				.findFirst());
+		return frame.map(f -> {
+			String className = f.getClassName();
+			return className.substring(className.lastIndexOf('.') + 1) + "." + f.getMethodName();
+		}).orElse("other");
+	}
+
+	static String getQueryKind(Query query) {
+		if (query instanceof NativeQuery nativeQuery) {
+			return nativeQuery.getQuery() != null ? nativeQuery.getQuery()._kind().jsonValue() : "match_all";
+		} else if (query instanceof CriteriaQuery) {
+			return "criteria";
+		} else if (query instanceof StringQuery) {
+			return "string";
+		}
+		return query != null ? query.getClass().getSimpleName() : "none";
+	}
+
+	private static String describeQuery(Query query) {
+		String description;
+		if (query instanceof NativeQuery nativeQuery && nativeQuery.getQuery() != null) {
+			description = nativeQuery.getQuery().toString();
+		} else if (query instanceof StringQuery stringQuery) {
+			description = stringQuery.getSource();
+		} else {
+			description = String.valueOf(query);
+		}
+		return description.length() > MAX_LOGGED_QUERY_LENGTH ? description.substring(0, MAX_LOGGED_QUERY_LENGTH) + "..." : description;
+	}
+}
@@ -0,0 +1,158 @@
+package org.snomed.snowstorm.core.data.services.profiling;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Records the Elasticsearch calls made while serving one request.
+ * A profile is only collected for requests that ask for it, see {@link #start()}.
+ * Work handed to other threads can be included using {@link #propagate(Runnable)}.
+ */
+public class QueryProfile {
+
+	private static final ThreadLocal<QueryProfile> CURRENT = new ThreadLocal<>();
+
+	private final List<Call> calls = Collections.synchronizedList(new ArrayList<>());
+
+	public static QueryProfile start() {
+		QueryProfile profile = new QueryProfile();
+		CURRENT.set(profile);
+		return profile;
+	}
+
+	public static QueryProfile current() {
+		return CURRENT.get();
+	}
+
+	public static void clear() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * Wraps the task so that Elasticsearch calls made by it are recorded in the profile of the calling thread, if there is one.
+	 */
+	public static Runnable propagate(Runnable task) {
+		QueryProfile profile = CURRENT.get();
+		if (profile == null) {
+			return task;
+		}
+		return () -> {
+			CURRENT.set(profile);
+			try {
+				task.run();
+			} finally {
+				CURRENT.remove();
+			}
+		};
+	}
+
+	public static <T> Callable<T> propagate(Callable<T> task) {
+		QueryProfile profile = CURRENT.get();
+		if (profile == null) {
+			return task;
+		}
+		return () -> {
+			CURRENT.set(profile);
+			try {
+				return task.call();
+			} finally {
+				CURRENT.remove();
+			}
+		};
+	}
+
+	void record(Call call) {
+		calls.add(call);
+	}
+
+	public List<Call> getCalls() {
+		synchronized (calls) {
+			return new ArrayList<>(calls);
+		}
+	}
+
+	/**
+	 * @return calls grouped by call site, index and query type, in the order each group was first seen.
+	 */
+	public Collection<Summary> getSummary() {
+		Map<String, Summary> summaries = new LinkedHashMap<>();
+		for (Call call : getCalls()) {
+			summaries.computeIfAbsent(call.callSite() + "|" + call.index() + "|" + call.queryType(),
+					key -> new Summary(call.callSite(), call.index(), call.queryType())).add(call);
+		}
+		return summaries.values();
+	}
+
+	/**
+	 * One Elasticsearch request.
+	 *
+	 * @param callSite The Snowstorm class and method that made the call.
+	 * @param index The index or indices searched.
+	 * @param queryType The request type and the kind of the top level query, for example "search:bool".
+	 * @param hits The number of hits returned, or the count for count requests.
+	 * @param tookMillis Time taken within Elasticsearch, -1 when not reported.
+	 * @param totalMillis Time taken including transport and deserialisation of the response.
+	 */
+	public record Call(String callSite, String index, String queryType, long hits, long tookMillis, long totalMillis) {
+
+		public long clientMillis() {
+			return tookMillis < 0 ? -1 : Math.max(0, totalMillis - tookMillis);
+		}
+	}
+
+	public static final class Summary {
+
+		private final String callSite;
+		private final String index;
+		private final String queryType;
+		private int calls;
+		private long hits;
+		private long tookMillis;
+		private long totalMillis;
+
+		private Summary(String callSite, String index, String queryType) {
+			this.callSite = callSite;
+			this.index = index;
+			this.queryType = queryType;
+		}
+
+		private void add(Call call) {
+			calls++;
+			hits += call.hits();
+			tookMillis += Math.max(0, call.tookMillis());
+			totalMillis += call.totalMillis();
+		}
+
+		public String getCallSite() {
+			return callSite;
+		}
+
+		public String getIndex() {
+			return index;
+		}
+
+		public String getQueryType() {
+			return queryType;
+		}
+
+		public int getCalls() {
+			return calls;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getTookMillis() {
+			return tookMillis;
+		}
+
+		public long getTotalMillis() {
+			return totalMillis;
+		}
+
+		public long getClientMillis() {
+			return Math.max(0, totalMillis - tookMillis);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package org.snomed.snowstorm.core.data.services.traceability;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Durable local queue that decouples traceability publishing from the commit.
+ * Each activity is written to the queue directory before the commit completes and a single background thread
+ * publishes activities to the traceability consumer in order, retrying until the broker accepts them.
+ * Activities left on disk when the application stops are published after the next startup.
+ * The queue directory must not be shared with other instances.
+ */
+@Component
+public class TraceabilityActivityQueue {
+
+	private static final String ACTIVITY_FILE_SUFFIX = ".json";
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	@Value("${authoring.traceability.queue.directory}")
+	private String queueDirectoryPath;
+
+	@Value("${authoring.traceability.queue.retry-delay-seconds}")
+	private int retryDelaySeconds;
+
+	@Autowired
+	@Lazy // Only initialise the JMS Template when the first activity is published.
+	private TraceabilityConsumer traceabilityConsumer;
+
+	private final ObjectMapper objectMapper;
+	private final BlockingQueue<Path> pending = new LinkedBlockingQueue<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private Path queueDirectory;
+	private Thread publisherThread;
+	private volatile boolean running = true;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public TraceabilityActivityQueue() {
+		objectMapper = Jackson2ObjectMapperBuilder.json()
+				.serializationInclusion(JsonInclude.Include.NON_NULL)
+				.build();
+	}
+
+	@PostConstruct
+	public void init() throws IOException {
+		queueDirectory = Paths.get(queueDirectoryPath);
+		if (!Files.isDirectory(queueDirectory)) {
+			return;
+		}
+		final List<Path> existing;
+		final List<Path> incomplete;
+		try (Stream<Path> files = Files.list(queueDirectory)) {
+			final List<Path> all = files.toList();
+			existing = all.stream().filter(path -> path.getFileName().toString().endsWith(ACTIVITY_FILE_SUFFIX)).sorted().toList();
+			incomplete = all.stream().filter(path -> path.getFileName().toString().endsWith(TEMP_FILE_SUFFIX)).toList();
+		}
+		// Writes which did not complete before the application stopped, the commits of these activities did not complete either
+		for (Path tempFile : incomplete) {
+			Files.deleteIfExists(tempFile);
+		}
+		if (!incomplete.isEmpty()) {
+			logger.info("{} incomplete traceability activity files removed from {}.", incomplete.size(), queueDirectory.toAbsolutePath());
+		}
+		if (!existing.isEmpty()) {
+			final String lastName = existing.get(existing.size() - 1).getFileName().toString();
+			sequence.set(Long.parseLong(lastName.substring(0, lastName.length() - ACTIVITY_FILE_SUFFIX.length())));
+			pending.addAll(existing);
+			logger.info("{} traceability activities found in {} from a previous run, these will be published.", existing.size(), queueDirectory.toAbsolutePath());
+			startPublisherIfNeeded();
+		}
+	}
+
+	/**
+	 * Writes the activity to disk and hands it to the background publisher.
+	 * Returns once the activity is durable, without waiting for the message broker.
+	 */
+	public void offer(Activity activity) {
+		final Path file = queueDirectory.resolve(String.format("%020d%s", sequence.incrementAndGet(), ACTIVITY_FILE_SUFFIX));
+		final Path tempFile = queueDirectory.resolve(file.getFileName() + TEMP_FILE_SUFFIX);
+		try {
+			Files.createDirectories(queueDirectory);
+			Files.write(tempFile, objectMapper.writeValueAsBytes(activity));
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// Fall back to publishing directly rather than losing the activity.
+			logger.error("Failed to write traceability activity for {} at {} to the local queue, publishing synchronously.",
+					activity.getBranchPath(), activity.getCommitTimestamp(), e);
+			traceabilityConsumer.accept(activity);
+			return;
+		}
+		pending.add(file);
+		startPublisherIfNeeded();
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	private synchronized void startPublisherIfNeeded() {
+		if (publisherThread == null) {
+			publisherThread = new Thread(this::publishLoop, "traceability-publisher");
+			publisherThread.setDaemon(true);
+			publisherThread.start();
+		}
+	}
+
+	private void publishLoop() {
+		while (running) {
+			final Path file;
+			try {
+				file = pending.poll(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (file == null) {
+				continue;
+			}
+			boolean published = false;
+			while (!published && running) {
+				try {
+					final Activity activity = objectMapper.readValue(file.toFile(), Activity.class);
+					traceabilityConsumer.accept(activity);
+					published = true;
+				} catch (IOException e) {
+					logger.error("Traceability activity file {} can not be read, moving aside.", file, e);
+					moveAside(file);
+					break;
+				} catch (RuntimeException e) {
+					logger.warn("Failed to publish traceability activity {}, will retry in {} seconds. {}", file.getFileName(), retryDelaySeconds, e.getMessage());
+					try {
+						Thread.sleep(retryDelaySeconds * 1_000L);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+			if (published) {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					logger.error("Failed to remove published traceability activity file {}.", file, e);
+				}
+			}
+		}
+	}
+
+	private void moveAside(Path file) {
+		try {
+			Files.move(file, file.resolveSibling(file.getFileName() + ".failed"), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.error("Failed to move unreadable traceability activity file {}.", file, e);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		running = false;
+		if (publisherThread != null) {
+			publisherThread.interrupt();
+		}
+	}
+}
@@ -56,6 +56,12 @@ public class TraceabilityLogService implements CommitListener {
 	@Lazy // This should stop the JMS Template getting initialised if traceability is disabled.
 	private TraceabilityConsumer traceabilityConsumer;
 
+	@Autowired
+	private TraceabilityActivityQueue traceabilityActivityQueue;
+
+	@Value("${authoring.traceability.queue.enabled}")
+	private boolean queueEnabled;
+
 	@Value("${authoring.traceability.inferred-max}")
 	private int inferredMax;
 
@@ -204,7 +210,12 @@ public class TraceabilityLogService implements CommitListener {
 			logger.error("Failed to serialize activity {} to JSON.", activity.getCommitTimestamp());
 		}
 
-		traceabilityConsumer.accept(activity);
+		if (queueEnabled) {
+			// Publish in the background so that the commit does not wait for the message broker
+			traceabilityActivityQueue.offer(activity);
+		} else {
+			traceabilityConsumer.accept(activity);
+		}
 	}
 
 	private Map<Long, List<ReferenceSetMember>> filterRefsetMembersAndLookupComponentConceptIds(Iterable<ReferenceSetMember> persistedReferenceSetMembers,
@@ -340,6 +351,10 @@ public class TraceabilityLogService implements CommitListener {
 		return enabled;
 	}
 
+	public void setQueueEnabled(boolean queueEnabled) {
+		this.queueEnabled = queueEnabled;
+	}
+
 	public void setTraceabilityConsumer(TraceabilityConsumer traceabilityConsumer) {
 		this.traceabilityConsumer = traceabilityConsumer;
 	}
@@ -0,0 +1,68 @@
+package org.snomed.snowstorm.core.util;
+
+import java.util.Arrays;
+
+/**
+ * Reads the fields of a tab delimited line, such as an RF2 row, without splitting the line into an array of strings.
+ * The field offsets are found once per line and a field is only copied when it is read as a string.
+ * An instance is reused for each line of a file and is not thread safe.
+ */
+public final class TabDelimitedLine {
+
+	private String line;
+	private int[] fieldStarts = new int[16];
+	private int fieldCount;
+
+	public TabDelimitedLine reset(String line) {
+		this.line = line;
+		fieldCount = 0;
+		addFieldStart(0);
+		int tab = -1;
+		while ((tab = line.indexOf('\t', tab + 1)) != -1) {
+			addFieldStart(tab + 1);
+		}
+		// Offset one past the end of the line, so the end of field i is always fieldStarts[i + 1] - 1
+		addFieldStart(line.length() + 1);
+		fieldCount--;
+		return this;
+	}
+
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	public String get(int field) {
+		return line.substring(start(field), end(field));
+	}
+
+	public boolean isEmpty(int field) {
+		return start(field) == end(field);
+	}
+
+	public boolean equals(int field, String value) {
+		int start = start(field);
+		return end(field) - start == value.length() && line.regionMatches(start, value, 0, value.length());
+	}
+
+	public int getInt(int field) {
+		return Integer.parseInt(line, start(field), end(field), 10);
+	}
+
+	private int start(int field) {
+		if (field >= fieldCount) {
+			throw new IndexOutOfBoundsException("Field " + field + " requested but line has " + fieldCount + " fields: " + line);
+		}
+		return fieldStarts[field];
+	}
+
+	private int end(int field) {
+		return fieldStarts[field + 1] - 1;
+	}
+
+	private void addFieldStart(int offset) {
+		if (fieldCount == fieldStarts.length) {
+			fieldStarts = Arrays.copyOf(fieldStarts, fieldStarts.length * 2);
+		}
+		fieldStarts[fieldCount++] = offset;
+	}
+}
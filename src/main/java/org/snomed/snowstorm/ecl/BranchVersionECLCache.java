@@ -2,17 +2,30 @@ package org.snomed.snowstorm.ecl;
 
 import org.snomed.snowstorm.rest.pojo.SearchAfterPageRequest;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class BranchVersionECLCache {
 
 	private final Date head;
 
-	private final Map<ECLCacheEntry, Page<Long>> eclToConceptsCache;
+	private final Map<ECLCacheEntry, CachedResult> eclToConceptsCache;
+
+	private final Map<ECLCacheEntry, CompletableFuture<Optional<Page<Long>>>> inFlightSelections = new ConcurrentHashMap<>();
+
+	private final AtomicLong sharedSelections = new AtomicLong();
+
+	private final Map<ECLCacheEntry, AtomicLong> entryHits = new ConcurrentHashMap<>();
 
 	private final Map<Calendar, AtomicLong> dayHits = new ConcurrentHashMap<>();
 
@@ -32,18 +45,108 @@ public class BranchVersionECLCache {
 
 	public Page<Long> get(String ecl, boolean stated, PageRequest pageRequest) {
 		ECLCacheEntry key = new ECLCacheEntry(ecl, stated, pageRequest);
-        return eclToConceptsCache.get(key);
+		CachedResult cachedResult = eclToConceptsCache.get(key);
+		return cachedResult != null ? cachedResult.toPage() : null;
 	}
 
 	public void put(String ecl, boolean stated, PageRequest pageRequest, Page<Long> page) {
-		eclToConceptsCache.put(new ECLCacheEntry(ecl, stated, pageRequest), page);
+		put(ecl, stated, pageRequest, page, ECLDependencies.ALL);
+	}
+
+	public void put(String ecl, boolean stated, PageRequest pageRequest, Page<Long> page, ECLDependencies dependencies) {
+		eclToConceptsCache.put(new ECLCacheEntry(ecl, stated, pageRequest), CachedResult.of(pageRequest, page, dependencies));
+	}
+
+	public boolean isEmpty() {
+		return eclToConceptsCache.isEmpty();
+	}
+
+	/**
+	 * @return The distinct dependencies of the cached results.
+	 */
+	public Set<ECLDependencies> getDependencies() {
+		return eclToConceptsCache.values().stream().map(cachedResult -> cachedResult.dependencies).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Creates the cache of a later version of the branch, holding the results of this cache that were not affected by the changes
+	 * made between the two versions. Half of the hits of each entry carried over are kept, see {@link #inheritHits(HotEntry)}.
+	 * The most hit entries are carried over first, up to the given number of entries and size.
+	 * @param affected Tests whether results with the given dependencies may have been changed.
+	 */
+	public BranchVersionECLCache migrate(Date newHead, Predicate<ECLDependencies> affected, int maxEntries, long maxBytes) {
+		BranchVersionECLCache next = new BranchVersionECLCache(newHead);
+		Map<ECLDependencies, Boolean> affectedByDependencies = new HashMap<>();
+		// Hits are read once because they may be incremented while sorting
+		List<Map.Entry<ECLCacheEntry, Long>> entriesByHits = eclToConceptsCache.keySet().stream()
+				.map(key -> Map.entry(key, entryHits.getOrDefault(key, new AtomicLong()).get()))
+				.sorted(Map.Entry.<ECLCacheEntry, Long>comparingByValue().reversed())
+				.toList();
+		long bytes = 0;
+		for (Map.Entry<ECLCacheEntry, Long> entry : entriesByHits) {
+			if (next.eclToConceptsCache.size() >= maxEntries) {
+				break;
+			}
+			ECLCacheEntry key = entry.getKey();
+			CachedResult cachedResult = eclToConceptsCache.get(key);
+			if (cachedResult == null || affectedByDependencies.computeIfAbsent(cachedResult.dependencies, affected::test)
+					|| bytes + cachedResult.getSizeInBytes() > maxBytes) {
+				continue;
+			}
+			bytes += cachedResult.getSizeInBytes();
+			next.eclToConceptsCache.put(key, cachedResult);
+			long hits = entry.getValue() / 2;
+			if (hits > 0) {
+				next.entryHits.put(key, new AtomicLong(hits));
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Runs the selection unless the same selection is already running, in which case this waits for it and returns the same result.
+	 * This prevents many identical requests, for example after a commit has expired the previous cache, all querying Elasticsearch at once.
+	 * The selector is expected to put the result in this cache before returning.
+	 */
+	public Optional<Page<Long>> selectOnce(String ecl, boolean stated, PageRequest pageRequest, Supplier<Optional<Page<Long>>> selector) {
+		ECLCacheEntry key = new ECLCacheEntry(ecl, stated, pageRequest);
+		CompletableFuture<Optional<Page<Long>>> selection = new CompletableFuture<>();
+		CompletableFuture<Optional<Page<Long>>> inFlightSelection = inFlightSelections.putIfAbsent(key, selection);
+		if (inFlightSelection != null) {
+			sharedSelections.incrementAndGet();
+			try {
+				return inFlightSelection.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException runtimeException) {
+					throw runtimeException;
+				}
+				throw e;
+			}
+		}
+		try {
+			// The result may have been cached after the caller checked but before this selection was registered
+			CachedResult cachedResult = eclToConceptsCache.get(key);
+			Optional<Page<Long>> result = cachedResult != null ? Optional.of(cachedResult.toPage()) : selector.get();
+			selection.complete(result);
+			return result;
+		} catch (RuntimeException | Error e) {
+			selection.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlightSelections.remove(key, selection);
+		}
 	}
 
 	static String normaliseEclString(String ecl) {
 		return ecl.toLowerCase().replaceAll("\\|[^|]*\\|", "").replace("  ", " ").replace(" and ", ", ").trim();
 	}
 
-	public void recordHit() {
+	public void recordHit(String ecl, boolean stated, PageRequest pageRequest) {
+		entryHits.computeIfAbsent(new ECLCacheEntry(ecl, stated, pageRequest), key -> new AtomicLong()).incrementAndGet();
+		recordHit();
+	}
+
+	private void recordHit() {
 		final Calendar today = getToday();
 		AtomicLong hitCount = dayHits.get(today);
 		if (hitCount == null) {
@@ -59,9 +162,34 @@ public class BranchVersionECLCache {
 		hitCount.incrementAndGet();
 	}
 
+	/**
+	 * @return The entries with the most cache hits, most hit first, excluding search-after pages which can not be selected again.
+	 */
+	public List<HotEntry> getHotEntries(int limit, long minHits) {
+		return entryHits.entrySet().stream()
+				.filter(entry -> entry.getValue().get() >= minHits && entry.getKey().searchAfter == null)
+				.map(entry -> new HotEntry(entry.getKey().eclString, entry.getKey().stated, entry.getKey().pageRequest, entry.getValue().get()))
+				.sorted(Comparator.comparingLong(HotEntry::hits).reversed())
+				.limit(limit)
+				.toList();
+	}
+
+	/**
+	 * Carries half of the hits of an entry over from the previous version of the branch, unless the entry already has hits here,
+	 * so that an expression stays hot for a few versions without being queried but not indefinitely.
+	 */
+	public void inheritHits(HotEntry hotEntry) {
+		long hits = hotEntry.hits() / 2;
+		if (hits > 0) {
+			entryHits.putIfAbsent(new ECLCacheEntry(hotEntry.ecl(), hotEntry.stated(), hotEntry.pageRequest()), new AtomicLong(hits));
+		}
+	}
+
 	public Map<String, Long> getStats() {
 		Map<String, Long> stats = new HashMap<>();
 		stats.put("size", (long) eclToConceptsCache.size());
+		stats.put("heap-bytes", eclToConceptsCache.values().stream().mapToLong(CachedResult::getSizeInBytes).sum());
+		stats.put("shared-selections", sharedSelections.get());
 		stats.put("hits-today", dayHits.getOrDefault(getToday(), new AtomicLong()).longValue());
 		addStat(stats, 7);
 		addStat(stats, 30);
@@ -89,14 +217,77 @@ public class BranchVersionECLCache {
 		return today;
 	}
 
+	/**
+	 * Full results which are sorted by concept id, as returned by the semantic index, are held as a {@link ConceptIdSet}
+	 * and the page is recreated in the same order on each hit. Single pages and unordered results are held as they are.
+	 */
+	static final class CachedResult {
+
+		private final Page<Long> page;
+		private final ConceptIdSet ids;
+		private final boolean descending;
+		private final Pageable pageable;
+		private final ECLDependencies dependencies;
+
+		private CachedResult(Page<Long> page, ConceptIdSet ids, boolean descending, Pageable pageable, ECLDependencies dependencies) {
+			this.page = page;
+			this.ids = ids;
+			this.descending = descending;
+			this.pageable = pageable;
+			this.dependencies = dependencies;
+		}
+
+		static CachedResult of(PageRequest pageRequest, Page<Long> page, ECLDependencies dependencies) {
+			List<Long> content = page.getContent();
+			if (pageRequest == null && page.getClass() == PageImpl.class && content.size() > 1 && content.size() == page.getTotalElements()) {
+				boolean descending = content.get(0) > content.get(1);
+				if (isStrictlyOrdered(content, descending)) {
+					return new CachedResult(null, ConceptIdSet.of(content), descending, page.getPageable(), dependencies);
+				}
+			}
+			return new CachedResult(page, null, false, null, dependencies);
+		}
+
+		static boolean isStrictlyOrdered(List<Long> content, boolean descending) {
+			Iterator<Long> iterator = content.iterator();
+			long previous = iterator.next();
+			while (iterator.hasNext()) {
+				long next = iterator.next();
+				if (descending ? next >= previous : next <= previous) {
+					return false;
+				}
+				previous = next;
+			}
+			return true;
+		}
+
+		Page<Long> toPage() {
+			if (page != null) {
+				return page;
+			}
+			return new PageImpl<>(ids.toList(descending), pageable, ids.size());
+		}
+
+		long getSizeInBytes() {
+			// Boxed Long plus list reference
+			return ids != null ? ids.getSizeInBytes() : page.getNumberOfElements() * 24L;
+		}
+	}
+
+	public record HotEntry(String ecl, boolean stated, PageRequest pageRequest, long hits) {
+	}
+
 	private static final class ECLCacheEntry {
 
+		// As given, not part of the key
+		private final String eclString;
 		private final String ecl;
 		private final boolean stated;
 		private final PageRequest pageRequest;
 		private final Object[] searchAfter;
 
 		public ECLCacheEntry(String ecl, boolean stated, PageRequest pageRequest) {
+			this.eclString = ecl;
 			this.ecl = ecl != null ? normaliseEclString(ecl) : "";
 			this.stated = stated;
 			this.pageRequest = pageRequest;
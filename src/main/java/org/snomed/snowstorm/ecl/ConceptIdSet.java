@@ -0,0 +1,210 @@
+package org.snomed.snowstorm.ecl;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Compact set of concept ids for intermediate and cached ECL results, backed by a 64-bit roaring bitmap.
+ * A set is not modified once created, the set operations return new sets.
+ * Ids are iterated in ascending or descending order without copying them into another collection.
+ * <p>
+ * Only compound constraint operands, dotted attribute results and the ECL results cache use these sets. Ids are still held
+ * as {@code Long} collections, most of them fastutil backed but boxed on access, where the engine selects ids from Elasticsearch
+ * ({@link ConceptSelectorHelper} pages), for ancestors, parents, concept and description filters and history supplements
+ * in {@link ECLContentService}, in the filter and supplement callbacks of the constraints, and in the {@code Page<Long>}
+ * returned by {@link ECLQueryService}.
+ */
+public final class ConceptIdSet {
+
+	private static final ConceptIdSet EMPTY = new ConceptIdSet(new Roaring64Bitmap());
+
+	private final Roaring64Bitmap bitmap;
+
+	private ConceptIdSet(Roaring64Bitmap bitmap) {
+		this.bitmap = bitmap;
+	}
+
+	public static ConceptIdSet empty() {
+		return EMPTY;
+	}
+
+	public static ConceptIdSet of(Collection<Long> ids) {
+		Roaring64Bitmap bitmap = new Roaring64Bitmap();
+		if (ids instanceof LongCollection longCollection) {
+			it.unimi.dsi.fastutil.longs.LongIterator iterator = longCollection.iterator();
+			while (iterator.hasNext()) {
+				bitmap.addLong(iterator.nextLong());
+			}
+		} else {
+			for (Long id : ids) {
+				bitmap.addLong(id);
+			}
+		}
+		return optimised(bitmap);
+	}
+
+	public static ConceptIdSet of(long... ids) {
+		Roaring64Bitmap bitmap = new Roaring64Bitmap();
+		bitmap.add(ids);
+		return optimised(bitmap);
+	}
+
+	private static ConceptIdSet optimised(Roaring64Bitmap bitmap) {
+		if (bitmap.isEmpty()) {
+			return EMPTY;
+		}
+		bitmap.runOptimize();
+		return new ConceptIdSet(bitmap);
+	}
+
+	public ConceptIdSet and(ConceptIdSet other) {
+		if (isEmpty() || other.isEmpty()) {
+			return EMPTY;
+		}
+		Roaring64Bitmap result = bitmap.clone();
+		result.and(other.bitmap);
+		return optimised(result);
+	}
+
+	public ConceptIdSet or(ConceptIdSet other) {
+		if (other.isEmpty()) {
+			return this;
+		} else if (isEmpty()) {
+			return other;
+		}
+		Roaring64Bitmap result = bitmap.clone();
+		result.or(other.bitmap);
+		return optimised(result);
+	}
+
+	public ConceptIdSet andNot(ConceptIdSet other) {
+		if (isEmpty() || other.isEmpty()) {
+			return this;
+		}
+		Roaring64Bitmap result = bitmap.clone();
+		result.andNot(other.bitmap);
+		return optimised(result);
+	}
+
+	/**
+	 * Intersects all the sets, smallest first, so that each step works on the smallest possible result.
+	 */
+	public static ConceptIdSet and(List<ConceptIdSet> sets) {
+		if (sets.isEmpty()) {
+			return EMPTY;
+		}
+		List<ConceptIdSet> bySize = sets.stream().sorted(Comparator.comparingLong(ConceptIdSet::longSize)).toList();
+		ConceptIdSet result = bySize.get(0);
+		for (int i = 1; i < bySize.size() && !result.isEmpty(); i++) {
+			result = result.and(bySize.get(i));
+		}
+		return result;
+	}
+
+	public static ConceptIdSet or(List<ConceptIdSet> sets) {
+		if (sets.isEmpty()) {
+			return EMPTY;
+		}
+		Roaring64Bitmap result = new Roaring64Bitmap();
+		for (ConceptIdSet set : sets) {
+			result.or(set.bitmap);
+		}
+		return optimised(result);
+	}
+
+	public boolean contains(long id) {
+		return bitmap.contains(id);
+	}
+
+	public boolean isEmpty() {
+		return bitmap.isEmpty();
+	}
+
+	public int size() {
+		return Math.toIntExact(longSize());
+	}
+
+	private long longSize() {
+		return bitmap.getLongCardinality();
+	}
+
+	/**
+	 * @return The position of the id within the set in the given order, or -1 if the set does not contain the id.
+	 */
+	public int indexOf(long id, boolean descending) {
+		if (!contains(id)) {
+			return -1;
+		}
+		// rankLong counts the ids less than or equal to the given id
+		int rank = Math.toIntExact(bitmap.rankLong(id));
+		return descending ? size() - rank : rank - 1;
+	}
+
+	/**
+	 * The first id of the page is found by rank, using select on the bitmap, so the cost does not depend on the offset.
+	 * @return The ids from the offset position, in the given order, up to the limit.
+	 */
+	public LongArrayList getPage(int offset, int limit, boolean descending) {
+		int size = size();
+		if (offset < 0 || offset >= size || limit <= 0) {
+			return new LongArrayList();
+		}
+		LongArrayList page = new LongArrayList(Math.min(limit, size - offset));
+		LongIterator iterator;
+		if (offset == 0) {
+			iterator = iterator(descending);
+		} else if (descending) {
+			iterator = bitmap.getReverseLongIteratorFrom(bitmap.select(size - 1L - offset));
+		} else {
+			iterator = bitmap.getLongIteratorFrom(bitmap.select(offset));
+		}
+		while (page.size() < limit && iterator.hasNext()) {
+			page.add(iterator.next());
+		}
+		return page;
+	}
+
+	public LongArrayList toList(boolean descending) {
+		return getPage(0, size(), descending);
+	}
+
+	public void forEach(LongConsumer consumer, boolean descending) {
+		LongIterator iterator = iterator(descending);
+		while (iterator.hasNext()) {
+			consumer.accept(iterator.next());
+		}
+	}
+
+	private LongIterator iterator(boolean descending) {
+		return descending ? bitmap.getReverseLongIterator() : bitmap.getLongIterator();
+	}
+
+	/**
+	 * @return Approximate heap used by the set.
+	 */
+	public long getSizeInBytes() {
+		return bitmap.getLongSizeInBytes();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return this == o || (o instanceof ConceptIdSet other && bitmap.equals(other.bitmap));
+	}
+
+	@Override
+	public int hashCode() {
+		return bitmap.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "ConceptIdSet{size=" + longSize() + "}";
+	}
+}
@@ -13,6 +13,7 @@ import org.apache.commons.lang3.NotImplementedException;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.util.PageHelper;
+import org.snomed.snowstorm.core.util.SearchAfterPageImpl;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilderImpl;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
@@ -174,6 +175,18 @@ public class ConceptSelectorHelper {
 		}
 	}
 
+	/**
+	 * Pages ids held in a set without copying the whole set to a list, unless paging using searchAfter.
+	 */
+	public static Page<Long> getPage(PageRequest pageRequest, ConceptIdSet ids, boolean descending) {
+		if (pageRequest == null || pageRequest instanceof SearchAfterPageRequest) {
+			return getPage(pageRequest, ids.toList(descending));
+		}
+		LongArrayList pageOfIds = ids.getPage(Math.toIntExact(pageRequest.getOffset()), pageRequest.getPageSize(), descending);
+		Long lastId = pageOfIds.isEmpty() ? null : pageOfIds.getLong(pageOfIds.size() - 1);
+		return new SearchAfterPageImpl<>(pageOfIds, pageRequest, ids.size(), CONCEPT_ID_SEARCH_AFTER_EXTRACTOR.apply(lastId));
+	}
+
 	public static SortOptions getDefaultSortForQueryConcept() {
 		return SortOptions.of(s -> s.field(f -> f.field(QueryConcept.Fields.CONCEPT_ID).order(SortOrder.Desc)));
 	}
@@ -0,0 +1,144 @@
+package org.snomed.snowstorm.ecl;
+
+import co.elastic.clients.elasticsearch._types.aggregations.AggregationBuilders;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsAggregate;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonData;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Branch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.util.AggregationUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.Aggregation;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.range;
+import static io.kaicode.elasticvc.helper.QueryHelper.termQuery;
+import static java.lang.Long.parseLong;
+
+/**
+ * Carries cached ECL results over to a new version of a branch when the changes made since the cached version can not have affected them.
+ * For example a commit that only changes descriptions leaves the semantic index unchanged, so hierarchy and attribute ECL results are kept,
+ * while results using description filters are dropped.
+ * <p>
+ * The changes are found from the documents written or ended on the branch between the two versions and from the versions replaced on the branch,
+ * so commits made by any instance are taken into account. Results are never carried over a rebase or promotion, which change the branch base.
+ */
+@Service
+public class ECLCacheMigrationService {
+
+	private static final int REFSET_AGGREGATION_SIZE = 1_000;
+
+	@Value("${cache.ecl.migration.enabled}")
+	private boolean enabled;
+
+	@Value("${cache.ecl.migration.max-entries}")
+	private int maxEntries;
+
+	@Value("${cache.ecl.migration.max-heap-mb}")
+	private int maxHeapMb;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
+	@Autowired
+	private BranchService branchService;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * @return A cache for the later version of the branch holding the unaffected results, or null if no results can be carried over.
+	 */
+	public BranchVersionECLCache migrate(BranchVersionECLCache previous, String path, Date timepoint) {
+		if (!enabled || previous.isEmpty() || !previous.getHead().before(timepoint)) {
+			return null;
+		}
+		long start = System.currentTimeMillis();
+		Branch previousVersion = branchService.findAtTimepointOrThrow(path, previous.getHead());
+		Branch version = branchService.findAtTimepointOrThrow(path, timepoint);
+		if (!previousVersion.getBase().equals(version.getBase())) {
+			return null;
+		}
+		long from = previous.getHead().getTime();
+		long to = timepoint.getTime();
+
+		// Every result depends on the semantic index
+		if (isChanged(QueryConcept.class, path, from, to, previousVersion, version)) {
+			return null;
+		}
+		Set<ECLDependencies> dependencies = previous.getDependencies();
+		boolean conceptsChanged = dependencies.stream().anyMatch(ECLDependencies::concepts)
+				&& isChanged(Concept.class, path, from, to, previousVersion, version);
+		boolean descriptionsChanged = dependencies.stream().anyMatch(ECLDependencies::descriptions)
+				&& isChanged(Description.class, path, from, to, previousVersion, version);
+		Set<Long> changedReferenceSets = dependencies.stream().anyMatch(dependency -> dependency.anyReferenceSet() || !dependency.referenceSets().isEmpty())
+				? findChangedReferenceSets(path, from, to, previousVersion, version) : Set.of();
+
+		BranchVersionECLCache migrated = previous.migrate(timepoint,
+				dependency -> dependency.isAffected(conceptsChanged, descriptionsChanged, changedReferenceSets), maxEntries, maxHeapMb * 1024L * 1024L);
+		logger.info("Carried {} of {} ECL cache entries over from {}@{} to {} in {} ms.", migrated.getStats().get("size"), previous.getStats().get("size"),
+				path, from, to, System.currentTimeMillis() - start);
+		return migrated.isEmpty() ? null : migrated;
+	}
+
+	private boolean isChanged(Class<?> type, String path, long from, long to, Branch previousVersion, Branch version) {
+		return isVersionsReplacedChanged(type, previousVersion, version)
+				|| elasticsearchOperations.count(new NativeQueryBuilder().withQuery(getChangesQuery(path, from, to)).build(), type) > 0;
+	}
+
+	/**
+	 * @return Reference sets with members changed on the branch, or null if the reference sets are not known.
+	 */
+	private Set<Long> findChangedReferenceSets(String path, long from, long to, Branch previousVersion, Branch version) {
+		if (isVersionsReplacedChanged(ReferenceSetMember.class, previousVersion, version)) {
+			return null;
+		}
+		SearchHits<ReferenceSetMember> hits = elasticsearchOperations.search(new NativeQueryBuilder()
+				.withQuery(getChangesQuery(path, from, to))
+				.withPageable(PageRequest.of(0, 1))
+				.withAggregation("refsets", AggregationBuilders.terms().field(ReferenceSetMember.Fields.REFSET_ID).size(REFSET_AGGREGATION_SIZE).build()._toAggregation())
+				.build(), ReferenceSetMember.class);
+		if (hits.getTotalHits() == 0) {
+			return Set.of();
+		}
+		List<Aggregation> aggregations = AggregationUtils.getAggregations(hits.getAggregations(), "refsets");
+		if (aggregations.isEmpty()) {
+			return null;
+		}
+		StringTermsAggregate refsets = aggregations.get(0).getAggregate().sterms();
+		if (refsets.sumOtherDocCount() != null && refsets.sumOtherDocCount() > 0) {
+			return null;
+		}
+		return refsets.buckets().array().stream().map(bucket -> parseLong(bucket.key().stringValue())).collect(Collectors.toSet());
+	}
+
+	// Components from ancestor branches which were replaced or deleted on this branch
+	private boolean isVersionsReplacedChanged(Class<?> type, Branch previousVersion, Branch version) {
+		return !Objects.equals(previousVersion.getVersionsReplacedCounts().get(type.getSimpleName()), version.getVersionsReplacedCounts().get(type.getSimpleName()));
+	}
+
+	private Query getChangesQuery(String path, long from, long to) {
+		return bool(b -> b
+				.must(termQuery("path", path))
+				.should(range(r -> r.field("start").gt(JsonData.of(from)).lte(JsonData.of(to))))
+				.should(range(r -> r.field("end").gt(JsonData.of(from)).lte(JsonData.of(to))))
+				.minimumShouldMatch("1"));
+	}
+}
@@ -0,0 +1,110 @@
+package org.snomed.snowstorm.ecl;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.services.BranchHeadTaskQueue;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Selects the most used ECL of a branch again when a commit changes the branch head,
+ * so that the ECL results cache of the new branch version is populated before most clients query it.
+ * <p>
+ * The most hit entries of the cache are noted as the commit completes. Once the new head is visible they are selected against it
+ * in the background, through the ECL cache, so client requests for the same ECL share the warm-up selection rather than repeating it.
+ * A warm-up waiting for a commit is replaced by the warm-up of a later commit on the same branch, and a running warm-up stops
+ * when a later commit is waiting, so a burst of commits only warms up the latest head.
+ */
+@Service
+public class ECLCacheWarmingService implements CommitListener {
+
+	@Value("${cache.ecl.warm-up.enabled}")
+	private boolean enabled;
+
+	@Value("${cache.ecl.warm-up.top}")
+	private int top;
+
+	@Value("${cache.ecl.warm-up.min-hits}")
+	private int minHits;
+
+	@Value("${cache.ecl.warm-up.threads}")
+	private int threads;
+
+	@Value("${cache.ecl.warm-up.commit-wait-seconds}")
+	private int commitWaitSeconds;
+
+	@Autowired
+	private ECLQueryService eclQueryService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	private BranchHeadTaskQueue warmUpTasks;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		warmUpTasks = new BranchHeadTaskQueue("ecl-warm-up", threads, commitWaitSeconds, branchService);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		warmUpTasks.shutdown();
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		if (!enabled || !eclQueryService.isEclCacheEnabled()) {
+			return;
+		}
+		String path = commit.getBranch().getPath();
+		BranchVersionECLCache branchVersionCache = eclQueryService.getResultsCache().getBranchVersionCache(path);
+		if (branchVersionCache == null) {
+			return;
+		}
+		List<BranchVersionECLCache.HotEntry> hotEntries = branchVersionCache.getHotEntries(top, minHits);
+		if (!hotEntries.isEmpty()) {
+			warmUpTasks.submit(path, commit.getTimepoint(), branch -> warmUp(path, branch, hotEntries));
+		}
+	}
+
+	void warmUp(String path, Branch branch, List<BranchVersionECLCache.HotEntry> hotEntries) {
+		long start = System.currentTimeMillis();
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		BranchVersionECLCache branchVersionCache = eclQueryService.getBranchVersionCache(path, branchCriteria.getTimepoint());
+		int warmed = 0;
+		for (BranchVersionECLCache.HotEntry hotEntry : hotEntries) {
+			if (Thread.currentThread().isInterrupted() || warmUpTasks.hasPending(path)) {
+				logger.info("ECL cache warm-up for {}@{} stopped after {} of {} expressions, the branch has changed.",
+						path, branchCriteria.getTimepoint().getTime(), warmed, hotEntries.size());
+				return;
+			}
+			try {
+				SExpressionConstraint expressionConstraint = (SExpressionConstraint) eclQueryService.createQuery(hotEntry.ecl());
+				eclQueryService.doSelectConceptIds(expressionConstraint, branchCriteria, hotEntry.stated(), null, hotEntry.pageRequest());
+				branchVersionCache.inheritHits(hotEntry);
+				warmed++;
+			} catch (RuntimeException e) {
+				logger.warn("Failed to warm up ECL cache on {} with \"{}\".", path, hotEntry.ecl(), e);
+			}
+		}
+		logger.info("Warmed up ECL cache for {}@{} with {} of {} expressions in {} ms.",
+				path, branchCriteria.getTimepoint().getTime(), warmed, hotEntries.size(), System.currentTimeMillis() - start);
+	}
+}
@@ -3,9 +3,9 @@ package org.snomed.snowstorm.ecl;
 import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import co.elastic.clients.json.JsonData;
+import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongArraySet;
 import it.unimi.dsi.fastutil.longs.LongComparators;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 
@@ -17,6 +17,8 @@ import org.snomed.snowstorm.core.data.services.DescriptionService;
 import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.data.services.RelationshipService;
+import org.snomed.snowstorm.core.data.services.RuntimeServiceException;
+import org.snomed.snowstorm.core.data.services.profiling.QueryProfile;
 import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.snomed.snowstorm.core.util.SearchAfterPageImpl;
@@ -24,6 +26,7 @@ import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SSubExpressionConstraint;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -36,10 +39,14 @@ import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
 import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.stereotype.Service;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
+import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static java.lang.Long.parseLong;
 import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.*;
@@ -73,8 +80,18 @@ public class ECLContentService {
 	@Lazy
 	private ECLQueryService eclQueryService;
 
+	@Autowired
+	private HistoricAssociationIndexService historicAssociationIndexService;
+
+	@Value("${ecl.compound.operand-threads}")
+	private int operandThreads;
+
+	private ExecutorService operandExecutor;
+
 	private SExpressionConstraint historyMaxECL;
 
+	private static final String OPERAND_THREAD_NAME_PREFIX = "ecl-operand-";
+
 	private static final List<Long> HISTORY_PROFILE_MIN = Collections.singletonList(parseLong(Concepts.REFSET_SAME_AS_ASSOCIATION));
 	private static final List<Long> HISTORY_PROFILE_MOD = List.of(
 			parseLong(Concepts.REFSET_SAME_AS_ASSOCIATION),
@@ -85,10 +102,71 @@ public class ECLContentService {
 	@PostConstruct
 	public void init() {
 		historyMaxECL = (SExpressionConstraint) eclQueryService.createQuery("< 900000000000522004 |Historical association reference set|");
+		operandExecutor = Executors.newFixedThreadPool(operandThreads,
+				new ThreadFactoryBuilder().setNameFormat(OPERAND_THREAD_NAME_PREFIX + "%d").setDaemon(true).build());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		operandExecutor.shutdownNow();
+	}
+
+	/**
+	 * Selects all concept ids of each operand of a compound expression constraint.
+	 * Operands are evaluated concurrently using a pool shared by all requests. The first operand is evaluated on the calling thread.
+	 * Operands of compound constraints nested within an operand are evaluated one after another on the pool thread,
+	 * so that pool threads never wait on work queued behind them.
+	 * @param stopOnEmpty Stop and return null as soon as any operand has no results, as needed for a conjunction.
+	 * @return Ids of each operand, in the order of the operands, or null if stopped because an operand had no results.
+	 */
+	public List<ConceptIdSet> selectOperandIds(List<SSubExpressionConstraint> operands, RefinementBuilder refinementBuilder, boolean stopOnEmpty) {
+		boolean concurrent = operands.size() > 1 && !isOperandThread();
+		List<Future<ConceptIdSet>> futures = new ArrayList<>();
+		if (concurrent) {
+			for (SSubExpressionConstraint operand : operands.subList(1, operands.size())) {
+				futures.add(operandExecutor.submit(QueryProfile.propagate(() -> selectIdSet(operand, refinementBuilder))));
+			}
+		}
+		try {
+			List<ConceptIdSet> results = new ArrayList<>();
+			for (int i = 0; i < operands.size(); i++) {
+				ConceptIdSet ids = i == 0 || !concurrent ? selectIdSet(operands.get(i), refinementBuilder) : futures.get(i - 1).get();
+				if (stopOnEmpty && ids.isEmpty()) {
+					return null;
+				}
+				results.add(ids);
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeServiceException("Interrupted while evaluating ECL operands.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new RuntimeServiceException("Failed to evaluate ECL operands.", e.getCause());
+		} finally {
+			futures.forEach(future -> future.cancel(true));
+		}
+	}
+
+	/**
+	 * @return true if the current thread is evaluating an operand for another thread, so must not wait on other selections.
+	 */
+	public static boolean isOperandThread() {
+		return Thread.currentThread().getName().startsWith(OPERAND_THREAD_NAME_PREFIX);
+	}
+
+	private ConceptIdSet selectIdSet(SSubExpressionConstraint operand, RefinementBuilder refinementBuilder) {
+		return ConceptIdSet.of(ConceptSelectorHelper.select(operand, refinementBuilder).getContent());
+	}
+
+	public List<Long> fetchAllIdsWithCaching(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated) {
+		return eclQueryService.doSelectConceptIds(expressionConstraint, branchCriteria, stated, null, null).getContent();
 	}
 
-	public List<Long> fetchAllIdsWithCaching(SSubExpressionConstraint sSubExpressionConstraint, BranchCriteria branchCriteria, boolean stated) {
-		return eclQueryService.doSelectConceptIds(sSubExpressionConstraint, branchCriteria, stated, null, null).getContent();
+	public SExpressionConstraint createQuery(String ecl) {
+		return (SExpressionConstraint) eclQueryService.createQuery(ecl);
 	}
 
 	public Page<QueryConcept> queryForPage(NativeQuery searchQuery) {
@@ -165,9 +243,26 @@ public class ECLContentService {
 			return Collections.emptyList();
 		}
 
+		Set<Long> destinationIds = new LongOpenHashSet();
+		if (sourceConceptIds == null) {
+			addStatedDestinationIds(null, attributeTypeIds, branchCriteria, destinationIds);
+		} else {
+			for (List<Long> batch : Iterables.partition(sourceConceptIds, CLAUSE_LIMIT)) {
+				addStatedDestinationIds(batch, attributeTypeIds, branchCriteria, destinationIds);
+			}
+		}
+
+		// Stream search doesn't sort for us
+		// Sorting meaningless but supports deterministic pagination
+		List<Long> sortedIds = new LongArrayList(destinationIds);
+		sortedIds.sort(LongComparators.OPPOSITE_COMPARATOR);
+		return sortedIds;
+	}
+
+	private void addStatedDestinationIds(Collection<Long> sourceConceptIds, List<Long> attributeTypeIds, BranchCriteria branchCriteria, Set<Long> destinationIds) {
 		BoolQuery.Builder boolQueryBuilder = bool()
 				.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
-				.must(termQuery(QueryConcept.Fields.STATED, stated));
+				.must(termQuery(QueryConcept.Fields.STATED, true));
 
 		if (attributeTypeIds != null) {
 			BoolQuery.Builder shoulds = bool();
@@ -185,10 +280,10 @@ public class ECLContentService {
 
 		NativeQuery query = new NativeQueryBuilder()
 				.withQuery(boolQueryBuilder.build()._toQuery())
+				.withSourceFilter(new FetchSourceFilter(new String[]{QueryConcept.Fields.PARENTS, QueryConcept.Fields.ATTR}, null))
 				.withPageable(LARGE_PAGE)
 				.build();
 
-		Set<Long> destinationIds = new LongArraySet();
 		try (SearchHitsIterator<QueryConcept> stream = elasticsearchOperations.searchForStream(query, QueryConcept.class)) {
 			stream.forEachRemaining(hit -> {
 				QueryConcept queryConcept = hit.getContent();
@@ -205,12 +300,6 @@ public class ECLContentService {
 				}
 			});
 		}
-
-		// Stream search doesn't sort for us
-		// Sorting meaningless but supports deterministic pagination
-		List<Long> sortedIds = new LongArrayList(destinationIds);
-		sortedIds.sort(LongComparators.OPPOSITE_COMPARATOR);
-		return sortedIds;
 	}
 
 	private void addDestinationId(Object destinationId, Set<Long> destinationIds) {
@@ -367,6 +456,13 @@ public class ECLContentService {
 	public Set<Long> findHistoricConcepts(SortedSet<Long> initialConcepts, HistorySupplement historySupplement, BranchCriteria branchCriteria) {
 		List<Long> associationTypes = getHistoricAssociationTypes(historySupplement, branchCriteria);
 
+		if (historicAssociationIndexService.isIndexUsed(initialConcepts.size())) {
+			Set<Long> conceptIds = historicAssociationIndexService.findHistoricConcepts(initialConcepts, associationTypes, branchCriteria);
+			if (conceptIds != null) {
+				return conceptIds;
+			}
+		}
+
 		// Find all active historic associations where the target component id matches one of the initially selected concept.
 		// Return the referenced component, these are the inactive concepts with that association.
 		NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
@@ -0,0 +1,121 @@
+package org.snomed.snowstorm.ecl;
+
+import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
+import org.snomed.langauges.ecl.domain.refinement.Operator;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.*;
+import org.snomed.snowstorm.ecl.domain.refinement.SEclRefinement;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.lang.Long.parseLong;
+
+/**
+ * The content an ECL result was selected from, in addition to the semantic index which every result depends on.
+ * Used to keep cached results that a commit can not have changed, see {@link ECLCacheMigrationService}.
+ *
+ * @param concepts Concept documents, used by concept filters.
+ * @param descriptions Description documents, used by description filters.
+ * @param anyReferenceSet Members of any reference set, for example language reference sets used by description filters.
+ * @param referenceSets Members of these reference sets.
+ */
+public record ECLDependencies(boolean concepts, boolean descriptions, boolean anyReferenceSet, Set<Long> referenceSets) {
+
+	public static final ECLDependencies ALL = new ECLDependencies(true, true, true, Collections.emptySet());
+
+	public static ECLDependencies of(SExpressionConstraint expressionConstraint) {
+		Collector collector = new Collector();
+		collector.collect(expressionConstraint);
+		return new ECLDependencies(collector.concepts, collector.descriptions, collector.anyReferenceSet,
+				collector.anyReferenceSet ? Collections.emptySet() : Set.copyOf(collector.referenceSets));
+	}
+
+	/**
+	 * @param changedReferenceSets The reference sets with changed members, null if not known.
+	 * @return true if results with these dependencies may be different after the changes.
+	 */
+	public boolean isAffected(boolean conceptsChanged, boolean descriptionsChanged, Set<Long> changedReferenceSets) {
+		if ((concepts && conceptsChanged) || (descriptions && descriptionsChanged)) {
+			return true;
+		}
+		if (anyReferenceSet) {
+			return changedReferenceSets == null || !changedReferenceSets.isEmpty();
+		}
+		if (!referenceSets.isEmpty()) {
+			return changedReferenceSets == null || referenceSets.stream().anyMatch(changedReferenceSets::contains);
+		}
+		return false;
+	}
+
+	private static final class Collector {
+
+		private boolean concepts;
+		private boolean descriptions;
+		private boolean anyReferenceSet;
+		private final Set<Long> referenceSets = new HashSet<>();
+
+		private void collect(SExpressionConstraint expressionConstraint) {
+			if (expressionConstraint instanceof SSubExpressionConstraint subConstraint) {
+				if (subConstraint.getOperator() == Operator.memberOf) {
+					if (subConstraint.getConceptId() != null) {
+						referenceSets.add(parseLong(subConstraint.getConceptId()));
+					} else {
+						anyReferenceSet = true;
+					}
+				}
+				if (subConstraint.getConceptFilterConstraints() != null) {
+					concepts = true;
+				}
+				if (subConstraint.getDescriptionFilterConstraints() != null) {
+					descriptions = true;
+					anyReferenceSet = true;
+				}
+				if (subConstraint.getHistorySupplement() != null) {
+					anyReferenceSet = true;
+				}
+				if (subConstraint.getNestedExpressionConstraint() != null) {
+					collect((SExpressionConstraint) subConstraint.getNestedExpressionConstraint());
+				}
+			} else if (expressionConstraint instanceof SCompoundExpressionConstraint compoundConstraint) {
+				if (compoundConstraint.getConjunctionExpressionConstraints() != null) {
+					collectAll(compoundConstraint.getConjunctionExpressionConstraints());
+				} else if (compoundConstraint.getDisjunctionExpressionConstraints() != null) {
+					collectAll(compoundConstraint.getDisjunctionExpressionConstraints());
+				} else {
+					collectAll(List.of(compoundConstraint.getExclusionExpressionConstraints().getFirst(),
+							compoundConstraint.getExclusionExpressionConstraints().getSecond()));
+				}
+			} else if (expressionConstraint instanceof SRefinedExpressionConstraint refinedConstraint) {
+				collect((SExpressionConstraint) refinedConstraint.getSubexpressionConstraint());
+				StringBuffer refinement = new StringBuffer();
+				((SEclRefinement) refinedConstraint.getEclRefinement()).toString(refinement);
+				collectFromSyntax(refinement.toString());
+			} else if (expressionConstraint instanceof SDottedExpressionConstraint dottedConstraint) {
+				collect((SExpressionConstraint) dottedConstraint.getSubExpressionConstraint());
+				collectFromSyntax(dottedConstraint.toEclString());
+			} else {
+				collectFromSyntax("^ {{");
+			}
+		}
+
+		private void collectAll(List<SubExpressionConstraint> subExpressionConstraints) {
+			for (SubExpressionConstraint subExpressionConstraint : subExpressionConstraints) {
+				collect((SExpressionConstraint) subExpressionConstraint);
+			}
+		}
+
+		// Attribute values are not walked, any member of or filter syntax within them counts as a dependency on all of that content
+		private void collectFromSyntax(String ecl) {
+			if (ecl.contains("^")) {
+				anyReferenceSet = true;
+			}
+			if (ecl.contains("{{")) {
+				concepts = true;
+				descriptions = true;
+				anyReferenceSet = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package org.snomed.snowstorm.ecl;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.snomed.snowstorm.core.data.services.profiling.QueryProfile;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Explanation of how an ECL query is evaluated, see {@link ECLQueryService#explain}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ECLQueryPlan {
+
+	private final String ecl;
+	private final String plannedEcl;
+	private final List<String> rewrites;
+	private final Node root;
+	private long parseMillis;
+	private long planMillis;
+	private long executeMillis;
+	private long total;
+	private Collection<QueryProfile.Summary> elasticsearchCalls;
+
+	public ECLQueryPlan(String ecl, String plannedEcl, List<String> rewrites, Node root) {
+		this.ecl = ecl;
+		this.plannedEcl = plannedEcl;
+		this.rewrites = rewrites;
+		this.root = root;
+	}
+
+	public String getEcl() {
+		return ecl;
+	}
+
+	public String getPlannedEcl() {
+		return plannedEcl;
+	}
+
+	public List<String> getRewrites() {
+		return rewrites;
+	}
+
+	public Node getRoot() {
+		return root;
+	}
+
+	public long getParseMillis() {
+		return parseMillis;
+	}
+
+	public void setParseMillis(long parseMillis) {
+		this.parseMillis = parseMillis;
+	}
+
+	public long getPlanMillis() {
+		return planMillis;
+	}
+
+	public void setPlanMillis(long planMillis) {
+		this.planMillis = planMillis;
+	}
+
+	public long getExecuteMillis() {
+		return executeMillis;
+	}
+
+	public void setExecuteMillis(long executeMillis) {
+		this.executeMillis = executeMillis;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	public void setTotal(long total) {
+		this.total = total;
+	}
+
+	public Collection<QueryProfile.Summary> getElasticsearchCalls() {
+		return elasticsearchCalls;
+	}
+
+	public void setElasticsearchCalls(Collection<QueryProfile.Summary> elasticsearchCalls) {
+		this.elasticsearchCalls = elasticsearchCalls;
+	}
+
+	/**
+	 * One expression constraint within the plan.
+	 *
+	 * @param type The kind of constraint, for example "conjunction" or "refined".
+	 */
+	@JsonInclude(JsonInclude.Include.NON_EMPTY)
+	public record Node(String type, String ecl, List<Node> children) {
+	}
+}
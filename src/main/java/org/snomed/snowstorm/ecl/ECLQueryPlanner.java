@@ -0,0 +1,228 @@
+package org.snomed.snowstorm.ecl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import jakarta.annotation.PostConstruct;
+import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
+import org.snomed.langauges.ecl.domain.refinement.Operator;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+
+import static java.lang.Long.parseLong;
+
+/**
+ * Plans the evaluation of ECL before it is executed.
+ * <p>
+ * Operands of a conjunction or disjunction which are made redundant by another operand, according to the hierarchy of the branch version,
+ * are removed. For example "<< 22298006 AND << 404684003" becomes "<< 22298006" because 404684003 is an ancestor of 22298006.
+ * The planned constraint selects the same concepts. Queries are only planned when their results are not already cached,
+ * so repeated queries never pay for the ancestor lookups.
+ * <p>
+ * The planner does not choose how each constraint is evaluated, that is decided by the constraint classes.
+ */
+@Service
+public class ECLQueryPlanner {
+
+	@Value("${ecl.planner.enabled}")
+	private boolean enabled;
+
+	@Value("${ecl.planner.cache-size}")
+	private int cacheSize;
+
+	@Autowired
+	private ECLContentService eclContentService;
+
+	private Cache<String, Set<Long>> ancestorCache;
+
+	@PostConstruct
+	public void init() {
+		ancestorCache = CacheBuilder.newBuilder().maximumSize(cacheSize).expireAfterAccess(Duration.ofHours(1)).build();
+	}
+
+	/**
+	 * Removes redundant operands from the compound constraints within the expression constraint, modifying it in place.
+	 * @param rewrites Collects a description of each change made.
+	 */
+	public SExpressionConstraint plan(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated, List<String> rewrites) {
+		if (enabled) {
+			rewrite(expressionConstraint, new PlanContext(branchCriteria, stated), rewrites);
+		}
+		return expressionConstraint;
+	}
+
+	private void rewrite(SExpressionConstraint expressionConstraint, PlanContext context, List<String> rewrites) {
+		if (expressionConstraint instanceof SSubExpressionConstraint subConstraint) {
+			if (subConstraint.getNestedExpressionConstraint() != null) {
+				rewrite((SExpressionConstraint) subConstraint.getNestedExpressionConstraint(), context, rewrites);
+			}
+		} else if (expressionConstraint instanceof SRefinedExpressionConstraint refinedConstraint) {
+			rewrite((SExpressionConstraint) refinedConstraint.getSubexpressionConstraint(), context, rewrites);
+		} else if (expressionConstraint instanceof SDottedExpressionConstraint dottedConstraint) {
+			rewrite((SExpressionConstraint) dottedConstraint.getSubExpressionConstraint(), context, rewrites);
+		} else if (expressionConstraint instanceof SCompoundExpressionConstraint compoundConstraint) {
+			List<SubExpressionConstraint> operands = getOperands(compoundConstraint);
+			for (SubExpressionConstraint operand : operands) {
+				rewrite((SExpressionConstraint) operand, context, rewrites);
+			}
+			if (compoundConstraint.getConjunctionExpressionConstraints() != null) {
+				removeRedundantOperands(compoundConstraint, operands, true, context, rewrites);
+			} else if (compoundConstraint.getDisjunctionExpressionConstraints() != null) {
+				removeRedundantOperands(compoundConstraint, operands, false, context, rewrites);
+			}
+		}
+	}
+
+	/**
+	 * A conjunction keeps the narrowest of two operands where one is a subset of the other, a disjunction keeps the broadest.
+	 */
+	private void removeRedundantOperands(SCompoundExpressionConstraint compoundConstraint, List<SubExpressionConstraint> operands, boolean conjunction,
+			PlanContext context, List<String> rewrites) {
+
+		if (operands.stream().filter(operand -> HierarchyOperand.of(operand) != null).count() < 2) {
+			return;
+		}
+		List<SubExpressionConstraint> kept = new ArrayList<>();
+		for (SubExpressionConstraint operand : operands) {
+			HierarchyOperand candidate = HierarchyOperand.of(operand);
+			if (candidate != null) {
+				SubExpressionConstraint covering = null;
+				for (SubExpressionConstraint keptOperand : kept) {
+					HierarchyOperand other = HierarchyOperand.of(keptOperand);
+					if (other != null && (conjunction ? isSubset(other, candidate, context) : isSubset(candidate, other, context))) {
+						covering = keptOperand;
+						break;
+					}
+				}
+				if (covering != null) {
+					rewrites.add(describeRemoval(operand, covering, conjunction));
+					continue;
+				}
+				Iterator<SubExpressionConstraint> keptIterator = kept.iterator();
+				while (keptIterator.hasNext()) {
+					SubExpressionConstraint keptOperand = keptIterator.next();
+					HierarchyOperand other = HierarchyOperand.of(keptOperand);
+					if (other != null && (conjunction ? isSubset(candidate, other, context) : isSubset(other, candidate, context))) {
+						rewrites.add(describeRemoval(keptOperand, operand, conjunction));
+						keptIterator.remove();
+					}
+				}
+			}
+			kept.add(operand);
+		}
+		if (kept.size() < operands.size()) {
+			compoundConstraint.replaceOperands(kept);
+		}
+	}
+
+	private String describeRemoval(SubExpressionConstraint removed, SubExpressionConstraint kept, boolean conjunction) {
+		return String.format("Removed %s operand '%s' which %s '%s'.", conjunction ? "conjunction" : "disjunction",
+				((SExpressionConstraint) removed).toEclString(), conjunction ? "contains" : "is contained by", ((SExpressionConstraint) kept).toEclString());
+	}
+
+	/**
+	 * @return true if every concept matched by a is also matched by b.
+	 */
+	private boolean isSubset(HierarchyOperand a, HierarchyOperand b, PlanContext context) {
+		boolean sameConcept = a.conceptId == b.conceptId;
+		if (b.operator == null) {
+			return a.operator == null && sameConcept;
+		} else if (b.operator == Operator.descendantorselfof) {
+			return sameConcept || getAncestors(a.conceptId, context).contains(b.conceptId);
+		} else {
+			// b is descendantof
+			return (sameConcept && a.operator == Operator.descendantof) || (!sameConcept && getAncestors(a.conceptId, context).contains(b.conceptId));
+		}
+	}
+
+	private Set<Long> getAncestors(long conceptId, PlanContext context) {
+		String key = context.versionKey() + conceptId;
+		Set<Long> ancestors = context.cacheable() ? ancestorCache.getIfPresent(key) : null;
+		if (ancestors == null) {
+			ancestors = eclContentService.findAncestorIdsAsUnion(context.branchCriteria(), context.stated(), Collections.singleton(conceptId));
+			if (context.cacheable()) {
+				ancestorCache.put(key, ancestors);
+			}
+		}
+		return ancestors;
+	}
+
+	/**
+	 * @return The tree of constraints of the expression constraint.
+	 */
+	public ECLQueryPlan.Node describe(SExpressionConstraint expressionConstraint) {
+		String ecl = expressionConstraint.toEclString();
+		if (expressionConstraint instanceof SSubExpressionConstraint subConstraint) {
+			List<ECLQueryPlan.Node> children = new ArrayList<>();
+			if (subConstraint.getNestedExpressionConstraint() != null) {
+				children.add(describe((SExpressionConstraint) subConstraint.getNestedExpressionConstraint()));
+			}
+			return new ECLQueryPlan.Node("sub", ecl, children);
+
+		} else if (expressionConstraint instanceof SRefinedExpressionConstraint refinedConstraint) {
+			return new ECLQueryPlan.Node("refined", ecl, List.of(describe((SExpressionConstraint) refinedConstraint.getSubexpressionConstraint())));
+
+		} else if (expressionConstraint instanceof SDottedExpressionConstraint dottedConstraint) {
+			return new ECLQueryPlan.Node("dotted", ecl, List.of(describe((SExpressionConstraint) dottedConstraint.getSubExpressionConstraint())));
+
+		} else if (expressionConstraint instanceof SCompoundExpressionConstraint compoundConstraint) {
+			List<ECLQueryPlan.Node> children = getOperands(compoundConstraint).stream().map(operand -> describe((SExpressionConstraint) operand)).toList();
+			String type;
+			if (compoundConstraint.getConjunctionExpressionConstraints() != null) {
+				type = "conjunction";
+			} else if (compoundConstraint.getDisjunctionExpressionConstraints() != null) {
+				type = "disjunction";
+			} else {
+				type = "exclusion";
+			}
+			return new ECLQueryPlan.Node(type, ecl, children);
+		}
+		return new ECLQueryPlan.Node("unknown", ecl, Collections.emptyList());
+	}
+
+	private List<SubExpressionConstraint> getOperands(SCompoundExpressionConstraint compoundConstraint) {
+		if (compoundConstraint.getConjunctionExpressionConstraints() != null) {
+			return compoundConstraint.getConjunctionExpressionConstraints();
+		} else if (compoundConstraint.getDisjunctionExpressionConstraints() != null) {
+			return compoundConstraint.getDisjunctionExpressionConstraints();
+		}
+		return List.of(compoundConstraint.getExclusionExpressionConstraints().getFirst(), compoundConstraint.getExclusionExpressionConstraints().getSecond());
+	}
+
+	public void clearCache() {
+		ancestorCache.invalidateAll();
+	}
+
+	private record PlanContext(BranchCriteria branchCriteria, boolean stated) {
+
+		// Ancestors are only cached for a fixed version of a branch
+		private boolean cacheable() {
+			return branchCriteria.getTimepoint() != null;
+		}
+
+		private String versionKey() {
+			return branchCriteria.getBranchPath() + "@" + (cacheable() ? branchCriteria.getTimepoint().getTime() : "") + "|" + stated + "|";
+		}
+	}
+
+	/**
+	 * Self, descendant or descendant-or-self of a single concept, without filters or supplements.
+	 */
+	private record HierarchyOperand(Operator operator, long conceptId) {
+
+		private static HierarchyOperand of(SubExpressionConstraint constraint) {
+			SSubExpressionConstraint subConstraint = (SSubExpressionConstraint) constraint;
+			Operator operator = subConstraint.getOperator();
+			if (subConstraint.getConceptId() == null || subConstraint.isAnyFiltersOrSupplements()
+					|| (operator != null && operator != Operator.descendantof && operator != Operator.descendantorselfof)) {
+				return null;
+			}
+			return new HierarchyOperand(operator, parseLong(subConstraint.getConceptId()));
+		}
+	}
+}
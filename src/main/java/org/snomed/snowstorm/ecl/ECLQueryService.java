@@ -14,6 +14,7 @@ import org.snomed.langauges.ecl.domain.refinement.Operator;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
 import org.snomed.snowstorm.core.data.services.RuntimeServiceException;
+import org.snomed.snowstorm.core.data.services.profiling.QueryProfile;
 import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
@@ -27,11 +28,17 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.LongPredicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static java.lang.Long.parseLong;
@@ -51,6 +58,18 @@ public class ECLQueryService {
 	@Autowired
 	private ECLContentService eclContentService;
 
+	@Autowired
+	private HistoricAssociationIndexService historicAssociationIndexService;
+
+	@Autowired
+	private ECLQueryPlanner eclQueryPlanner;
+
+	@Autowired
+	private ECLCacheMigrationService eclCacheMigrationService;
+
+	@Autowired
+	private ECLVersionResultsStore eclVersionResultsStore;
+
 	@Value("${timer.ecl.duration-threshold}")
 	private int eclDurationLoggingThreshold;
 
@@ -59,6 +78,8 @@ public class ECLQueryService {
 
 	private final ECLResultsCache resultsCache;
 
+	private final Map<String, CompletableFuture<Void>> migrations = new ConcurrentHashMap<>();
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public ECLQueryService() {
@@ -89,7 +110,48 @@ public class ECLQueryService {
 		if (!skipEclPreprocessing) {
 			expressionConstraint = eclPreprocessingService.replaceIncorrectConcreteAttributeValue(expressionConstraint, branchCriteria.getBranchPath());
 		}
-		return doSelectConceptIds(expressionConstraint, branchCriteria, stated, conceptIdFilter, pageRequest);
+		return doSelectConceptIds(expressionConstraint, branchCriteria, stated, conceptIdFilter, pageRequest, true);
+	}
+
+	/**
+	 * Plans and runs the ECL, returning the plan with the time taken by each stage and a summary of the Elasticsearch calls made.
+	 * Results already in the ECL cache are not planned or selected again, so the execution time is that seen by a repeated request.
+	 */
+	public ECLQueryPlan explain(String ecl, BranchCriteria branchCriteria, boolean stated) throws ECLException {
+		QueryProfile existingProfile = QueryProfile.current();
+		QueryProfile profile = existingProfile != null ? existingProfile : QueryProfile.start();
+		try {
+			long start = System.currentTimeMillis();
+			SExpressionConstraint expressionConstraint = (SExpressionConstraint) eclQueryBuilder.createQuery(ecl);
+			if (isMemberFieldsSearch(expressionConstraint)) {
+				throw new RuntimeServiceException("ECL requesting specific refset member fields, can not return concept ids.");
+			}
+			expressionConstraint = eclPreprocessingService.replaceIncorrectConcreteAttributeValue(expressionConstraint, branchCriteria.getBranchPath());
+			long parsed = System.currentTimeMillis();
+
+			// Planned separately to report the rewrites, the query is planned again when run unless the results are cached
+			SExpressionConstraint plannedConstraint = eclPreprocessingService.replaceIncorrectConcreteAttributeValue(
+					(SExpressionConstraint) eclQueryBuilder.createQuery(ecl), branchCriteria.getBranchPath());
+			List<String> rewrites = new ArrayList<>();
+			plannedConstraint = eclQueryPlanner.plan(plannedConstraint, branchCriteria, stated, rewrites);
+			ECLQueryPlan.Node root = eclQueryPlanner.describe(plannedConstraint);
+			long planned = System.currentTimeMillis();
+
+			Page<Long> page = doSelectConceptIds(expressionConstraint, branchCriteria, stated, null, PageRequest.of(0, 1), true);
+			long executed = System.currentTimeMillis();
+
+			ECLQueryPlan plan = new ECLQueryPlan(ecl, plannedConstraint.toEclString(), rewrites, root);
+			plan.setParseMillis(parsed - start);
+			plan.setPlanMillis(planned - parsed);
+			plan.setExecuteMillis(executed - planned);
+			plan.setTotal(page.getTotalElements());
+			plan.setElasticsearchCalls(profile.getSummary());
+			return plan;
+		} finally {
+			if (existingProfile == null) {
+				QueryProfile.clear();
+			}
+		}
 	}
 
 	public static boolean isMemberFieldsSearch(SExpressionConstraint expressionConstraint) {
@@ -130,6 +192,15 @@ public class ECLQueryService {
 
 	public Page<Long> doSelectConceptIds(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter,
 			PageRequest pageRequest) {
+		return doSelectConceptIds(expressionConstraint, branchCriteria, stated, conceptIdFilter, pageRequest, false);
+	}
+
+	/**
+	 * @param plan Whether to plan the constraint before selecting it. Results are cached against the constraint as given, so planning is skipped
+	 * when the results are already cached.
+	 */
+	private Page<Long> doSelectConceptIds(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter,
+			PageRequest pageRequest, boolean plan) {
 
 		// - Optimisation idea -
 		// Changing something like "(id) AND (<<id OR >>id)"  to  "(id AND <<id) OR (id AND >>id)" will run in a fraction of the time because there will be no large fetches
@@ -142,7 +213,7 @@ public class ECLQueryService {
 
 		Optional<Page<Long>> pageOptional;
 		if (eclCacheEnabled) {
-			BranchVersionECLCache branchVersionCache = resultsCache.getOrCreateBranchVersionCache(path, branchCriteria.getTimepoint());
+			BranchVersionECLCache branchVersionCache = getBranchVersionCache(path, branchCriteria.getTimepoint());
 
 			PageRequest queryPageRequest = pageRequest;
 			LongPredicate filter = null;
@@ -159,20 +230,32 @@ public class ECLQueryService {
 				final int pageNumber = pageRequest != null ? pageRequest.getPageNumber() : 0;
 				final int pageSize = pageRequest != null ? pageRequest.getPageSize() : -1;
 				logger.debug("ECL cache hit {}@{} \"{}\" {}:{}", path, branchCriteria.getTimepoint().getTime(), ecl, pageNumber, pageSize);
-				branchVersionCache.recordHit();
+				branchVersionCache.recordHit(ecl, stated, queryPageRequest);
 
 				pageOptional = Optional.of(cachedPage);
 			} else {
 				// Select 1
 				// When is pageRequest null?
-				pageOptional = expressionConstraint.select(branchCriteria, stated, null, queryPageRequest, eclContentService, true);
-				if (pageOptional.isPresent()) {
-					// Cache results
-					final Page<Long> page = pageOptional.get();
-					branchVersionCache.put(ecl, stated, queryPageRequest, page);
-					eclSlowQueryTimer.checkpoint(String.format("ecl:'%s', with %s results in this page, now cached for this branch/commit/page.", ecl,
-							pageOptional.get().getNumberOfElements()));
-				}
+				final PageRequest selectPageRequest = queryPageRequest;
+				Supplier<Optional<Page<Long>>> selector = () -> {
+					// Full results of version branches may have been stored by this or another instance
+					final Page<Long> storedPage = eclVersionResultsStore.find(branchCriteria, ecl, stated, selectPageRequest);
+					Optional<Page<Long>> selected = storedPage != null ? Optional.of(storedPage) :
+							plan(expressionConstraint, branchCriteria, stated, plan).select(branchCriteria, stated, null, selectPageRequest, eclContentService, true);
+					if (selected.isPresent()) {
+						// Cache results
+						final Page<Long> page = selected.get();
+						branchVersionCache.put(ecl, stated, selectPageRequest, page, ECLDependencies.of(expressionConstraint));
+						if (storedPage == null) {
+							eclVersionResultsStore.store(branchCriteria, ecl, stated, selectPageRequest, page);
+						}
+						eclSlowQueryTimer.checkpoint(String.format("ecl:'%s', with %s results in this page, now cached for this branch/commit/page.", ecl,
+								page.getNumberOfElements()));
+					}
+					return selected;
+				};
+				// Identical concurrent selections share one evaluation. Operand threads select directly because they must never wait on other requests.
+				pageOptional = ECLContentService.isOperandThread() ? selector.get() : branchVersionCache.selectOnce(ecl, stated, queryPageRequest, selector);
 			}
 
 			if (pageOptional.isPresent()) {
@@ -184,7 +267,7 @@ public class ECLQueryService {
 			}
 		} else {
 			// Select 2
-			pageOptional = expressionConstraint.select(branchCriteria, stated, conceptIdFilter, pageRequest, eclContentService, true);
+			pageOptional = plan(expressionConstraint, branchCriteria, stated, plan).select(branchCriteria, stated, conceptIdFilter, pageRequest, eclContentService, true);
             pageOptional.ifPresent(longs -> eclSlowQueryTimer.checkpoint(String.format("ecl:'%s', with %s results in this page, cache not enabled.", ecl, longs.getNumberOfElements())));
 		}
 
@@ -196,6 +279,50 @@ public class ECLQueryService {
 		return pageOptional.get();
 	}
 
+	private SExpressionConstraint plan(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated, boolean plan) {
+		if (!plan) {
+			return expressionConstraint;
+		}
+		String ecl = expressionConstraint.toEclString();
+		List<String> rewrites = new ArrayList<>();
+		SExpressionConstraint planned = eclQueryPlanner.plan(expressionConstraint, branchCriteria, stated, rewrites);
+		if (!rewrites.isEmpty()) {
+			logger.debug("ECL \"{}\" planned as \"{}\", {}", ecl, planned.toEclString(), rewrites);
+		}
+		return planned;
+	}
+
+	/**
+	 * Gets the results cache of this version of the branch. When the branch has moved on from the cached version,
+	 * the results that the changes can not have affected are carried over to the new version.
+	 * Only one request per branch carries the cache over, concurrent requests wait for it.
+	 */
+	public BranchVersionECLCache getBranchVersionCache(String path, Date timepoint) {
+		BranchVersionECLCache existing = resultsCache.getBranchVersionCache(path);
+		if (existing != null && existing.isExpired(timepoint) && existing.getHead().before(timepoint)) {
+			CompletableFuture<Void> migration = new CompletableFuture<>();
+			CompletableFuture<Void> inFlightMigration = migrations.putIfAbsent(path, migration);
+			if (inFlightMigration != null) {
+				// Never completed exceptionally
+				inFlightMigration.join();
+			} else {
+				try {
+					BranchVersionECLCache migrated = eclCacheMigrationService.migrate(existing, path, timepoint);
+					if (migrated != null) {
+						resultsCache.replaceExpired(path, migrated);
+					}
+				} catch (RuntimeException e) {
+					logger.warn("Failed to carry ECL cache over from {}@{} to {}.", path, existing.getHead().getTime(), timepoint.getTime(), e);
+				} finally {
+					migrations.remove(path, migration);
+					migration.complete(null);
+				}
+			}
+		}
+		// Returns the carried over cache if it is for this version
+		return resultsCache.getOrCreateBranchVersionCache(path, timepoint);
+	}
+
 	private Page<Long> getWildcardPage(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter, PageRequest pageRequest) {
 		// Wildcard expression. Grab a page of concepts with no criteria.
 		Query query = ConceptSelectorHelper.getBranchAndStatedQuery(branchCriteria.getEntityBranchCriteria(QueryConcept.class), stated);
@@ -224,6 +351,13 @@ public class ECLQueryService {
 
 	public void clearCache() {
 		resultsCache.clearCache();
+		eclVersionResultsStore.clear();
+		historicAssociationIndexService.clearCache();
+		eclQueryPlanner.clearCache();
+	}
+
+	public boolean isEclCacheEnabled() {
+		return eclCacheEnabled;
 	}
 
 	public void setEclCacheEnabled(boolean eclCacheEnabled) {
@@ -19,19 +19,31 @@ public class ECLResultsCache {
 	}
 
 	public BranchVersionECLCache getOrCreateBranchVersionCache(String path, Date timepoint) {
-		BranchVersionECLCache branchVersionCache = cacheMap.get(path);
-		if (branchVersionCache == null || branchVersionCache.isExpired(timepoint)) {
-
-			if (branchVersionCache != null) {
-				logger.info("ECL cache expired {}@{}", path, timepoint.getTime());
+		// Created atomically so that concurrent requests for a new branch version share one cache and its in-flight selections
+		return cacheMap.compute(path, (key, branchVersionCache) -> {
+			if (branchVersionCache == null || branchVersionCache.isExpired(timepoint)) {
+				if (branchVersionCache != null) {
+					logger.info("ECL cache expired {}@{}", path, timepoint.getTime());
+				}
+				// Replacing the existing item will allow the old cache entry to be garbage collected
+				return new BranchVersionECLCache(timepoint);
 			}
+			return branchVersionCache;
+		});
+	}
 
-			branchVersionCache = new BranchVersionECLCache(timepoint);
+	/**
+	 * Installs a cache for a later version of the branch unless a cache for that version, or a later one, was created in the meantime.
+	 * @return The cache now held for the branch.
+	 */
+	public BranchVersionECLCache replaceExpired(String path, BranchVersionECLCache replacement) {
+		return cacheMap.compute(path, (key, branchVersionCache) ->
+				branchVersionCache == null || (branchVersionCache.isExpired(replacement.getHead()) && branchVersionCache.getHead().before(replacement.getHead()))
+						? replacement : branchVersionCache);
+	}
 
-			// Replacing the existing item will allow the old cache entry to be garbage collected
-			cacheMap.put(path, branchVersionCache);
-		}
-		return branchVersionCache;
+	public BranchVersionECLCache getBranchVersionCache(String path) {
+		return cacheMap.get(path);
 	}
 
 	public Map<String, BranchVersionECLCache> getCacheMap() {
@@ -0,0 +1,298 @@
+package org.snomed.snowstorm.ecl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Keeps full ECL results of version branches, such as MAIN/2024-01-01, on disk so that they survive restarts.
+ * The content of a branch version never changes so a result is stored once, keyed by a hash of the store format, application version,
+ * branch path, branch head, form and ECL. A commit to a version branch moves its head, so results of an earlier head are never served for a later one,
+ * and results written by a different release of the application are never read.
+ * <p>
+ * Each result is a file of concept ids in ascending order, read into memory when first requested and then held by the ECL cache.
+ * Files older than max-age-days are deleted and once the files use more than max-size-mb the oldest are deleted,
+ * by a background task which runs after writes and every hour. Temporary files left by writes which did not complete are deleted by the same task.
+ * The directory can be shared between all instances of a cluster, files are written to a temporary name and moved into place.
+ * Instances configured as read-only only read results stored by others and never delete files.
+ */
+@Service
+public class ECLVersionResultsStore {
+
+	private static final int MAGIC = 0x45434C32; // "ECL2"
+	private static final String FORMAT_VERSION = "2";
+	private static final String RESULT_FILE_SUFFIX = ".ids";
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+	private static final Duration EVICTION_INTERVAL = Duration.ofHours(1);
+	// Older temporary files are not being written by any instance
+	private static final Duration TEMP_FILE_MAX_AGE = Duration.ofHours(1);
+
+	@Value("${cache.ecl.version-store.enabled}")
+	private boolean enabled;
+
+	@Value("${cache.ecl.version-store.directory}")
+	private String directoryPath;
+
+	@Value("${cache.ecl.version-store.read-only}")
+	private boolean readOnly;
+
+	@Value("${cache.ecl.version-store.min-size}")
+	private int minSize;
+
+	@Value("${cache.ecl.version-store.max-size-mb}")
+	private long maxSizeMb;
+
+	@Value("${cache.ecl.version-store.max-age-days}")
+	private int maxAgeDays;
+
+	private Path directory;
+	private ScheduledExecutorService evictionExecutor;
+	private final AtomicBoolean evictionPending = new AtomicBoolean();
+	private final String engineVersion = Objects.requireNonNullElse(getClass().getPackage().getImplementationVersion(), "development");
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		directory = Paths.get(directoryPath);
+		if (enabled && !readOnly) {
+			evictionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("ecl-version-store-eviction-%d").setDaemon(true).build());
+			evictionExecutor.scheduleWithFixedDelay(this::evict, 0, EVICTION_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (evictionExecutor != null) {
+			evictionExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return The stored full result or null if the result is not stored.
+	 */
+	public Page<Long> find(BranchCriteria branchCriteria, String ecl, boolean stated, PageRequest pageRequest) {
+		if (!isApplicable(branchCriteria, pageRequest)) {
+			return null;
+		}
+		String key = getKey(branchCriteria, ecl, stated);
+		Path file = directory.resolve(hash(key) + RESULT_FILE_SUFFIX);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+			if (buffer.getInt() != MAGIC) {
+				logger.warn("ECL results file {} is not in the expected format, ignoring.", file);
+				return null;
+			}
+			byte[] keyBytes = new byte[buffer.getInt()];
+			buffer.get(keyBytes);
+			if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8))) {
+				// Hash collision
+				return null;
+			}
+			boolean descending = buffer.get() == 1;
+			long[] ids = new long[buffer.getInt()];
+			buffer.asLongBuffer().get(ids);
+			if (descending) {
+				LongArrays.reverse(ids);
+			}
+			return new PageImpl<>(LongArrayList.wrap(ids), PageRequest.of(0, ids.length), ids.length);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Failed to read ECL results file {}, ignoring.", file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a full result of a version branch. Pages, small results and results not ordered by concept id are not stored.
+	 */
+	public void store(BranchCriteria branchCriteria, String ecl, boolean stated, PageRequest pageRequest, Page<Long> page) {
+		if (readOnly || !isApplicable(branchCriteria, pageRequest)) {
+			return;
+		}
+		List<Long> content = page.getContent();
+		if (page.getClass() != PageImpl.class || content.size() < Math.max(minSize, 2) || content.size() != page.getTotalElements()) {
+			return;
+		}
+		boolean descending = content.get(0) > content.get(1);
+		if (!BranchVersionECLCache.CachedResult.isStrictlyOrdered(content, descending)) {
+			return;
+		}
+		String key = getKey(branchCriteria, ecl, stated);
+		Path file = directory.resolve(hash(key) + RESULT_FILE_SUFFIX);
+		if (Files.exists(file)) {
+			return;
+		}
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + keyBytes.length + 1 + 4 + content.size() * Long.BYTES);
+		buffer.putInt(MAGIC).putInt(keyBytes.length).put(keyBytes).put((byte) (descending ? 1 : 0)).putInt(content.size());
+		LongBuffer longBuffer = buffer.asLongBuffer();
+		for (int i = 0; i < content.size(); i++) {
+			longBuffer.put(content.get(descending ? content.size() - 1 - i : i));
+		}
+		buffer.rewind();
+		Path tempFile = null;
+		try {
+			Files.createDirectories(directory);
+			tempFile = Files.createTempFile(directory, file.getFileName().toString(), TEMP_FILE_SUFFIX);
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			scheduleEviction();
+		} catch (IOException e) {
+			logger.warn("Failed to write ECL results file {}.", file, e);
+			if (tempFile != null) {
+				try {
+					Files.deleteIfExists(tempFile);
+				} catch (IOException ignored) {
+					// Best effort
+				}
+			}
+		}
+	}
+
+	// Writes while an eviction is queued are covered by that eviction
+	private void scheduleEviction() {
+		if (evictionPending.compareAndSet(false, true)) {
+			try {
+				evictionExecutor.execute(() -> {
+					evictionPending.set(false);
+					evict();
+				});
+			} catch (RejectedExecutionException e) {
+				// Shutting down
+				evictionPending.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the stored results files which are older than the maximum age, then the oldest files until the total size is within the maximum.
+	 * Also deletes temporary files left by writes which did not complete.
+	 */
+	synchronized void evict() {
+		List<Pair<Path, BasicFileAttributes>> files = new ArrayList<>();
+		long oldestTempFileKept = System.currentTimeMillis() - TEMP_FILE_MAX_AGE.toMillis();
+		try (Stream<Path> paths = Files.list(directory)) {
+			for (Path path : paths.toList()) {
+				String name = path.toString();
+				boolean tempFile = name.endsWith(TEMP_FILE_SUFFIX);
+				if (!tempFile && !name.endsWith(RESULT_FILE_SUFFIX)) {
+					continue;
+				}
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				} catch (NoSuchFileException e) {
+					// Deleted by another instance
+					continue;
+				}
+				if (!tempFile) {
+					files.add(Pair.of(path, attributes));
+				} else if (attributes.lastModifiedTime().toMillis() < oldestTempFileKept) {
+					delete(path);
+				}
+			}
+		} catch (NoSuchFileException e) {
+			return;
+		} catch (IOException e) {
+			logger.warn("Failed to list ECL results directory {}.", directory, e);
+			return;
+		}
+		files.sort(Comparator.comparing(file -> file.getRight().lastModifiedTime()));
+		long oldestKept = System.currentTimeMillis() - Duration.ofDays(maxAgeDays).toMillis();
+		long totalSize = files.stream().mapToLong(file -> file.getRight().size()).sum();
+		long maxSize = maxSizeMb * 1024 * 1024;
+		for (Pair<Path, BasicFileAttributes> file : files) {
+			if (totalSize <= maxSize && file.getRight().lastModifiedTime().toMillis() >= oldestKept) {
+				break;
+			}
+			delete(file.getLeft());
+			totalSize -= file.getRight().size();
+		}
+	}
+
+	/**
+	 * Deletes all stored results, unless this instance is read-only.
+	 */
+	public synchronized void clear() {
+		if (!enabled || readOnly) {
+			return;
+		}
+		try (Stream<Path> paths = Files.list(directory)) {
+			paths.filter(path -> path.toString().endsWith(RESULT_FILE_SUFFIX)).forEach(this::delete);
+		} catch (NoSuchFileException e) {
+			// Nothing stored
+		} catch (IOException e) {
+			logger.warn("Failed to list ECL results directory {}.", directory, e);
+		}
+	}
+
+	private void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			logger.warn("Failed to delete ECL results file {}.", file, e);
+		}
+	}
+
+	static boolean isVersionBranch(String path) {
+		return CodeSystemService.VERSION_BRANCH_NAME_PATTERN.matcher(path.substring(path.lastIndexOf('/') + 1)).matches();
+	}
+
+	private boolean isApplicable(BranchCriteria branchCriteria, PageRequest pageRequest) {
+		return enabled && pageRequest == null && branchCriteria.getTimepoint() != null && isVersionBranch(branchCriteria.getBranchPath());
+	}
+
+	private String getKey(BranchCriteria branchCriteria, String ecl, boolean stated) {
+		return FORMAT_VERSION + "|" + engineVersion + "|" + branchCriteria.getBranchPath() + "@" + branchCriteria.getTimepoint().getTime() + "|" + (stated ? "stated" : "inferred") + "|" + ecl;
+	}
+
+	private static String hash(String key) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package org.snomed.snowstorm.ecl;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import it.unimi.dsi.fastutil.longs.*;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.services.BranchIndexCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Set;
+
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static io.kaicode.elasticvc.helper.QueryHelper.existsQuery;
+import static io.kaicode.elasticvc.helper.QueryHelper.termQuery;
+
+/**
+ * Holds an in-memory reverse index of the active historical associations of recently queried branches,
+ * from association reference set and target concept to the inactive source concepts.
+ * ECL history supplements on large concept sets use the index rather than a member query filtered by every concept in the set.
+ * The index of a branch is rebuilt when the association members visible on the branch change, see {@link BranchIndexCache}.
+ */
+@Service
+public class HistoricAssociationIndexService {
+
+	private static final String TARGET_COMPONENT_ID_FIELD = ReferenceSetMember.Fields.ADDITIONAL_FIELDS_PREFIX + ReferenceSetMember.AssociationFields.TARGET_COMP_ID;
+
+	@Value("${ecl.history-supplement.index.min-concepts}")
+	private int minConcepts;
+
+	@Value("${ecl.history-supplement.index.max-branches}")
+	private int maxBranches;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
+	@Autowired
+	private BranchService branchService;
+
+	private BranchIndexCache<BranchIndex> indexCache;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		indexCache = new BranchIndexCache<>("historic association", maxBranches, TARGET_COMPONENT_ID_FIELD, this::buildIndex,
+				branchService, elasticsearchOperations);
+	}
+
+	/**
+	 * @return true if history supplements of this many concepts should use the index.
+	 */
+	public boolean isIndexUsed(int conceptCount) {
+		return maxBranches > 0 && conceptCount >= minConcepts;
+	}
+
+	/**
+	 * @param conceptIds Concepts which are the targets of the associations.
+	 * @param associationTypes Association reference sets to include.
+	 * @return Inactive concepts with one of the association types to any of the concepts,
+	 * or null if the index does not cover the branch timepoint and should not be built for it.
+	 */
+	public Set<Long> findHistoricConcepts(Collection<Long> conceptIds, Collection<Long> associationTypes, BranchCriteria branchCriteria) {
+		BranchIndex index = indexCache.getIndex(branchCriteria);
+		return index != null ? index.findSources(conceptIds, associationTypes) : null;
+	}
+
+	private BranchIndex buildIndex(BranchCriteria branchCriteria) {
+		long start = System.currentTimeMillis();
+		NativeQuery query = new NativeQueryBuilder()
+				.withQuery(bool(b -> b
+						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+						.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true))
+						.must(existsQuery(TARGET_COMPONENT_ID_FIELD))))
+				.withSourceFilter(new FetchSourceFilter(new String[]{ReferenceSetMember.Fields.REFSET_ID,
+						ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, TARGET_COMPONENT_ID_FIELD}, null))
+				.withPageable(LARGE_PAGE)
+				.build();
+
+		Long2ObjectMap<LongArrayList[]> pairsByRefset = new Long2ObjectOpenHashMap<>();
+		int count = 0;
+		try (SearchHitsIterator<ReferenceSetMember> stream = elasticsearchOperations.searchForStream(query, ReferenceSetMember.class)) {
+			while (stream.hasNext()) {
+				ReferenceSetMember member = stream.next().getContent();
+				String target = member.getAdditionalField(ReferenceSetMember.AssociationFields.TARGET_COMP_ID);
+				if (target == null || target.isEmpty() || !target.chars().allMatch(Character::isDigit)) {
+					continue;
+				}
+				LongArrayList[] pairs = pairsByRefset.computeIfAbsent(Long.parseLong(member.getRefsetId()), id -> new LongArrayList[]{new LongArrayList(), new LongArrayList()});
+				pairs[0].add(Long.parseLong(target));
+				pairs[1].add(Long.parseLong(member.getReferencedComponentId()));
+				count++;
+			}
+		}
+
+		Long2ObjectMap<AssociationIndex> associations = new Long2ObjectOpenHashMap<>();
+		for (Long2ObjectMap.Entry<LongArrayList[]> entry : pairsByRefset.long2ObjectEntrySet()) {
+			associations.put(entry.getLongKey(), new AssociationIndex(entry.getValue()[0].toLongArray(), entry.getValue()[1].toLongArray()));
+		}
+		logger.info("Built historic association index for {}@{} with {} associations in {} ms.",
+				branchCriteria.getBranchPath(), branchCriteria.getTimepoint().getTime(), count, System.currentTimeMillis() - start);
+		return new BranchIndex(associations);
+	}
+
+	public void clearCache() {
+		indexCache.clear();
+	}
+
+	/**
+	 * @return The timepoint the index of the branch was built from or null if there is no index.
+	 */
+	Long getIndexTimepoint(String path) {
+		return indexCache.getIndexTimepoint(path);
+	}
+
+	private record BranchIndex(Long2ObjectMap<AssociationIndex> associations) {
+
+		private Set<Long> findSources(Collection<Long> conceptIds, Collection<Long> associationTypes) {
+			LongSet conceptIdSet = conceptIds instanceof LongSet longSet ? longSet : new LongOpenHashSet(conceptIds);
+			LongSet sources = new LongOpenHashSet();
+			for (Long associationType : associationTypes) {
+				AssociationIndex associationIndex = associations.get(associationType.longValue());
+				if (associationIndex != null) {
+					associationIndex.addSources(conceptIdSet, sources);
+				}
+			}
+			return sources;
+		}
+	}
+
+	/**
+	 * Pairs of target and source concept ids, sorted by target.
+	 */
+	private static final class AssociationIndex {
+
+		private final long[] targets;
+		private final long[] sources;
+
+		private AssociationIndex(long[] targets, long[] sources) {
+			LongArrays.quickSort(targets, sources);
+			this.targets = targets;
+			this.sources = sources;
+		}
+
+		private void addSources(LongSet conceptIds, LongSet results) {
+			if (conceptIds.size() < targets.length / 16) {
+				// Look up each concept
+				LongIterator iterator = conceptIds.iterator();
+				while (iterator.hasNext()) {
+					long conceptId = iterator.nextLong();
+					int index = LongArrays.binarySearch(targets, conceptId);
+					if (index >= 0) {
+						// Step back to the first pair with this target
+						while (index > 0 && targets[index - 1] == conceptId) {
+							index--;
+						}
+						for (; index < targets.length && targets[index] == conceptId; index++) {
+							results.add(sources[index]);
+						}
+					}
+				}
+			} else {
+				// Scan all associations
+				for (int i = 0; i < targets.length; i++) {
+					if (conceptIds.contains(targets[i])) {
+						results.add(sources[i]);
+					}
+				}
+			}
+		}
+	}
+}
@@ -2,12 +2,10 @@ package org.snomed.snowstorm.ecl.domain.expressionconstraint;
 
 import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
 import io.kaicode.elasticvc.api.BranchCriteria;
-import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 
 import org.snomed.langauges.ecl.domain.expressionconstraint.CompoundExpressionConstraint;
 import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
+import org.snomed.snowstorm.ecl.ConceptIdSet;
 import org.snomed.snowstorm.ecl.ConceptSelectorHelper;
 import org.snomed.snowstorm.ecl.ECLContentService;
 import org.snomed.snowstorm.ecl.deserializer.ECLModelDeserializer;
@@ -16,6 +14,7 @@ import org.snomed.snowstorm.ecl.domain.SubRefinementBuilder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -68,18 +67,11 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 
 		if (conjunctionExpressionConstraints != null) {
 			if (anyWithFiltersOrSupplements(conjunctionExpressionConstraints) || anyMemberOfQuery(conjunctionExpressionConstraints)) {
-				// Prefetch all
-				Set<Long> result = null;
-				for (SubExpressionConstraint conjunctionExpressionConstraint : conjunctionExpressionConstraints) {
-					List<Long> ids = ConceptSelectorHelper.select((SSubExpressionConstraint) conjunctionExpressionConstraint, refinementBuilder).getContent();
-					Set<Long> resultSet = new LongLinkedOpenHashSet(ids);
-					if (result == null) {
-						result = resultSet;
-					} else {
-						result = intersection(result, resultSet);
-					}
-				}
-				filteredOrSupplementedContentCallback.accept(result != null ? sortedList(result) : null);
+				// Prefetch all, any empty operand means an empty result
+				List<ConceptIdSet> operandIds = refinementBuilder.getEclContentService()
+						.selectOperandIds(toSubExpressionConstraints(conjunctionExpressionConstraints), refinementBuilder, true);
+				ConceptIdSet result = operandIds != null ? ConceptIdSet.and(operandIds) : ConceptIdSet.empty();
+				filteredOrSupplementedContentCallback.accept(result.toList(false));
 
 			} else {
 				for (SubExpressionConstraint conjunctionExpressionConstraint : conjunctionExpressionConstraints) {
@@ -89,16 +81,9 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 		} else if (disjunctionExpressionConstraints != null) {
 			if (anyWithFiltersOrSupplements(disjunctionExpressionConstraints) || anyMemberOfQuery(disjunctionExpressionConstraints)) {
 				// Prefetch all
-				Set<Long> result = null;
-				for (SubExpressionConstraint disjunctionExpressionConstraint : disjunctionExpressionConstraints) {
-					List<Long> ids = ConceptSelectorHelper.select((SSubExpressionConstraint) disjunctionExpressionConstraint, refinementBuilder).getContent();
-					if (result == null) {
-						result = new LongOpenHashSet(ids);
-					} else {
-						result.addAll(ids);
-					}
-				}
-				filteredOrSupplementedContentCallback.accept(result != null ? sortedList(result) : null);
+				List<ConceptIdSet> operandIds = refinementBuilder.getEclContentService()
+						.selectOperandIds(toSubExpressionConstraints(disjunctionExpressionConstraints), refinementBuilder, false);
+				filteredOrSupplementedContentCallback.accept(ConceptIdSet.or(operandIds).toList(false));
 
 			} else {
 				BoolQuery.Builder queryBuilder = bool();
@@ -115,9 +100,8 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 			SSubExpressionConstraint second = (SSubExpressionConstraint) exclusionExpressionConstraints.getSecond();
 
 			if (first.isAnyFiltersOrSupplements() || second.isAnyFiltersOrSupplements() || anyMemberOfQuery(List.of(first,second))) {
-				List<Long> ids = new LongArrayList(ConceptSelectorHelper.select(first, refinementBuilder).getContent());
-				ids.removeAll(ConceptSelectorHelper.select(second, refinementBuilder).getContent());
-				filteredOrSupplementedContentCallback.accept(ids);
+				List<ConceptIdSet> operandIds = refinementBuilder.getEclContentService().selectOperandIds(List.of(first, second), refinementBuilder, false);
+				filteredOrSupplementedContentCallback.accept(operandIds.get(0).andNot(operandIds.get(1)).toList(false));
 
 			} else {
 				first.addCriteria(refinementBuilder, (ids) -> {}, triedCache);
@@ -128,10 +112,21 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 		}
 	}
 
-	private LongArrayList sortedList(Set<Long> result) {
-		LongArrayList longs = new LongArrayList(result);
-		longs.sort(null);
-		return longs;
+	/**
+	 * Replaces the operands of a conjunction or disjunction with an equivalent set of operands, see {@link org.snomed.snowstorm.ecl.ECLQueryPlanner}.
+	 */
+	public void replaceOperands(List<SubExpressionConstraint> operands) {
+		if (conjunctionExpressionConstraints != null) {
+			conjunctionExpressionConstraints = new ArrayList<>(operands);
+		} else if (disjunctionExpressionConstraints != null) {
+			disjunctionExpressionConstraints = new ArrayList<>(operands);
+		} else {
+			throw new IllegalStateException("Operands of an exclusion can not be replaced.");
+		}
+	}
+
+	private List<SSubExpressionConstraint> toSubExpressionConstraints(List<SubExpressionConstraint> subExpressionConstraints) {
+		return subExpressionConstraints.stream().map(SSubExpressionConstraint.class::cast).toList();
 	}
 
 	private boolean anyWithFiltersOrSupplements(List<SubExpressionConstraint> subExpressionConstraints) {
@@ -1,25 +1,21 @@
 package org.snomed.snowstorm.ecl.domain.expressionconstraint;
 
 import io.kaicode.elasticvc.api.BranchCriteria;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.snomed.langauges.ecl.domain.expressionconstraint.DottedExpressionConstraint;
 import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
-import org.snomed.snowstorm.core.util.PageHelper;
+import org.snomed.snowstorm.ecl.ConceptIdSet;
 import org.snomed.snowstorm.ecl.ConceptSelectorHelper;
 import org.snomed.snowstorm.ecl.ECLContentService;
 import org.snomed.snowstorm.ecl.deserializer.ECLModelDeserializer;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Slice;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
-import java.util.function.LongPredicate;
-import java.util.stream.Collectors;
 
 import static com.google.common.collect.Sets.newHashSet;
 import static java.util.stream.Collectors.toSet;
@@ -41,37 +37,50 @@ public class SDottedExpressionConstraint extends DottedExpressionConstraint impl
 	public Optional<Page<Long>> select(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter,
 			PageRequest pageRequest, ECLContentService eclContentService, boolean triedCache) {
 
-		triedCache = false;// The subExpressionConstraint has not been through the cache
-
-		// Concept ids filtering should be done on attribute values for dot notation ECL query
-		// Fetch source concept ids
 		if (getSubExpressionConstraint().isWildcard()) {
 			throw new UnsupportedOperationException("Dotted expression using wildcard focus concept is not supported.");
 		}
-		List<Long> conceptIds = ConceptSelectorHelper.select((SExpressionConstraint) getSubExpressionConstraint(), branchCriteria, stated,
-				null, null, eclContentService, triedCache).getContent();
 
-		// Iteratively traverse attributes
-		for (SubExpressionConstraint dottedAttribute : dottedAttributes) {
-			SSubExpressionConstraint aDottedAttribute = (SSubExpressionConstraint) dottedAttribute;
-			Optional<Page<Long>> attributeTypeIdsOptional = aDottedAttribute.select(branchCriteria, stated, null, null, eclContentService, false);
-			List<Long> attributeTypeIds = attributeTypeIdsOptional.map(Slice::getContent).orElse(null);
-			// XXX Note that this content is not paginated
-			conceptIds = eclContentService.findRelationshipDestinationIds(conceptIds, attributeTypeIds, branchCriteria, stated);
+		ConceptIdSet conceptIds;
+		if (pageRequest != null || conceptIdFilter != null) {
+			// Page and filter the full results, these are cached so that following pages only need the final page taken
+			conceptIds = ConceptIdSet.of(eclContentService.fetchAllIdsWithCaching(this, branchCriteria, stated));
+		} else {
+			conceptIds = traverseLastAttribute(branchCriteria, stated, eclContentService);
 		}
 
-		LongPredicate filter = null;
+		// Concept ids filtering should be done on attribute values for dot notation ECL query
 		if (conceptIdFilter != null && !conceptIdFilter.isEmpty()) {
-			LongOpenHashSet fastSet = new LongOpenHashSet(conceptIdFilter);
-			filter = fastSet::contains;
+			conceptIds = conceptIds.and(ConceptIdSet.of(conceptIdFilter));
+		}
+
+		return Optional.of(ConceptSelectorHelper.getPage(pageRequest, conceptIds, true));
+	}
+
+	/**
+	 * Finds the destinations of the last dotted attribute from the results of the expression without it.
+	 * The results without the last attribute are fetched through the ECL cache, so each step of the traversal is only evaluated once
+	 * for each branch version and is shared with other expressions which start the same way.
+	 */
+	private ConceptIdSet traverseLastAttribute(BranchCriteria branchCriteria, boolean stated, ECLContentService eclContentService) {
+		SExpressionConstraint sourceConstraint = (SExpressionConstraint) subExpressionConstraint;
+		if (dottedAttributes.size() > 1) {
+			StringBuffer sourceEcl = new StringBuffer();
+			ECLModelDeserializer.expressionConstraintToString(subExpressionConstraint, sourceEcl);
+			for (SubExpressionConstraint dottedAttribute : dottedAttributes.subList(0, dottedAttributes.size() - 1)) {
+				sourceEcl.append(" . ");
+				ECLModelDeserializer.expressionConstraintToString(dottedAttribute, sourceEcl);
+			}
+			sourceConstraint = eclContentService.createQuery(sourceEcl.toString());
 		}
-		// Filtering on final results
-		if (filter != null) {
-			conceptIds = conceptIds.stream().filter(filter::test).collect(Collectors.toList());
+		List<Long> sourceIds = eclContentService.fetchAllIdsWithCaching(sourceConstraint, branchCriteria, stated);
+		if (sourceIds.isEmpty()) {
+			return ConceptIdSet.empty();
 		}
 
-		// Manually apply pagination
-		return Optional.of(PageHelper.fullListToPage(conceptIds, pageRequest, ConceptSelectorHelper.CONCEPT_ID_SEARCH_AFTER_EXTRACTOR));
+		SSubExpressionConstraint lastAttribute = (SSubExpressionConstraint) dottedAttributes.get(dottedAttributes.size() - 1);
+		List<Long> attributeTypeIds = lastAttribute.isWildcard() ? null : eclContentService.fetchAllIdsWithCaching(lastAttribute, branchCriteria, stated);
+		return ConceptIdSet.of(eclContentService.findRelationshipDestinationIds(sourceIds, attributeTypeIds, branchCriteria, stated));
 	}
 
 	@Override
@@ -185,6 +185,9 @@ public class BranchController {
 		return ControllerHelper.throwIfNotFound("Branch review", reviewService.getBranchReview(id));
 	}
 
+	@Operation(summary = "Retrieve the concepts changed on the source branch of a branch review.",
+			description = "Where the source is not the parent of the target, a concept is included if any commit on the source branch since its last promotion " +
+					"or base changed it, even if a later commit changed it back. The changes can include concepts which now match the target.")
 	@GetMapping(value = "/reviews/{id}/concept-changes")
 	public BranchReviewConceptChanges getBranchReviewConceptChanges(@PathVariable String id) {
 		BranchReview branchReview = reviewService.getBranchReviewOrThrow(id);
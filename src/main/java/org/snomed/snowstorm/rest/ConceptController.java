@@ -2,6 +2,9 @@ package org.snomed.snowstorm.rest;
 
 import ch.qos.logback.classic.Level;
 import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.base.Strings;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
@@ -22,6 +25,7 @@ import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.snomed.snowstorm.core.util.SearchAfterPageImpl;
 import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ECLQueryPlan;
 import org.snomed.snowstorm.ecl.ECLQueryService;
 import org.snomed.snowstorm.ecl.validation.ECLValidator;
 import org.snomed.snowstorm.rest.converter.SearchAfterHelper;
@@ -43,7 +47,12 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.*;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -59,6 +68,8 @@ import static org.springframework.util.CollectionUtils.isEmpty;
 @RequestMapping(produces = "application/json")
 public class ConceptController {
 	private static final PageRequest PAGE_REQUEST = PageRequest.of(0, 10);
+	private static final String NDJSON = "application/x-ndjson";
+	private static final int BULK_LOAD_STREAM_BATCH_SIZE = 500;
 
 	@Autowired
 	private ConceptService conceptService;
@@ -99,6 +110,9 @@ public class ConceptController {
 	@Autowired
 	private IdentifierComponentService identifierComponentService;
 
+	@Autowired
+	private ObjectMapper objectMapper;
+
 	@Value("${snowstorm.rest-api.allowUnlimitedConceptPagination:false}")
 	private boolean allowUnlimitedConceptPagination;
 
@@ -145,6 +159,12 @@ public class ConceptController {
 			@RequestParam(required = false) Set<String> conceptIds,
 			@RequestParam(required = false) boolean returnIdOnly,
 
+			@Parameter(description = "Type-ahead mode for term searches. Only the requested page of concepts is collected, in term order, " +
+					"so the response time does not grow with the number of matching descriptions. " +
+					"When combined with ECL the search stops as soon as the page is filled. " +
+					"The total is not exact, it is only greater than offset + limit when there are more results.")
+			@RequestParam(required = false, defaultValue = "false") boolean typeAhead,
+
 			@RequestParam(required = false, defaultValue = "0") int offset,
 			@RequestParam(required = false, defaultValue = "50") int limit,
 			@RequestParam(required = false) String searchAfter,
@@ -187,7 +207,8 @@ public class ConceptController {
 				.isNullEffectiveTime(isNullEffectiveTime)
 				.isReleased(isPublished)
 				.resultLanguageDialects(languageDialects)
-				.conceptIds(conceptIds);
+				.conceptIds(conceptIds)
+				.typeAhead(typeAhead);
 
 		queryBuilder.getDescriptionCriteria().preferredOrAcceptableValues(preferredOrAcceptableIn, preferredIn, acceptableIn);
 
@@ -328,7 +349,45 @@ public class ConceptController {
 			@RequestHeader(value = "Accept-Language", defaultValue = Config.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader) {
 
 		String path = BranchPathUriUtil.decodePath(branch);
+		return conceptService.find(path, getBulkLoadConceptIds(path, request), ControllerHelper.parseAcceptLanguageHeaderWithDefaultFallback(acceptLanguageHeader));
+	}
+
+	@Operation(summary = "Load concepts in the browser format as newline delimited JSON.",
+			description = "Request with 'Accept: " + NDJSON + "'. Each line of the response is one concept. " +
+					"Concepts are loaded and written in batches so the response starts straight away and the number of concepts is not limited.")
+	@PostMapping(value = "/browser/{branch}/concepts/bulk-load", produces = NDJSON)
+	@ReadOnlyApiWhenEnabled
+	public void streamBrowserConcepts(
+			@PathVariable String branch,
+			@RequestBody ConceptBulkLoadRequest request,
+			@RequestHeader(value = "Accept-Language", defaultValue = Config.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader,
+			HttpServletResponse response) throws IOException {
+
+		String path = BranchPathUriUtil.decodePath(branch);
+		List<String> conceptIds = getBulkLoadConceptIds(path, request);
+
+		response.setContentType(NDJSON);
+		ObjectWriter writer = objectMapper.writerWithView(View.Component.class).without(SerializationFeature.INDENT_OUTPUT);
+		OutputStream outputStream = response.getOutputStream();
+		try {
+			conceptService.findInBatches(path, conceptIds, ControllerHelper.parseAcceptLanguageHeaderWithDefaultFallback(acceptLanguageHeader),
+					BULK_LOAD_STREAM_BATCH_SIZE, concepts -> {
+						try {
+							for (Concept concept : concepts) {
+								outputStream.write(writer.writeValueAsBytes(concept));
+								outputStream.write('\n');
+							}
+							outputStream.flush();
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
 
+	private List<String> getBulkLoadConceptIds(String path, ConceptBulkLoadRequest request) {
 		List<String> conceptIds = request.getConceptIds();
 		Set<String> descriptionIds = request.getDescriptionIds();
 
@@ -336,8 +395,7 @@ public class ConceptController {
 			Page<Description> descriptions = descriptionService.findDescriptions(path, null, descriptionIds, null, LARGE_PAGE);
 			descriptions.forEach(description -> conceptIds.add(description.getConceptId()));
 		}
-
-		return conceptService.find(path, conceptIds, ControllerHelper.parseAcceptLanguageHeaderWithDefaultFallback(acceptLanguageHeader));
+		return conceptIds;
 	}
 
 	@Operation(summary = "Load a concept in the browser format.",
@@ -415,6 +473,19 @@ public class ConceptController {
 		return search(branch, searchRequest, acceptLanguageHeader).getBody();
 	}
 
+	@Operation(summary = "Explain how an ECL query is evaluated.",
+			description = "Returns the planned form of the ECL with the rewrites applied, the tree of constraints, " +
+					"the time taken to parse, plan and run the query and a summary of the Elasticsearch requests made.")
+	@GetMapping(value = "/{branch}/concepts/ecl-explain")
+	public ECLQueryPlan explainECL(
+			@PathVariable String branch,
+			@RequestParam String ecl,
+			@RequestParam(required = false, defaultValue = "false") boolean stated) {
+
+		branch = BranchPathUriUtil.decodePath(branch);
+		return eclQueryService.explain(ecl, versionControlHelper.getBranchCriteria(branch), stated);
+	}
+
 	@GetMapping(value = "/{branch}/concepts/{conceptId}/inbound-relationships")
 	@JsonView(value = View.Component.class)
 	public InboundRelationshipsResult findConceptInboundRelationships(@PathVariable String branch, @PathVariable String conceptId) {
@@ -0,0 +1,140 @@
+package org.snomed.snowstorm.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.services.profiling.QueryProfile;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects a profile of the Elasticsearch requests made while serving a request when the client asks for one
+ * using the X-Query-Profile request header or the _profile request parameter. Only users with the global ADMIN role get a profile
+ * because it names internal classes and methods.
+ * <p>
+ * The profile is returned in the X-Query-Profile response header as a JSON array, grouped by call site and ordered by time taken.
+ * The response is not buffered, so the header is added just before the body is written and holds the requests made up to then,
+ * which is all of them unless the body is streamed. Where the connection supports trailer fields the complete profile is also sent
+ * as a trailer of the same name. The complete profile is always logged.
+ */
+public class QueryProfileFilter extends OncePerRequestFilter {
+
+	public static final String PROFILE_HEADER = "X-Query-Profile";
+	public static final String PROFILE_PARAM = "_profile";
+
+	private static final String REQUIRED_ROLE = "ADMIN";
+	private static final String GLOBAL = "global";
+	private static final int MAX_HEADER_ENTRIES = 20;
+
+	private final PermissionEvaluator permissionEvaluator;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public QueryProfileFilter(PermissionEvaluator permissionEvaluator) {
+		this.permissionEvaluator = permissionEvaluator;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+		if (!isProfileRequested(request) || !isProfileAllowed()) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		QueryProfile profile = QueryProfile.start();
+		ProfileHeaderResponseWrapper responseWrapper = new ProfileHeaderResponseWrapper(response, profile);
+		try {
+			response.setTrailerFields(() -> Map.of(PROFILE_HEADER, toJson(profile)));
+		} catch (IllegalStateException e) {
+			// Trailer fields not supported on this connection
+		}
+		try {
+			filterChain.doFilter(request, responseWrapper);
+		} finally {
+			QueryProfile.clear();
+			// Responses without a body
+			responseWrapper.addProfileHeader();
+			logger.info("Query profile for {} {}: {} Elasticsearch requests {}", request.getMethod(), request.getRequestURI(), profile.getCalls().size(),
+					toJson(profile));
+		}
+	}
+
+	private boolean isProfileRequested(HttpServletRequest request) {
+		return "true".equalsIgnoreCase(request.getHeader(PROFILE_HEADER)) || "true".equalsIgnoreCase(request.getParameter(PROFILE_PARAM));
+	}
+
+	private boolean isProfileAllowed() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		try {
+			return permissionEvaluator.hasPermission(authentication, REQUIRED_ROLE, GLOBAL);
+		} catch (RuntimeException e) {
+			// For example no authentication when roles are enabled
+			return false;
+		}
+	}
+
+	private String toJson(QueryProfile profile) {
+		List<QueryProfile.Summary> summary = profile.getSummary().stream()
+				.sorted(Comparator.comparing(QueryProfile.Summary::getTotalMillis).reversed())
+				.limit(MAX_HEADER_ENTRIES)
+				.toList();
+		try {
+			return objectMapper.writeValueAsString(summary);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Failed to write query profile.", e);
+		}
+	}
+
+	private final class ProfileHeaderResponseWrapper extends HttpServletResponseWrapper {
+
+		private final QueryProfile profile;
+		private boolean headerAdded;
+
+		private ProfileHeaderResponseWrapper(HttpServletResponse response, QueryProfile profile) {
+			super(response);
+			this.profile = profile;
+		}
+
+		private void addProfileHeader() {
+			if (!headerAdded && !isCommitted()) {
+				setHeader(PROFILE_HEADER, toJson(profile));
+			}
+			headerAdded = true;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			addProfileHeader();
+			return super.getOutputStream();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			addProfileHeader();
+			return super.getWriter();
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			addProfileHeader();
+			super.flushBuffer();
+		}
+	}
+}
@@ -13,6 +13,8 @@ import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.services.ConceptService;
 import org.snomed.snowstorm.core.data.services.DescriptionService;
+import org.snomed.snowstorm.core.data.services.NotFoundException;
+import org.snomed.snowstorm.core.data.services.ReferenceSetMemberImportService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.core.data.services.pojo.AsyncRefsetMemberChangeBatch;
@@ -23,6 +25,7 @@ import org.snomed.snowstorm.core.pojo.LanguageDialect;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.snomed.snowstorm.rest.pojo.ItemsPage;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
@@ -31,8 +34,13 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.validation.Valid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -47,6 +55,9 @@ public class ReferenceSetMemberController {
 	@Autowired
 	private ReferenceSetMemberService memberService;
 
+	@Autowired
+	private ReferenceSetMemberImportService memberImportService;
+
 	@Autowired
 	private ConceptService conceptService;
 
@@ -265,11 +276,54 @@ public class ReferenceSetMemberController {
 			ControllerHelper.requiredParam(member.getReferencedComponentId(), "referencedComponentId");
 		}
 
-		String batchId = memberService.newCreateUpdateAsyncJob();
+		String batchId = memberService.newCreateUpdateAsyncJob(branch);
 		memberService.createUpdateAsync(batchId, branch, refsetMembers, SecurityContextHolder.getContext());
 		return ControllerHelper.getCreatedResponse(batchId);
 	}
 
+	@Operation(summary = "Start a streaming reference set member import job.",
+			description = "Reference set members can be created or updated by uploading a file with one member per line, in the same JSON format as the bulk endpoint. " +
+					"The file is read as a stream and members are saved in windows within one commit, so large reference sets can be imported. " +
+					"Rows which can not be read or refer to a reference set or component that is missing or inactive on the branch are skipped. " +
+					"Use the location header in the response to check the job status, rows skipped can be downloaded from the errors endpoint of the job. " +
+					"If the 'moduleId' is not set the '" + Config.DEFAULT_MODULE_ID_KEY + "' will be used from branch metadata (resolved recursively).")
+	@PostMapping(value = "/{branch}/members/bulk/import", consumes = "multipart/form-data")
+	@PreAuthorize("hasPermission('AUTHOR', #branch)")
+	public ResponseEntity<Void> importMembers(@PathVariable String branch, @RequestParam MultipartFile file) {
+		branch = BranchPathUriUtil.decodePath(branch);
+		String batchId = memberService.newCreateUpdateAsyncJob(branch);
+		try {
+			// Copy upload stream to temp file before calling async service method
+			File tempFile = Files.createTempFile(batchId, "-members.ndjson").toFile();
+			file.transferTo(tempFile);
+			memberImportService.importMembersAsync(batchId, branch, tempFile, SecurityContextHolder.getContext());
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Failed to open uploaded members file.");
+		}
+		return ControllerHelper.getCreatedResponse(batchId);
+	}
+
+	@Operation(summary = "Download the rows skipped by a streaming reference set member import job.",
+			description = "Tab separated file of the row number, referenced component and the reason each row was skipped.")
+	@GetMapping(value = "/{branch}/members/bulk/{bulkChangeId}/errors", produces = "text/tab-separated-values")
+	@PreAuthorize("hasPermission('AUTHOR', #branch)")
+	public FileSystemResource getMemberBulkChangeErrors(@PathVariable String branch, @PathVariable String bulkChangeId) {
+		branch = BranchPathUriUtil.decodePath(branch);
+		AsyncRefsetMemberChangeBatch batchChange = ControllerHelper.throwIfNotFound("Bulk Change", memberService.getBatchChange(bulkChangeId));
+		if (!branch.equals(batchChange.getBranch())) {
+			// The errors file lists content of the job branch, which the user may not have access to
+			throw new NotFoundException("Bulk Change not found");
+		}
+		if (batchChange.getStatus() == AsyncRefsetMemberChangeBatch.Status.RUNNING) {
+			throw new IllegalStateException("Bulk change is still running.");
+		}
+		File errorsFile = batchChange.getErrorsFile();
+		if (errorsFile == null || !errorsFile.isFile()) {
+			throw new NotFoundException("Bulk change has no errors file.");
+		}
+		return new FileSystemResource(errorsFile);
+	}
+
 	@Operation(summary = "Fetch the status of a bulk reference set member create/update job.")
 	@GetMapping(value = "/{branch}/members/bulk/{bulkChangeId}")
 	@PreAuthorize("hasPermission('AUTHOR', #branch)")
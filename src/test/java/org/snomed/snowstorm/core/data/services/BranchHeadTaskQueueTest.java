@@ -0,0 +1,80 @@
+package org.snomed.snowstorm.core.data.services;
+
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Branch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BranchHeadTaskQueueTest extends AbstractTest {
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	private BranchHeadTaskQueue taskQueue;
+
+	@AfterEach
+	void shutdown() {
+		if (taskQueue != null) {
+			taskQueue.shutdown();
+		}
+	}
+
+	@Test
+	void testTaskRunsOnceBranchReachesCommit() throws Exception {
+		taskQueue = new BranchHeadTaskQueue("test", 1, 60, branchService);
+		Date head = branchService.findLatest(MAIN).getHead();
+		Date nextCommit = new Date(head.getTime() + 1);
+		CompletableFuture<Branch> ran = new CompletableFuture<>();
+		taskQueue.submit(MAIN, nextCommit, ran::complete);
+		assertTrue(taskQueue.hasPending(MAIN));
+
+		conceptService.create(new Concept("100001"), MAIN);
+
+		Branch branch = ran.get(30, TimeUnit.SECONDS);
+		assertFalse(branch.getHead().before(nextCommit));
+		assertFalse(taskQueue.hasPending(MAIN));
+	}
+
+	@Test
+	void testPendingTaskReplacedByLaterCommit() throws Exception {
+		taskQueue = new BranchHeadTaskQueue("test", 1, 60, branchService);
+		Date head = branchService.findLatest(MAIN).getHead();
+		AtomicBoolean replacedRan = new AtomicBoolean();
+		CompletableFuture<Branch> ran = new CompletableFuture<>();
+		taskQueue.submit(MAIN, new Date(head.getTime() + 1), branch -> replacedRan.set(true));
+		taskQueue.submit(MAIN, new Date(head.getTime() + 2), ran::complete);
+
+		conceptService.create(new Concept("100001"), MAIN);
+
+		ran.get(30, TimeUnit.SECONDS);
+		assertFalse(replacedRan.get());
+		assertFalse(taskQueue.hasPending(MAIN));
+	}
+
+	@Test
+	void testTaskDroppedWhenCommitNotReached() throws Exception {
+		taskQueue = new BranchHeadTaskQueue("test", 1, 0, branchService);
+		AtomicBoolean ran = new AtomicBoolean();
+		taskQueue.submit(MAIN, new Date(System.currentTimeMillis() + 60_000), branch -> ran.set(true));
+
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (taskQueue.hasPending(MAIN) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertFalse(taskQueue.hasPending(MAIN));
+		assertFalse(ran.get());
+	}
+}
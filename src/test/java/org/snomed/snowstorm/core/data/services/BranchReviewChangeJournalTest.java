@@ -0,0 +1,60 @@
+package org.snomed.snowstorm.core.data.services;
+
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Branch;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Date;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.snomed.snowstorm.core.data.domain.Concepts.*;
+
+class BranchReviewChangeJournalTest extends AbstractTest {
+
+	@Autowired
+	private BranchReviewChangeJournal branchReviewChangeJournal;
+
+	@Autowired
+	private ConceptChangeHelper conceptChangeHelper;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Test
+	void testChangesUnionedFromCommits() throws ServiceException {
+		conceptService.create(new Concept(SNOMEDCT_ROOT), MAIN);
+		conceptService.create(new Concept("100001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), MAIN);
+		String path = "MAIN/JOURNAL";
+		Branch branch = branchService.create(path);
+		Date start = new Date(branch.getCreation().getTime() + 1);
+
+		conceptService.create(new Concept("100002").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), path);
+		Concept concept = conceptService.find("100001", path);
+		concept.addDescription(new Description("Thing (thing)").setTypeId(FSN));
+		conceptService.update(concept, path);
+
+		Date head = branchService.findBranchOrThrow(path).getHead();
+		Set<Long> changed = branchReviewChangeJournal.getConceptsChanged(path, start, head);
+		assertEquals(Set.of(100001L, 100002L), changed);
+		assertEquals(conceptChangeHelper.getConceptsChangedBetweenTimeRange(path, start, head, false), changed);
+		assertEquals(2, branchReviewChangeJournal.getEntryCount(path));
+
+		// Only the new commit is looked up
+		conceptService.create(new Concept("100003").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), path);
+		head = branchService.findBranchOrThrow(path).getHead();
+		branchReviewChangeJournal.recordCommit(path, head);
+		assertEquals(3, branchReviewChangeJournal.getEntryCount(path));
+		changed = branchReviewChangeJournal.getConceptsChanged(path, start, head);
+		assertEquals(Set.of(100001L, 100002L, 100003L), changed);
+		assertEquals(3, branchReviewChangeJournal.getEntryCount(path));
+	}
+}
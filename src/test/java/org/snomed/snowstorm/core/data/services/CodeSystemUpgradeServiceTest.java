@@ -2,6 +2,7 @@ package org.snomed.snowstorm.core.data.services;
 
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Metadata;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.snomed.snowstorm.AbstractTest;
@@ -14,10 +15,12 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.util.*;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.snomed.snowstorm.core.data.domain.Concepts.*;
 import static org.snomed.snowstorm.core.data.domain.review.ReviewStatus.PENDING;
+import static org.snomed.snowstorm.core.data.services.BranchMetadataHelper.INTERNAL_METADATA_KEY;
 import static org.snomed.snowstorm.core.data.services.CodeSystemService.SNOMEDCT;
+import static org.snomed.snowstorm.core.data.services.CodeSystemUpgradeService.UPGRADE_PROGRESS_METADATA_KEY;
 
 @ExtendWith(SpringExtension.class)
 class CodeSystemUpgradeServiceTest extends AbstractTest {
@@ -159,6 +162,47 @@ class CodeSystemUpgradeServiceTest extends AbstractTest {
         assertEquals(1, mapCNCByTerm.get("Car").size());
     }
 
+    @Test
+    void testUpgradeResumedAfterRebase() throws ServiceException {
+        String extMain = "MAIN/SNOMEDCT-XX";
+        Map<String, String> preferred = Map.of(US_EN_LANG_REFSET, descriptionAcceptabilityNames.get(PREFERRED));
+        String ci = "CASE_INSENSITIVE";
+
+        codeSystemService.createCodeSystem(new CodeSystem(SNOMEDCT, Branch.MAIN));
+        conceptService.create(new Concept(Concepts.SNOMEDCT_ROOT), Branch.MAIN);
+        Concept concept = conceptService.create(new Concept()
+                .addDescription(new Description("Vehicle (vehicle)").setTypeId(FSN).setCaseSignificance(ci).setAcceptabilityMap(preferred))
+                .addAxiom(new Relationship(ISA, SNOMEDCT_ROOT)), Branch.MAIN);
+        String vehicleId = concept.getConceptId();
+        codeSystemService.createVersion(codeSystemService.find(SNOMEDCT), 20220131, "20220131");
+
+        // Extension translates the concept
+        codeSystemService.createCodeSystem(new CodeSystem("SNOMEDCT-XX", extMain));
+        concept = conceptService.find(vehicleId, extMain);
+        concept.addDescription(new Description("Bil").setTypeId(SYNONYM).setCaseSignificance(ci).setAcceptabilityMap(preferred));
+        conceptService.update(concept, extMain);
+
+        // International inactivates the concept
+        concept = conceptService.find(vehicleId, Branch.MAIN);
+        inactivate(concept, "OUTDATED");
+        conceptService.update(concept, Branch.MAIN);
+        codeSystemService.createVersion(codeSystemService.find(SNOMEDCT), 20220228, "20220228");
+
+        // Upgrade without content automations completes and clears its progress
+        codeSystemUpgradeService.upgrade(null, codeSystemService.find("SNOMEDCT-XX"), 20220228, false);
+        assertNull(branchService.findLatest(extMain).getMetadata().getMapOrCreate(INTERNAL_METADATA_KEY).get(UPGRADE_PROGRESS_METADATA_KEY));
+        assertTrue(mapCNCByTerm(conceptService.find(vehicleId, extMain)).get("Bil").isEmpty());
+        assertThrows(IllegalStateException.class, () -> codeSystemUpgradeService.upgrade(null, codeSystemService.find("SNOMEDCT-XX"), 20220228, true));
+
+        // As if the upgrade had failed after the rebase, the upgrade resumes with the content automations
+        Metadata metadata = branchService.findLatest(extMain).getMetadata();
+        metadata.getMapOrCreate(INTERNAL_METADATA_KEY).put(UPGRADE_PROGRESS_METADATA_KEY, "20220228|REBASE");
+        branchService.updateMetadata(extMain, metadata);
+        codeSystemUpgradeService.upgrade(null, codeSystemService.find("SNOMEDCT-XX"), 20220228, true);
+        assertEquals(1, mapCNCByTerm(conceptService.find(vehicleId, extMain)).get("Bil").size());
+        assertNull(branchService.findLatest(extMain).getMetadata().getMapOrCreate(INTERNAL_METADATA_KEY).get(UPGRADE_PROGRESS_METADATA_KEY));
+    }
+
     private void inactivate(Concept concept, String inactivationIndicator) {
         concept.setActive(false);
         concept.setInactivationIndicator(inactivationIndicator);
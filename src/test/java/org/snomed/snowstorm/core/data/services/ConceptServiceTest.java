@@ -551,6 +551,40 @@ class ConceptServiceTest extends AbstractTest {
 		}
 	}
 
+	@Test
+	void testFindInBatchesJoinsAllComponents() throws ServiceException {
+		List<Concept> concepts = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			String conceptId = "30000" + i;
+			Annotation annotation = new Annotation();
+			annotation.setTypeId("123456");
+			annotation.setValue("Annotation " + i);
+			concepts.add(new Concept(conceptId)
+					.addDescription(new Description("Concept " + i))
+					.addRelationship(new Relationship(ISA, SNOMEDCT_ROOT))
+					.addAxiom(new Relationship(ISA, SNOMEDCT_ROOT))
+					.addAnnotation(annotation));
+		}
+		conceptService.batchCreate(concepts, "MAIN");
+
+		List<String> conceptIds = concepts.stream().map(Concept::getConceptId).toList();
+		List<List<Concept>> batches = new ArrayList<>();
+		conceptService.findInBatches("MAIN", conceptIds, DEFAULT_LANGUAGE_DIALECTS, 2, batches::add);
+
+		assertEquals(3, batches.size());
+		assertEquals(2, batches.get(0).size());
+		assertEquals(1, batches.get(2).size());
+		List<Concept> loaded = batches.stream().flatMap(Collection::stream).toList();
+		assertEquals(new HashSet<>(conceptIds), loaded.stream().map(Concept::getConceptId).collect(Collectors.toSet()));
+		for (Concept concept : loaded) {
+			assertEquals(1, concept.getDescriptions().size());
+			assertEquals(1, concept.getRelationships().size());
+			assertEquals(SNOMEDCT_ROOT, concept.getRelationships().iterator().next().getTarget().getConceptId());
+			assertEquals(1, concept.getClassAxioms().size());
+			assertEquals(1, concept.getAnnotations().size());
+		}
+	}
+
 	@Test
 	void testSaveConceptWithAxioms() throws ServiceException {
 		String path = "MAIN";
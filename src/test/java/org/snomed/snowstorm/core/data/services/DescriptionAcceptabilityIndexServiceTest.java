@@ -0,0 +1,79 @@
+package org.snomed.snowstorm.core.data.services;
+
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongPredicate;
+
+import static java.lang.Long.parseLong;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.*;
+
+class DescriptionAcceptabilityIndexServiceTest extends AbstractTest {
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private DescriptionAcceptabilityIndexService acceptabilityIndexService;
+
+	@AfterEach
+	void clearIndexes() {
+		acceptabilityIndexService.clearCache();
+	}
+
+	@Test
+	void testIndexFollowsBranchChanges() throws ServiceException {
+		conceptService.create(new Concept("100001")
+				.addDescription(new Description("10000011", "Pizza").addLanguageRefsetMember(GB_EN_LANG_REFSET, PREFERRED)
+						.addLanguageRefsetMember(US_EN_LANG_REFSET, ACCEPTABLE)), MAIN);
+
+		Map<Long, Set<Long>> usAny = Map.of(parseLong(US_EN_LANG_REFSET), Set.of());
+		Map<Long, Set<Long>> gbPreferred = Map.of(parseLong(GB_EN_LANG_REFSET), Set.of(parseLong(PREFERRED)));
+		Map<Long, Set<Long>> gbAcceptable = Map.of(parseLong(GB_EN_LANG_REFSET), Set.of(parseLong(ACCEPTABLE)));
+		assertTrue(findAcceptable(usAny, MAIN).test(10000011L));
+		assertTrue(findAcceptable(gbPreferred, MAIN).test(10000011L));
+		assertFalse(findAcceptable(gbAcceptable, MAIN).test(10000011L));
+
+		// Change acceptability on a task, only the index of the task reflects the change
+		String task = "MAIN/task1";
+		branchService.create(task);
+		Concept concept = conceptService.find("100001", task);
+		Description description = concept.getDescriptions().iterator().next();
+		description.getLangRefsetMembersMap().get(US_EN_LANG_REFSET).iterator().next().setActive(false);
+		conceptService.update(concept, task);
+
+		assertFalse(findAcceptable(usAny, task).test(10000011L));
+		assertTrue(findAcceptable(usAny, MAIN).test(10000011L));
+
+		// Commits without language reference set changes keep the index of MAIN
+		conceptService.create(new Concept("100002"), MAIN);
+		assertFalse(findAcceptable(usAny, MAIN).test(10000021L));
+
+		// Language reference set changes on MAIN cause a rebuild
+		conceptService.create(new Concept("100003")
+				.addDescription(new Description("10000021", "Pasta").addLanguageRefsetMember(US_EN_LANG_REFSET, PREFERRED)), MAIN);
+		assertTrue(findAcceptable(usAny, MAIN).test(10000021L));
+		assertTrue(findAcceptable(usAny, MAIN).test(10000011L));
+	}
+
+	private LongPredicate findAcceptable(Map<Long, Set<Long>> acceptabilityByRefset, String path) {
+		LongPredicate acceptable = acceptabilityIndexService.findAcceptable(acceptabilityByRefset, versionControlHelper.getBranchCriteria(path));
+		assertNotNull(acceptable);
+		return acceptable;
+	}
+}
@@ -0,0 +1,120 @@
+package org.snomed.snowstorm.core.data.services;
+
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Date;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.*;
+
+class IntegrityReferenceIndexServiceTest extends AbstractTest {
+
+	@Autowired
+	private IntegrityReferenceIndexService integrityReferenceIndexService;
+
+	@Autowired
+	private IntegrityService integrityService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Test
+	void testIndexUpdatedByCommits() throws Exception {
+		String path = "MAIN/REFERENCES";
+		branchService.create(path);
+		conceptService.create(new Concept(SNOMEDCT_ROOT), path);
+		conceptService.create(new Concept("100001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), path);
+		conceptService.create(new Concept("100002"), path);
+		conceptService.create(new Concept("100003")
+				.addRelationship(new Relationship(ISA, SNOMEDCT_ROOT))
+				.addRelationship(new Relationship("100002", "100001")), path);
+
+		// Not indexed yet, built in the background
+		Date head = branchService.findBranchOrThrow(path).getHead();
+		Set<Long> conceptIds = Set.of(100001L, 100002L, 100004L);
+		assertNull(integrityReferenceIndexService.findReferenced(path, head, versionControlHelper.getBranchCriteria(path), conceptIds));
+		awaitIndexed(path, head);
+		assertEquals(Set.of(100001L, 100002L), integrityReferenceIndexService.findReferenced(path, head, versionControlHelper.getBranchCriteria(path), conceptIds));
+
+		// Removing the attribute is applied to the index by the commit
+		Concept concept = conceptService.find("100003", path);
+		concept.getRelationships().removeIf(relationship -> relationship.getTypeId().equals("100002"));
+		conceptService.update(concept, path);
+		head = branchService.findBranchOrThrow(path).getHead();
+		assertTrue(integrityReferenceIndexService.isIndexed(path, head));
+		assertEquals(Set.of(100001L), integrityReferenceIndexService.findReferenced(path, head, versionControlHelper.getBranchCriteria(path), conceptIds));
+
+		// Inactivating an unreferenced concept leaves nothing to report
+		concept = conceptService.find("100002", path);
+		concept.setActive(false);
+		conceptService.update(concept, path);
+		head = branchService.findBranchOrThrow(path).getHead();
+		assertTrue(integrityReferenceIndexService.isIndexed(path, head));
+		assertTrue(integrityService.findChangedComponentsWithBadIntegrityNotFixed(versionControlHelper.getBranchCriteria(path),
+				branchService.findBranchOrThrow(path)).isEmpty());
+
+		// The index matches a full build at the new head
+		assertEquals(Set.of(100001L), integrityReferenceIndexService.buildIndex(path, head, versionControlHelper.getBranchCriteria(path))
+				.findReferenced(head.getTime(), conceptIds));
+	}
+
+	@Test
+	void testConceptReferencedMoreThanOnce() throws Exception {
+		String path = "MAIN/MULTIPLE-REFERENCES";
+		branchService.create(path);
+		conceptService.create(new Concept(SNOMEDCT_ROOT), path);
+		conceptService.create(new Concept("100001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), path);
+		conceptService.create(new Concept("100002"), path);
+		conceptService.create(new Concept("100003")
+				.addRelationship(new Relationship(ISA, "100001"))
+				.addRelationship(new Relationship("100002", "100001")), path);
+		conceptService.create(new Concept("100004")
+				.addRelationship(new Relationship(ISA, SNOMEDCT_ROOT))
+				.addRelationship(new Relationship("100002", "100001")), path);
+
+		Date head = branchService.findBranchOrThrow(path).getHead();
+		Set<Long> conceptIds = Set.of(100001L, 100002L);
+		integrityReferenceIndexService.findReferenced(path, head, versionControlHelper.getBranchCriteria(path), conceptIds);
+		awaitIndexed(path, head);
+		assertEquals(Set.of(100001L, 100002L), integrityReferenceIndexService.findReferenced(path, head, versionControlHelper.getBranchCriteria(path), conceptIds));
+
+		// Removing one of the references of 100001 from 100003 leaves it referenced by the parent of 100003 and by 100004
+		Concept concept = conceptService.find("100003", path);
+		concept.getRelationships().removeIf(relationship -> relationship.getTypeId().equals("100002"));
+		conceptService.update(concept, path);
+		head = branchService.findBranchOrThrow(path).getHead();
+		assertTrue(integrityReferenceIndexService.isIndexed(path, head));
+		assertEquals(Set.of(100001L, 100002L), integrityReferenceIndexService.findReferenced(path, head, versionControlHelper.getBranchCriteria(path), conceptIds));
+
+		// Removing the attribute from 100004 leaves 100002 unreferenced and 100001 referenced by the parent of 100003
+		concept = conceptService.find("100004", path);
+		concept.getRelationships().removeIf(relationship -> relationship.getTypeId().equals("100002"));
+		conceptService.update(concept, path);
+		head = branchService.findBranchOrThrow(path).getHead();
+		assertTrue(integrityReferenceIndexService.isIndexed(path, head));
+		assertEquals(Set.of(100001L), integrityReferenceIndexService.findReferenced(path, head, versionControlHelper.getBranchCriteria(path), conceptIds));
+		assertEquals(Set.of(100001L), integrityReferenceIndexService.buildIndex(path, head, versionControlHelper.getBranchCriteria(path))
+				.findReferenced(head.getTime(), conceptIds));
+	}
+
+	private void awaitIndexed(String path, Date head) throws InterruptedException {
+		for (int i = 0; i < 100 && !integrityReferenceIndexService.isIndexed(path, head); i++) {
+			Thread.sleep(100);
+		}
+		assertTrue(integrityReferenceIndexService.isIndexed(path, head));
+	}
+}
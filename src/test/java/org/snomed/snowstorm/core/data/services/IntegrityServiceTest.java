@@ -10,6 +10,7 @@ import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.CodeSystem;
 import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.ConcreteValue;
 import org.snomed.snowstorm.core.data.domain.Relationship;
 import org.snomed.snowstorm.core.data.services.classification.BranchClassificationStatusService;
@@ -261,6 +262,31 @@ class IntegrityServiceTest extends AbstractTest {
 				.map(conceptMini -> (Set<Long>)conceptMini.getExtraFields().get("missingOrInactiveConcepts")).flatMap(Collection::stream).sorted().toArray());
 	}
 
+	@Test
+	void testFullIntegrityCheckOfAxioms() throws ServiceException {
+		sBranchService.create("MAIN/PROJECT");
+		conceptService.create(new Concept(ISA), "MAIN/PROJECT");
+		conceptService.create(new Concept("100001"), "MAIN/PROJECT");
+		conceptService.create(new Concept("10000101"), "MAIN/PROJECT");
+		conceptService.create(new Concept("10000102"), "MAIN/PROJECT");
+		// Valid axiom
+		conceptService.create(new Concept("100002").addAxiom(new Relationship(ISA, "100001"), new Relationship("10000101", "100001")), "MAIN/PROJECT");
+		// Axiom with one missing attribute value alongside an active one
+		conceptService.create(new Concept("100003").addAxiom(new Relationship(ISA, "100001"),
+				new Relationship("10000101", "100001"), new Relationship("10000102", "100001000")), "MAIN/PROJECT");
+		// Missing destination in a stated relationship
+		conceptService.create(new Concept("100004").addRelationship(new Relationship("10000101", "100001000").setInferred(false)), "MAIN/PROJECT");
+
+		IntegrityIssueReport report = integrityService.findAllComponentsWithBadIntegrity(branchService.findLatest("MAIN/PROJECT"), true);
+		assertNull(report.getRelationshipsWithMissingOrInactiveSource());
+		assertNull(report.getRelationshipsWithMissingOrInactiveType());
+		assertEquals(1, report.getRelationshipsWithMissingOrInactiveDestination().size());
+		assertEquals(1, report.getAxiomsWithMissingOrInactiveReferencedConcept().size());
+		assertEquals("[100001000]", getAxiomReferencedConcepts(report));
+		assertEquals(Set.of("100003"), report.getAxiomsWithMissingOrInactiveReferencedConcept().values().stream()
+				.map(ConceptMini::getConceptId).collect(Collectors.toSet()));
+	}
+
 	@Test
 	void testIntegrityCommitHook() throws Exception {
 		// create US CodeSystem for testing
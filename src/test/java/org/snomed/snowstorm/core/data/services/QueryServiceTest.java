@@ -8,6 +8,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.snomed.snowstorm.rest.pojo.ItemsPage;
 import org.snomed.snowstorm.rest.pojo.SearchAfterPageRequest;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +17,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -115,6 +117,65 @@ class QueryServiceTest extends AbstractTest {
 		assertEquals("Really Cheesy Pizza", matches.get(1).getFsnTerm());
 	}
 
+	@Test
+	void testTypeAheadSearch() {
+		Page<ConceptMini> page = service.search(service.createQueryBuilder(false).activeFilter(true).descriptionTerm("Piz").typeAhead(true), PATH, PageRequest.of(0, 2));
+		List<ConceptMini> matches = page.getContent();
+		assertEquals(2, matches.size());
+		assertEquals("Pizza", matches.get(0).getFsnTerm());
+		assertEquals("Cheese Pizza", matches.get(1).getFsnTerm());
+		assertTrue(page.getTotalElements() > 2, "Total shows that there are more results.");
+
+		page = service.search(service.createQueryBuilder(false).activeFilter(true).descriptionTerm("Piz").typeAhead(true), PATH, PageRequest.of(1, 2));
+		matches = page.getContent();
+		assertEquals(2, matches.size());
+		assertEquals("So Cheesy Pizza", matches.get(0).getFsnTerm());
+		assertEquals("Really Cheesy Pizza", matches.get(1).getFsnTerm());
+		assertEquals(4, page.getTotalElements());
+
+		// Inactive concept only included when active filter not set
+		assertEquals(5, service.search(service.createQueryBuilder(false).descriptionTerm("Piz").typeAhead(true), PATH, PAGE_REQUEST).getTotalElements());
+	}
+
+	@Test
+	void testTypeAheadSearchWithEcl() {
+		Page<ConceptMini> page = service.search(service.createQueryBuilder(false).ecl("<" + pizza_2.getConceptId()).descriptionTerm("Piz").typeAhead(true),
+				PATH, PageRequest.of(0, 2));
+		List<ConceptMini> matches = page.getContent();
+		assertEquals(2, matches.size());
+		assertEquals("Cheese Pizza", matches.get(0).getFsnTerm());
+		assertEquals("So Cheesy Pizza", matches.get(1).getFsnTerm());
+		assertTrue(page.getTotalElements() > 2);
+
+		// Next page using search after
+		SearchAfterPage<Long> idPage = service.searchForIds(service.createQueryBuilder(false).ecl("<" + pizza_2.getConceptId()).descriptionTerm("Piz").typeAhead(true),
+				PATH, PageRequest.of(0, 2));
+		assertEquals(List.of(parseLong(cheesePizza_3.getConceptId()), parseLong(reallyCheesyPizza_5.getConceptId())), idPage.getContent());
+		idPage = service.searchForIds(service.createQueryBuilder(false).ecl("<" + pizza_2.getConceptId()).descriptionTerm("Piz").typeAhead(true),
+				PATH, SearchAfterPageRequest.of(idPage.getSearchAfter(), 2, Sort.unsorted()));
+		assertEquals(List.of(parseLong(reallyCheesyPizza_4.getConceptId())), idPage.getContent());
+
+		// Same results when the search is driven from the descriptions because the ECL matches more concepts than descriptions
+		matches = service.search(service.createQueryBuilder(false).ecl("*").descriptionTerm("Cheesy").typeAhead(true),
+				PATH, PAGE_REQUEST).getContent();
+		assertEquals(2, matches.size());
+		assertEquals("So Cheesy Pizza", matches.get(0).getFsnTerm());
+		assertEquals("Really Cheesy Pizza", matches.get(1).getFsnTerm());
+
+		// Same results from the full lexical and logical search when the ECL matches too many concepts for a type-ahead search
+		int eclMaxConcepts = (int) ReflectionTestUtils.getField(service, "typeAheadEclMaxConcepts");
+		ReflectionTestUtils.setField(service, "typeAheadEclMaxConcepts", 1);
+		try {
+			matches = service.search(service.createQueryBuilder(false).ecl("<" + pizza_2.getConceptId()).descriptionTerm("Cheesy").typeAhead(true),
+					PATH, PAGE_REQUEST).getContent();
+			assertEquals(2, matches.size());
+			assertEquals("So Cheesy Pizza", matches.get(0).getFsnTerm());
+			assertEquals("Really Cheesy Pizza", matches.get(1).getFsnTerm());
+		} finally {
+			ReflectionTestUtils.setField(service, "typeAheadEclMaxConcepts", eclMaxConcepts);
+		}
+	}
+
 	@Test
 	void testFindInactiveConcept() {
 		Set<String> inactiveConceptId = Collections.singleton(inactivePizza_6.getId());
@@ -0,0 +1,93 @@
+package org.snomed.snowstorm.core.data.services;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.services.pojo.AsyncRefsetMemberChangeBatch;
+import org.snomed.snowstorm.core.data.services.pojo.MemberSearchRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.snomed.snowstorm.core.data.domain.Concepts.REFSET_SAME_AS_ASSOCIATION;
+
+class ReferenceSetMemberImportServiceTest extends AbstractTest {
+
+	private static final String SIMPLE_REFSET = "723264001";
+	private static final String REPEATED_MEMBER_ID = "8a9b7f0e-3c51-4d8b-9a27-5f1e2c6d4b30";
+
+	@Autowired
+	private ReferenceSetMemberImportService memberImportService;
+
+	@Autowired
+	private ReferenceSetMemberService memberService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Test
+	void testImportMembersInWindows() throws Exception {
+		conceptService.batchCreate(List.of(
+				new Concept(SIMPLE_REFSET),
+				new Concept(REFSET_SAME_AS_ASSOCIATION),
+				new Concept("100001"),
+				new Concept("100002").setActive(false),
+				new Concept("100003").addDescription(new Description("100011", "Test"))), MAIN);
+
+		File membersFile = Files.createTempFile("members", ".ndjson").toFile();
+		Files.writeString(membersFile.toPath(), String.join("\n",
+				"{\"refsetId\":\"" + SIMPLE_REFSET + "\",\"referencedComponentId\":\"100001\",\"active\":true}",
+				"{not json",
+				"{\"refsetId\":\"" + SIMPLE_REFSET + "\",\"referencedComponentId\":\"100002\",\"active\":true}",
+				"",
+				"{\"refsetId\":\"" + SIMPLE_REFSET + "\",\"referencedComponentId\":\"100004\",\"active\":true}",
+				"{\"refsetId\":\"" + SIMPLE_REFSET + "\",\"referencedComponentId\":\"100011\",\"active\":true}",
+				"{\"refsetId\":\"" + REFSET_SAME_AS_ASSOCIATION + "\",\"referencedComponentId\":\"100002\",\"active\":true," +
+						"\"additionalFields\":{\"targetComponentId\":\"100001\"}}",
+				"{\"refsetId\":\"100005\",\"referencedComponentId\":\"100001\",\"active\":true}",
+				// Same memberId twice in one window
+				"{\"memberId\":\"" + REPEATED_MEMBER_ID + "\",\"refsetId\":\"" + SIMPLE_REFSET + "\",\"referencedComponentId\":\"100001\",\"active\":true}",
+				"{\"memberId\":\"" + REPEATED_MEMBER_ID + "\",\"refsetId\":\"" + SIMPLE_REFSET + "\",\"referencedComponentId\":\"100011\",\"active\":true}"));
+
+		// Small windows so the members are saved in several windows of the same commit
+		ReflectionTestUtils.setField(memberImportService, "windowSize", 2);
+		AsyncRefsetMemberChangeBatch changeBatch = memberService.getBatchChange(memberService.newCreateUpdateAsyncJob(MAIN));
+		try {
+			memberImportService.importMembers(changeBatch, MAIN, membersFile);
+		} finally {
+			ReflectionTestUtils.setField(memberImportService, "windowSize", 5000);
+			Files.delete(membersFile.toPath());
+		}
+
+		assertEquals(10, changeBatch.getRowsRead());
+		assertEquals(4, changeBatch.getMembersSaved());
+		assertEquals(5, changeBatch.getErrorCount());
+
+		List<String> errors = Files.readAllLines(changeBatch.getErrorsFile().toPath());
+		assertEquals(6, errors.size());
+		assertEquals("row\treferencedComponentId\tmessage", errors.get(0));
+		assertEquals("2", errors.get(1).split("\t")[0]);
+		assertEquals("3\t100002\tReferenced component 100002 is inactive.", errors.get(2));
+		assertEquals("5\t100004\tReferenced component 100004 does not exist on the branch.", errors.get(3));
+		assertEquals("8\t100001\tReference set 100005 is not an active concept on the branch.", errors.get(4));
+		assertTrue(errors.get(5).startsWith("10\t100011\tmemberId " + REPEATED_MEMBER_ID + " is repeated"));
+		assertEquals("100001", memberService.findMember(MAIN, REPEATED_MEMBER_ID).getReferencedComponentId());
+		changeBatch.deleteErrorsFile();
+
+		Set<String> simpleMembers = memberService.findMembers(MAIN, new MemberSearchRequest().referenceSet(SIMPLE_REFSET), PageRequest.of(0, 10))
+				.stream().map(ReferenceSetMember::getReferencedComponentId).collect(Collectors.toSet());
+		assertEquals(Set.of("100001", "100011"), simpleMembers);
+		assertEquals(1, memberService.findMembers(MAIN, new MemberSearchRequest().referenceSet(REFSET_SAME_AS_ASSOCIATION), PageRequest.of(0, 10))
+				.getTotalElements());
+	}
+}
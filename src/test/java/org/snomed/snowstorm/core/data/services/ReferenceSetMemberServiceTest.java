@@ -242,7 +242,7 @@ class ReferenceSetMemberServiceTest extends AbstractTest {
 		ReferenceSetMember simple = new ReferenceSetMember("900000000000207008", "723264001", "731819006");
 		memberService.createMember(MAIN, simple);
 
-		final String batchId = memberService.newCreateUpdateAsyncJob();
+		final String batchId = memberService.newCreateUpdateAsyncJob(MAIN);
 		simple.setModuleId(Concepts.MODEL_MODULE);
 		ReferenceSetMember newMember = new ReferenceSetMember("900000000000207008", "723264001", Concepts.CLINICAL_FINDING);
 
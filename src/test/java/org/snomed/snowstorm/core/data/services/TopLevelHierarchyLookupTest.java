@@ -0,0 +1,56 @@
+package org.snomed.snowstorm.core.data.services;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.snomed.snowstorm.core.data.domain.Concepts.*;
+
+class TopLevelHierarchyLookupTest extends AbstractTest {
+
+	@Autowired
+	private TopLevelHierarchyLookup topLevelHierarchyLookup;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Test
+	void testTopLevelTagOfConceptAndStatedParent() throws Exception {
+		conceptService.create(new Concept(SNOMEDCT_ROOT), MAIN);
+		conceptService.create(new Concept("404684003").addFSN("Clinical finding (finding)")
+				.addAxiom(new Relationship(ISA, SNOMEDCT_ROOT)), MAIN);
+		conceptService.create(new Concept("64572001").addFSN("Disease (disorder)")
+				.addAxiom(new Relationship(ISA, "404684003")), MAIN);
+		conceptService.create(new Concept("123037004").addFSN("Body structure (body structure)")
+				.addAxiom(new Relationship(ISA, SNOMEDCT_ROOT)), MAIN);
+
+		String tag = null;
+		for (int i = 0; i < 100 && !"finding".equals(tag); i++) {
+			tag = topLevelHierarchyLookup.getTopLevelTag(64572001L, null);
+			Thread.sleep(100);
+		}
+		assertEquals("finding", tag);
+
+		// The top level concept itself
+		assertEquals("finding", topLevelHierarchyLookup.getTopLevelTag(404684003L, null));
+		// A new concept is found by its stated parent
+		assertEquals("finding", topLevelHierarchyLookup.getTopLevelTag(100001L, 64572001L));
+		assertEquals("body_structure", topLevelHierarchyLookup.getTopLevelTag(null, 123037004L));
+		assertNull(topLevelHierarchyLookup.getTopLevelTag(100001L, 100002L));
+
+		// The index is rebuilt from a head which includes the next commit on MAIN
+		conceptService.create(new Concept("71388002").addFSN("Procedure (procedure)")
+				.addAxiom(new Relationship(ISA, SNOMEDCT_ROOT)), MAIN);
+		tag = null;
+		for (int i = 0; i < 100 && !"procedure".equals(tag); i++) {
+			tag = topLevelHierarchyLookup.getTopLevelTag(71388002L, null);
+			Thread.sleep(100);
+		}
+		assertEquals("procedure", tag);
+		assertEquals("finding", topLevelHierarchyLookup.getTopLevelTag(64572001L, null));
+	}
+}
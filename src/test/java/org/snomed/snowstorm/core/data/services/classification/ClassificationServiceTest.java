@@ -20,6 +20,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -458,6 +460,17 @@ class ClassificationServiceTest extends AbstractTest {
 		assertNull(inactiveRelationship.getEffectiveTime());
 	}
 
+	@Test
+	void testRemoveReleasedRedundantRelationshipsThroughConceptSave() throws IOException, ServiceException, InterruptedException {
+		Object classificationServiceTarget = AopTestUtils.getTargetObject(classificationService);
+		ReflectionTestUtils.setField(classificationServiceTarget, "bulkSave", false);
+		try {
+			testRemoveReleasedRedundantRelationships();
+		} finally {
+			ReflectionTestUtils.setField(classificationServiceTarget, "bulkSave", true);
+		}
+	}
+
 	@Test
 	void testAxiomConcreteValueDataTypeWhenSavingClassification() throws Exception {
 		// Create concept with some stated modeling in an axiom
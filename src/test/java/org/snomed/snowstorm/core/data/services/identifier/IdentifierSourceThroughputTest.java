@@ -0,0 +1,106 @@
+package org.snomed.snowstorm.core.data.services.identifier;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.AbstractTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Throughput of the local identifier sources and of the identifier cache when reserving from many threads at once.
+ * Each run checks that every identifier reserved is valid, and unique where the source guarantees it, and logs the identifiers reserved per second.
+ */
+class IdentifierSourceThroughputTest extends AbstractTest {
+
+	private static final int THREADS = 8;
+	private static final int REQUESTS_PER_THREAD = 20;
+	private static final int IDS_PER_REQUEST = 500;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@Test
+	void localSequentialIdentifierSource() throws Exception {
+		LocalSequentialIdentifierSource identifierSource = new LocalSequentialIdentifierSource(elasticsearchOperations);
+		runBenchmark("LocalSequentialIdentifierSource", () -> identifierSource.reserveIds(0, "00", IDS_PER_REQUEST), true);
+		runBenchmark("LocalSequentialIdentifierSource extension", () -> identifierSource.reserveIds(1000003, "10", IDS_PER_REQUEST), true);
+	}
+
+	@Test
+	void localRandomIdentifierSource() throws Exception {
+		LocalRandomIdentifierSource identifierSource = new LocalRandomIdentifierSource(elasticsearchOperations);
+		// Random identifiers are only checked against the store, concurrent requests may reserve the same identifier before either is saved
+		runBenchmark("LocalRandomIdentifierSource", () -> identifierSource.reserveIds(0, "01", IDS_PER_REQUEST), false);
+	}
+
+	@Test
+	void identifierCache() throws Exception {
+		IdentifierCache cache = new IdentifierCache(0, "00", THREADS * REQUESTS_PER_THREAD * IDS_PER_REQUEST);
+		LocalSequentialIdentifierSource identifierSource = new LocalSequentialIdentifierSource(elasticsearchOperations);
+		for (int i = 0; i < THREADS * REQUESTS_PER_THREAD; i++) {
+			cache.topUp(identifierSource.reserveIds(0, "00", IDS_PER_REQUEST));
+		}
+		runBenchmark("IdentifierCache", () -> {
+			long[] identifiers = cache.take(IDS_PER_REQUEST);
+			List<Long> list = new ArrayList<>(identifiers.length);
+			for (long identifier : identifiers) {
+				list.add(identifier);
+			}
+			return list;
+		}, true);
+		assertEquals(0, cache.identifiersAvailable());
+		assertNull(cache.take(1));
+	}
+
+	private void runBenchmark(String name, Callable<List<Long>> request, boolean uniqueAcrossRequests) throws Exception {
+		ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<List<Long>>> futures = new ArrayList<>();
+			for (int thread = 0; thread < THREADS; thread++) {
+				futures.add(executorService.submit(() -> {
+					start.await();
+					List<Long> identifiers = new ArrayList<>();
+					for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+						identifiers.addAll(request.call());
+					}
+					return identifiers;
+				}));
+			}
+			long startNanos = System.nanoTime();
+			start.countDown();
+			Set<Long> allIdentifiers = new LongOpenHashSet();
+			int total = 0;
+			for (Future<List<Long>> future : futures) {
+				List<Long> identifiers = future.get(5, TimeUnit.MINUTES);
+				allIdentifiers.addAll(identifiers);
+				total += identifiers.size();
+			}
+			long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+
+			assertEquals(THREADS * REQUESTS_PER_THREAD * IDS_PER_REQUEST, total);
+			if (uniqueAcrossRequests) {
+				assertEquals(total, allIdentifiers.size(), "All identifiers must be unique.");
+			}
+			for (Long identifier : allIdentifiers) {
+				assertNull(IdentifierService.isValidId(identifier.toString(), null));
+			}
+			logger.info("{}: {} identifiers reserved by {} threads in {} ms, {} identifiers per second, {} reserved more than once.",
+					name, total, THREADS, millis, total * 1000L / millis, total - allIdentifiers.size());
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+}
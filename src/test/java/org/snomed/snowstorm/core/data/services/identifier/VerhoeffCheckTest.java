@@ -0,0 +1,27 @@
+package org.snomed.snowstorm.core.data.services.identifier;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerhoeffCheckTest {
+
+	@Test
+	void testAppendChecksumDigit() {
+		assertEquals(404684003L, VerhoeffCheck.appendChecksumDigit(40468400L));
+		assertEquals(1240371000202113L, VerhoeffCheck.appendChecksumDigit(124037100020211L));
+		assertEquals(100108L, VerhoeffCheck.appendChecksumDigit(10010L));
+		assertTrue(VerhoeffCheck.validateLastChecksumDigit(Long.toString(VerhoeffCheck.appendChecksumDigit(0L))));
+	}
+
+	@Test
+	void testChecksumDigitMatchesCharacterChecksum() {
+		Random random = new Random(1);
+		for (int i = 0; i < 100_000; i++) {
+			long code = random.nextLong(1, 100_000_000_000_000_000L);
+			assertEquals(Character.getNumericValue(VerhoeffCheck.calculateChecksum(Long.toString(code), 0, false)), VerhoeffCheck.calculateChecksumDigit(code));
+		}
+	}
+}
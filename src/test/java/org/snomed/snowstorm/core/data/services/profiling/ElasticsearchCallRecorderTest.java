@@ -0,0 +1,59 @@
+package org.snomed.snowstorm.core.data.services.profiling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+class ElasticsearchCallRecorderTest extends AbstractTest {
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@AfterEach
+	void clearProfile() {
+		QueryProfile.clear();
+	}
+
+	@Test
+	void testCallsRecordedInRequestProfile() throws ServiceException {
+		conceptService.create(new Concept("100001").addAxiom(new Relationship(ISA, SNOMEDCT_ROOT)), MAIN);
+
+		assertNull(QueryProfile.current());
+		QueryProfile profile = QueryProfile.start();
+		assertNotNull(conceptService.find("100001", MAIN));
+		QueryProfile.clear();
+
+		List<QueryProfile.Call> calls = profile.getCalls();
+		assertFalse(calls.isEmpty());
+		for (QueryProfile.Call call : calls) {
+			assertFalse(call.index().isEmpty());
+			assertTrue(call.totalMillis() >= 0);
+		}
+		// Axioms are loaded on another thread and are still recorded against the request
+		assertTrue(calls.stream().anyMatch(call -> call.callSite().equals("ConceptService.joinAxioms")), calls.toString());
+		assertTrue(calls.stream().anyMatch(call -> call.callSite().equals("ConceptService.doFind") && call.queryType().endsWith(":bool")), calls.toString());
+
+		int calledFromDoFind = profile.getSummary().stream()
+				.filter(summary -> summary.getCallSite().equals("ConceptService.doFind"))
+				.mapToInt(QueryProfile.Summary::getCalls).sum();
+		assertEquals(calls.stream().filter(call -> call.callSite().equals("ConceptService.doFind")).count(), calledFromDoFind);
+	}
+
+	@Test
+	void testNoProfileWithoutStart() throws ServiceException {
+		conceptService.create(new Concept("100002"), MAIN);
+		conceptService.find("100002", MAIN);
+		assertNull(QueryProfile.current());
+	}
+}
@@ -0,0 +1,128 @@
+package org.snomed.snowstorm.core.data.services.traceability;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceabilityActivityQueueTest {
+
+	@TempDir
+	Path queueDirectory;
+
+	private TraceabilityActivityQueue queue;
+
+	@AfterEach
+	void tearDown() {
+		if (queue != null) {
+			queue.shutdown();
+		}
+	}
+
+	@Test
+	void testActivityPublishedInBackgroundAndRemovedFromDisk() throws Exception {
+		List<Activity> published = new CopyOnWriteArrayList<>();
+		queue = createQueue(published::add);
+
+		queue.offer(createActivity("MAIN/A"));
+		queue.offer(createActivity("MAIN/B"));
+
+		waitFor(() -> published.size() == 2);
+		assertEquals("MAIN/A", published.get(0).getBranchPath());
+		assertEquals("MAIN/B", published.get(1).getBranchPath());
+		assertEquals("123", published.get(0).getChanges().get(0).getConceptId());
+		waitFor(() -> countFiles() == 0);
+	}
+
+	@Test
+	void testPublishRetriedWhenBrokerUnavailable() throws Exception {
+		List<Activity> published = new CopyOnWriteArrayList<>();
+		final int[] attempts = {0};
+		queue = createQueue(activity -> {
+			if (attempts[0]++ < 2) {
+				throw new IllegalStateException("Broker down");
+			}
+			published.add(activity);
+		});
+
+		queue.offer(createActivity("MAIN"));
+
+		waitFor(() -> published.size() == 1);
+		assertEquals(3, attempts[0]);
+	}
+
+	@Test
+	void testActivitiesOnDiskPublishedAfterRestart() throws Exception {
+		queue = createQueue(activity -> {
+			throw new IllegalStateException("Broker down");
+		});
+		ReflectionTestUtils.setField(queue, "retryDelaySeconds", 60);
+		queue.offer(createActivity("MAIN/A"));
+		queue.offer(createActivity("MAIN/B"));
+		queue.shutdown();
+		assertEquals(2, countFiles());
+		// Write not completed before the stop
+		Path incomplete = Files.writeString(queueDirectory.resolve("00000000000000000003.json.tmp"), "{\"branchPa");
+
+		List<Activity> published = new CopyOnWriteArrayList<>();
+		queue = createQueue(published::add);
+		assertFalse(Files.exists(incomplete));
+		waitFor(() -> published.size() == 2);
+		assertEquals("MAIN/A", published.get(0).getBranchPath());
+
+		queue.offer(createActivity("MAIN/C"));
+		waitFor(() -> published.size() == 3);
+		assertEquals("MAIN/C", published.get(2).getBranchPath());
+	}
+
+	private TraceabilityActivityQueue createQueue(Consumer<Activity> consumer) throws IOException {
+		TraceabilityActivityQueue activityQueue = new TraceabilityActivityQueue();
+		ReflectionTestUtils.setField(activityQueue, "queueDirectoryPath", queueDirectory.toString());
+		ReflectionTestUtils.setField(activityQueue, "retryDelaySeconds", 0);
+		ReflectionTestUtils.setField(activityQueue, "traceabilityConsumer", new TraceabilityConsumer() {
+			@Override
+			public void accept(Activity activity) {
+				consumer.accept(activity);
+			}
+		});
+		activityQueue.init();
+		return activityQueue;
+	}
+
+	private Activity createActivity(String branchPath) {
+		Activity activity = new Activity("user", branchPath, 999999999999L, null, Activity.ActivityType.CONTENT_CHANGE);
+		activity.addConceptActivity("123").addComponentChange(
+				new Activity.ComponentChange(Activity.ComponentType.CONCEPT, null, "123", Activity.ChangeType.CREATE, true));
+		return activity;
+	}
+
+	private long countFiles() throws IOException {
+		try (Stream<Path> files = Files.list(queueDirectory)) {
+			return files.filter(path -> path.toString().endsWith(".json")).count();
+		}
+	}
+
+	private void waitFor(IOCondition condition) throws Exception {
+		long timeout = System.currentTimeMillis() + 10_000;
+		while (!condition.test()) {
+			if (System.currentTimeMillis() > timeout) {
+				fail("Timed out waiting for condition.");
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	private interface IOCondition {
+		boolean test() throws IOException;
+	}
+}
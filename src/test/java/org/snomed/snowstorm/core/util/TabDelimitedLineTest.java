@@ -0,0 +1,31 @@
+package org.snomed.snowstorm.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TabDelimitedLineTest {
+
+	@Test
+	void testFields() {
+		TabDelimitedLine line = new TabDelimitedLine().reset("\t\t1\t\t123123123001\t#55.5\t0\t1142135004\t900000000000227009\t900000000000451002");
+		assertEquals(10, line.getFieldCount());
+		assertTrue(line.isEmpty(0));
+		assertEquals("", line.get(1));
+		assertTrue(line.equals(2, "1"));
+		assertFalse(line.equals(2, "10"));
+		assertEquals("123123123001", line.get(4));
+		assertEquals("#55.5", line.get(5));
+		assertEquals(0, line.getInt(6));
+		assertEquals("900000000000451002", line.get(9));
+		assertThrows(IndexOutOfBoundsException.class, () -> line.get(10));
+
+		// Reused for the next line
+		line.reset("a\tb");
+		assertEquals(2, line.getFieldCount());
+		assertEquals("b", line.get(1));
+		line.reset("a\t");
+		assertEquals(2, line.getFieldCount());
+		assertTrue(line.isEmpty(1));
+	}
+}
@@ -6,6 +6,7 @@ import io.kaicode.elasticvc.api.VersionControlHelper;
 import org.junit.jupiter.api.Test;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 
@@ -513,6 +514,66 @@ abstract class AbstractECLQueryServiceTest {
 				strings(selectConceptIds("* MINUS >*")).toString());
 	}
 
+	@Test
+	void selectDottedAttributes() {
+		assertEquals(
+				Sets.newHashSet(PULMONARY_VALVE_STRUCTURE, RIGHT_VENTRICULAR_STRUCTURE),
+				strings(selectConceptIds(PENTALOGY_OF_FALLOT + " . " + FINDING_SITE)));
+
+		assertEquals(
+				Sets.newHashSet(RIGHT),
+				strings(selectConceptIds(PENTALOGY_OF_FALLOT + " . " + FINDING_SITE + " . " + LATERALITY)));
+
+		assertEquals(
+				Sets.newHashSet(BODY_STRUCTURE),
+				strings(selectConceptIds("<<" + CLINICAL_FINDING + " . " + FINDING_SITE + " . " + ISA)));
+
+		// Pages of the final attribute values
+		Set<String> allFindingSites = Sets.newHashSet(SKIN_STRUCTURE, PULMONARY_VALVE_STRUCTURE, RIGHT_VENTRICULAR_STRUCTURE);
+		String ecl = "<<" + CLINICAL_FINDING + " . " + FINDING_SITE;
+		assertEquals(allFindingSites, strings(selectConceptIds(ecl)));
+		Set<String> pagedFindingSites = new HashSet<>();
+		for (int page = 0; page < 3; page++) {
+			Collection<Long> ids = selectConceptIds(ecl, PageRequest.of(page, 1));
+			assertEquals(1, ids.size());
+			pagedFindingSites.addAll(strings(ids));
+		}
+		assertEquals(allFindingSites, pagedFindingSites);
+		assertEquals(0, selectConceptIds(ecl, PageRequest.of(3, 1)).size());
+	}
+
+	@Test
+	void plannerRemovesRedundantOperands() {
+		assertEquals(
+				Sets.newHashSet(BLEEDING, BLEEDING_SKIN),
+				strings(selectConceptIds("<<" + CLINICAL_FINDING + " AND <<" + BLEEDING + " AND <" + SNOMEDCT_ROOT)));
+
+		assertEquals(
+				Sets.newHashSet(BLEEDING_SKIN),
+				strings(selectConceptIds("<" + BLEEDING + " AND <<" + BLEEDING)));
+
+		assertEquals(
+				Sets.newHashSet(BLEEDING, BLEEDING_SKIN),
+				strings(selectConceptIds("<" + BLEEDING + " OR <<" + BLEEDING + " OR " + BLEEDING_SKIN)));
+
+		ECLQueryPlan plan = eclQueryService.explain("<<" + CLINICAL_FINDING + " AND <<" + BLEEDING + " AND <" + SNOMEDCT_ROOT, branchCriteria, INFERRED);
+		assertEquals(toEclString("<<" + BLEEDING), plan.getPlannedEcl());
+		assertEquals(2, plan.getRewrites().size());
+		assertEquals(2, plan.getTotal());
+		assertEquals("conjunction", plan.getRoot().type());
+		assertEquals(1, plan.getRoot().children().size());
+
+		// Operands which do not subsume each other are kept
+		plan = eclQueryService.explain("<<" + BLEEDING + " AND <<" + DISORDER, branchCriteria, INFERRED);
+		assertEquals(0, plan.getRewrites().size());
+		assertEquals(2, plan.getRoot().children().size());
+		assertEquals(0, plan.getTotal());
+	}
+
+	private String toEclString(String ecl) {
+		return ((SExpressionConstraint) eclQueryService.createQuery(ecl)).toEclString();
+	}
+
 	protected Set<String> strings(Collection<Long> ids) {
 		return ids.stream().map(Object::toString).collect(Collectors.toSet());
 	}
@@ -1,6 +1,18 @@
 package org.snomed.snowstorm.ecl;
 
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -21,4 +33,134 @@ class BranchVersionECLCacheTest {
 		assertEquals("<< 195967001 {{ d active = 1 }}", BranchVersionECLCache.normaliseEclString("<< 195967001 |Asthma| {{ D active = 1 }}"));
 	}
 
+	@Test
+	void testFullResultsHeldAsIdSet() {
+		BranchVersionECLCache cache = new BranchVersionECLCache(new Date());
+		List<Long> descending = LongArrayList.wrap(new long[]{900000000000548007L, 404684003L, 138875005L});
+		cache.put("<< 138875005", false, null, ConceptSelectorHelper.getPage(null, descending));
+		Page<Long> page = cache.get("<< 138875005", false, null);
+		assertEquals(descending, page.getContent());
+		assertEquals(3, page.getTotalElements());
+
+		List<Long> unordered = LongArrayList.wrap(new long[]{404684003L, 900000000000548007L, 138875005L});
+		cache.put("<< 404684003", false, null, ConceptSelectorHelper.getPage(null, unordered));
+		assertEquals(unordered, cache.get("<< 404684003", false, null).getContent());
+
+		PageRequest pageRequest = PageRequest.of(0, 2);
+		cache.put("<< 138875005", false, pageRequest, ConceptSelectorHelper.getPage(pageRequest, descending));
+		assertEquals(descending.subList(0, 2), cache.get("<< 138875005", false, pageRequest).getContent());
+	}
+
+	@Test
+	void testConcurrentSelectionsShared() throws Exception {
+		BranchVersionECLCache cache = new BranchVersionECLCache(new Date());
+		List<Long> ids = LongArrayList.wrap(new long[]{404684003L, 138875005L});
+		AtomicInteger selections = new AtomicInteger();
+		CountDownLatch selecting = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Supplier<Optional<Page<Long>>> selector = () -> {
+			selections.incrementAndGet();
+			selecting.countDown();
+			try {
+				assertTrue(release.await(10, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			Page<Long> page = ConceptSelectorHelper.getPage(null, ids);
+			cache.put("<< 138875005", false, null, page);
+			return Optional.of(page);
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Optional<Page<Long>>>> results = new ArrayList<>();
+			results.add(executor.submit(() -> cache.selectOnce("<< 138875005", false, null, selector)));
+			assertTrue(selecting.await(10, TimeUnit.SECONDS));
+			for (int i = 0; i < 3; i++) {
+				results.add(executor.submit(() -> cache.selectOnce("<< 138875005 |SNOMED CT Concept|", false, null, selector)));
+			}
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (cache.getStats().get("shared-selections") < 3 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			release.countDown();
+			for (Future<Optional<Page<Long>>> result : results) {
+				assertEquals(ids, result.get(10, TimeUnit.SECONDS).orElseThrow().getContent());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, selections.get());
+		assertEquals(3, cache.getStats().get("shared-selections"));
+
+		// Later selections use the cached result
+		assertEquals(ids, cache.selectOnce("<< 138875005", false, null, selector).orElseThrow().getContent());
+		assertEquals(1, selections.get());
+	}
+
+	@Test
+	void testFailedSelectionNotShared() {
+		BranchVersionECLCache cache = new BranchVersionECLCache(new Date());
+		assertThrows(IllegalStateException.class, () -> cache.selectOnce("<< 138875005", false, null, () -> {
+			throw new IllegalStateException("Failed");
+		}));
+		assertEquals(Optional.empty(), cache.selectOnce("<< 138875005", false, null, Optional::empty));
+	}
+
+	@Test
+	void testHotEntries() {
+		BranchVersionECLCache cache = new BranchVersionECLCache(new Date());
+		for (int i = 0; i < 4; i++) {
+			cache.recordHit("<< 138875005 |SNOMED CT Concept|", false, null);
+		}
+		cache.recordHit("<< 404684003", true, PageRequest.of(0, 10));
+		cache.recordHit("<< 404684003", true, PageRequest.of(0, 10));
+		cache.recordHit("<< 71388002", false, null);
+
+		List<BranchVersionECLCache.HotEntry> hotEntries = cache.getHotEntries(10, 2);
+		assertEquals(List.of(
+				new BranchVersionECLCache.HotEntry("<< 138875005 |SNOMED CT Concept|", false, null, 4),
+				new BranchVersionECLCache.HotEntry("<< 404684003", true, PageRequest.of(0, 10), 2)), hotEntries);
+		assertEquals(1, cache.getHotEntries(1, 2).size());
+
+		// Half of the hits are carried over to the next branch version
+		BranchVersionECLCache nextVersion = new BranchVersionECLCache(new Date());
+		hotEntries.forEach(nextVersion::inheritHits);
+		assertEquals(List.of(new BranchVersionECLCache.HotEntry("<< 138875005 |SNOMED CT Concept|", false, null, 2)), nextVersion.getHotEntries(10, 2));
+	}
+
+	@Test
+	void testMigrate() {
+		BranchVersionECLCache cache = new BranchVersionECLCache(new Date(1_000));
+		Page<Long> page = ConceptSelectorHelper.getPage(null, List.of(1L, 2L));
+		cache.put("<< 404684003", false, null, page, new ECLDependencies(false, false, false, Set.of()));
+		cache.put("^ 723264001", false, null, page, new ECLDependencies(false, false, false, Set.of(723264001L)));
+		cache.put("^ 447562003", false, null, page, new ECLDependencies(false, false, false, Set.of(447562003L)));
+		cache.put("<< 404684003 {{ D term = \"heart\" }}", false, null, page, new ECLDependencies(false, true, true, Set.of()));
+		for (int i = 0; i < 4; i++) {
+			cache.recordHit("<< 404684003", false, null);
+		}
+		assertEquals(4, cache.getDependencies().size());
+
+		// Members of one reference set changed
+		BranchVersionECLCache next = cache.migrate(new Date(2_000), dependencies -> dependencies.isAffected(false, false, Set.of(723264001L)),
+				100, Long.MAX_VALUE);
+		assertEquals(new Date(2_000), next.getHead());
+		assertNotNull(next.get("<< 404684003", false, null));
+		assertNotNull(next.get("^ 447562003", false, null));
+		assertNull(next.get("^ 723264001", false, null));
+		assertNull(next.get("<< 404684003 {{ D term = \"heart\" }}", false, null));
+		assertEquals(List.of(new BranchVersionECLCache.HotEntry("<< 404684003", false, null, 2)), next.getHotEntries(10, 1));
+
+		// Changed reference sets not known
+		assertEquals(1L, (long) cache.migrate(new Date(2_000), dependencies -> dependencies.isAffected(false, false, null), 100, Long.MAX_VALUE)
+				.getStats().get("size"));
+
+		// Limited to the most hit entry
+		next = cache.migrate(new Date(2_000), dependencies -> false, 1, Long.MAX_VALUE);
+		assertEquals(1L, (long) next.getStats().get("size"));
+		assertNotNull(next.get("<< 404684003", false, null));
+		// Limited by size, each result is two concepts
+		assertEquals(0L, (long) cache.migrate(new Date(2_000), dependencies -> false, 100, 1).getStats().get("size"));
+	}
 }
@@ -0,0 +1,72 @@
+package org.snomed.snowstorm.ecl;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConceptIdSetTest {
+
+	@Test
+	void testCreate() {
+		ConceptIdSet set = ConceptIdSet.of(List.of(900000000000548007L, 404684003L, 138875005L, 404684003L));
+		assertEquals(3, set.size());
+		assertTrue(set.contains(404684003L));
+		assertFalse(set.contains(1L));
+		assertEquals(set, ConceptIdSet.of(new LongArrayList(new long[]{138875005L, 900000000000548007L, 404684003L})));
+		assertTrue(ConceptIdSet.of(List.of()).isEmpty());
+	}
+
+	@Test
+	void testSetOperations() {
+		ConceptIdSet a = ConceptIdSet.of(1, 3, 5, 7);
+		ConceptIdSet b = ConceptIdSet.of(2, 3, 7, 8);
+		assertEquals(ConceptIdSet.of(3, 7), a.and(b));
+		assertEquals(ConceptIdSet.of(1, 2, 3, 5, 7, 8), a.or(b));
+		assertEquals(ConceptIdSet.of(1, 5), a.andNot(b));
+		assertEquals(a, a.andNot(ConceptIdSet.empty()));
+		assertTrue(ConceptIdSet.empty().andNot(a).isEmpty());
+
+		assertEquals(ConceptIdSet.of(7), ConceptIdSet.and(List.of(a, b, ConceptIdSet.of(7, 9))));
+		assertTrue(ConceptIdSet.and(List.of(a, ConceptIdSet.empty(), b)).isEmpty());
+		assertEquals(ConceptIdSet.of(1, 2, 3, 4), ConceptIdSet.or(List.of(ConceptIdSet.of(4), ConceptIdSet.of(1, 3), ConceptIdSet.empty(), ConceptIdSet.of(2, 3))));
+	}
+
+	@Test
+	void testPaging() {
+		ConceptIdSet set = ConceptIdSet.of(10, 20, 30, 40, 50);
+		assertEquals(LongArrayList.wrap(new long[]{10, 20, 30, 40, 50}), set.toList(false));
+		assertEquals(LongArrayList.wrap(new long[]{50, 40, 30, 20, 10}), set.toList(true));
+		assertEquals(LongArrayList.wrap(new long[]{30, 40}), set.getPage(2, 2, false));
+		assertEquals(LongArrayList.wrap(new long[]{20, 10}), set.getPage(3, 5, true));
+		assertTrue(set.getPage(5, 5, true).isEmpty());
+
+		assertEquals(0, set.indexOf(10, false));
+		assertEquals(4, set.indexOf(10, true));
+		assertEquals(1, set.indexOf(40, true));
+		assertEquals(-1, set.indexOf(35, true));
+	}
+
+	@Test
+	void testPagingAcrossContainers() {
+		// Concept ids spread over several bitmap containers, including ids above the 32 bit range
+		LongArrayList ids = new LongArrayList();
+		for (long id = 100_000; ids.size() < 1_000; id += 70_001) {
+			ids.add(id);
+		}
+		ids.add(900000000000548007L);
+		ids.add(900000000000549004L);
+		ConceptIdSet set = ConceptIdSet.of(ids);
+
+		LongArrayList descending = new LongArrayList(ids);
+		descending.sort((a, b) -> Long.compare(b, a));
+		for (int offset : new int[]{0, 1, 500, 999, 1000, 1001}) {
+			assertEquals(ids.subList(offset, Math.min(offset + 10, ids.size())), set.getPage(offset, 10, false), "Ascending offset " + offset);
+			assertEquals(descending.subList(offset, Math.min(offset + 10, ids.size())), set.getPage(offset, 10, true), "Descending offset " + offset);
+		}
+		assertTrue(set.getPage(1002, 10, false).isEmpty());
+		assertTrue(set.getPage(0, 0, false).isEmpty());
+	}
+}
@@ -0,0 +1,65 @@
+package org.snomed.snowstorm.ecl;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.*;
+
+class ECLCacheMigrationServiceTest extends AbstractTest {
+
+	private static final String REFSET = "723264001";
+
+	@Autowired
+	private ECLQueryService eclQueryService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private ReferenceSetMemberService referenceSetMemberService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Test
+	void testUnaffectedResultsCarriedOver() throws ServiceException {
+		conceptService.create(new Concept("100001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), MAIN);
+		String hierarchyEcl = "<< " + SNOMEDCT_ROOT;
+		String memberOfEcl = "^ " + REFSET;
+		assertEquals(1, eclQueryService.selectConceptIds(hierarchyEcl, versionControlHelper.getBranchCriteria(MAIN), false, (PageRequest) null).getTotalElements());
+		assertEquals(0, eclQueryService.selectConceptIds(memberOfEcl, versionControlHelper.getBranchCriteria(MAIN), false, (PageRequest) null).getTotalElements());
+
+		// Reference set change only
+		referenceSetMemberService.createMember(MAIN, new ReferenceSetMember(CORE_MODULE, REFSET, "100001"));
+		BranchCriteria newVersion = versionControlHelper.getBranchCriteria(MAIN);
+
+		BranchVersionECLCache branchVersionCache = eclQueryService.getBranchVersionCache(MAIN, newVersion.getTimepoint());
+		assertEquals(newVersion.getTimepoint(), branchVersionCache.getHead());
+		assertNotNull(branchVersionCache.get(cacheKey(hierarchyEcl), false, null));
+		assertNull(branchVersionCache.get(cacheKey(memberOfEcl), false, null));
+		assertEquals(1, eclQueryService.selectConceptIds(memberOfEcl, newVersion, false, (PageRequest) null).getTotalElements());
+
+		// Semantic change
+		conceptService.create(new Concept("100002").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), MAIN);
+		newVersion = versionControlHelper.getBranchCriteria(MAIN);
+		branchVersionCache = eclQueryService.getBranchVersionCache(MAIN, newVersion.getTimepoint());
+		assertNull(branchVersionCache.get(cacheKey(hierarchyEcl), false, null));
+		assertEquals(2, eclQueryService.selectConceptIds(hierarchyEcl, newVersion, false, (PageRequest) null).getTotalElements());
+	}
+
+	private String cacheKey(String ecl) {
+		return ((SExpressionConstraint) eclQueryService.createQuery(ecl)).toEclString();
+	}
+}
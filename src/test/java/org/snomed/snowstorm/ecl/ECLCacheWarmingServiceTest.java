@@ -0,0 +1,59 @@
+package org.snomed.snowstorm.ecl;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+class ECLCacheWarmingServiceTest extends AbstractTest {
+
+	@Autowired
+	private ECLCacheWarmingService eclCacheWarmingService;
+
+	@Autowired
+	private ECLQueryService eclQueryService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Test
+	void testHotExpressionsSelectedForNewBranchVersion() throws ServiceException {
+		conceptService.create(new Concept("100001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), MAIN);
+		String ecl = "<< " + SNOMEDCT_ROOT;
+		// One miss then four hits
+		for (int i = 0; i < 5; i++) {
+			eclQueryService.selectConceptIds(ecl, versionControlHelper.getBranchCriteria(MAIN), false, (PageRequest) null);
+		}
+		List<BranchVersionECLCache.HotEntry> hotEntries = eclQueryService.getResultsCache().getBranchVersionCache(MAIN).getHotEntries(10, 3);
+		assertEquals(1, hotEntries.size());
+
+		conceptService.create(new Concept("100002").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), MAIN);
+		BranchCriteria newVersion = versionControlHelper.getBranchCriteria(MAIN);
+		eclCacheWarmingService.warmUp(MAIN, branchService.findLatest(MAIN), hotEntries);
+
+		BranchVersionECLCache branchVersionCache = eclQueryService.getResultsCache().getBranchVersionCache(MAIN);
+		assertEquals(newVersion.getTimepoint(), branchVersionCache.getHead());
+		// Both concepts, the root concept itself was not created
+		assertEquals(2, branchVersionCache.get(hotEntries.get(0).ecl(), false, null).getTotalElements());
+		assertEquals(2, branchVersionCache.getHotEntries(10, 1).get(0).hits());
+	}
+}
@@ -1,22 +1,27 @@
 package org.snomed.snowstorm.ecl;
 
 import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.services.ConceptService;
 import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
 import org.snomed.snowstorm.core.data.services.pojo.MemberSearchRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -24,8 +29,10 @@ import java.util.stream.Collectors;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.newHashSet;
 import static io.kaicode.elasticvc.domain.Branch.MAIN;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.CORE_MODULE;
 import static org.snomed.snowstorm.core.data.domain.Concepts.REFSET_SAME_AS_ASSOCIATION;
+import static org.snomed.snowstorm.core.data.domain.Concepts.REFSET_SIMILAR_TO_ASSOCIATION;
 
 @ExtendWith(SpringExtension.class)
 @ContextConfiguration(classes = {TestConfig.class, ECLQueryServiceFilterTestConfig.class})
@@ -43,6 +50,15 @@ class ECLQueryServiceFilterTest {
 	@Autowired
 	private ReferenceSetMemberService memberService;
 
+	@Autowired
+	private HistoricAssociationIndexService historicAssociationIndexService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
 	protected Collection<String> allConceptIds = new HashSet<>();
 	protected BranchCriteria branchCriteria;
 
@@ -354,8 +370,58 @@ class ECLQueryServiceFilterTest {
 		assertEquals(newHashSet("100001", "200001", "200002"), select("100001 {{ + HISTORY }}"));
 	}
 
+	@Test
+	public void historySupplementIndex() {
+		List<Long> associationTypes = List.of(Long.parseLong(REFSET_SAME_AS_ASSOCIATION), Long.parseLong(REFSET_SIMILAR_TO_ASSOCIATION));
+		assertEquals(newHashSet(200001L, 200002L), historicAssociationIndexService.findHistoricConcepts(Set.of(100001L), associationTypes, branchCriteria));
+		assertEquals(newHashSet(200001L), historicAssociationIndexService.findHistoricConcepts(Set.of(100001L, 100002L),
+				List.of(Long.parseLong(REFSET_SAME_AS_ASSOCIATION)), branchCriteria));
+		assertEquals(newHashSet(200002L), historicAssociationIndexService.findHistoricConcepts(Set.of(100002L), associationTypes, branchCriteria));
+		assertEquals(newHashSet(), historicAssociationIndexService.findHistoricConcepts(Set.of(200001L), associationTypes, branchCriteria));
+	}
+
+	@Test
+	public void historySupplementIndexThroughEcl() throws ServiceException {
+		String path = "MAIN/HISTORY-INDEX";
+		branchService.create(path);
+		int minConcepts = (int) ReflectionTestUtils.getField(historicAssociationIndexService, "minConcepts");
+		ReflectionTestUtils.setField(historicAssociationIndexService, "minConcepts", 1);
+		try {
+			assertEquals(newHashSet("100001", "200001"), select("100001 {{ + HISTORY-MIN }}", path));
+			Long indexTimepoint = historicAssociationIndexService.getIndexTimepoint(path);
+			assertNotNull(indexTimepoint);
+
+			// A commit without association changes keeps the index
+			conceptService.create(new Concept("300001"), path);
+			assertEquals(newHashSet("100001", "200001"), select("100001 {{ + HISTORY-MIN }}", path));
+			assertEquals(indexTimepoint, historicAssociationIndexService.getIndexTimepoint(path));
+
+			// A new association invalidates the index, it is rebuilt from the new head
+			memberService.createMember(path, new ReferenceSetMember(CORE_MODULE, REFSET_SAME_AS_ASSOCIATION, "200002")
+					.setAdditionalField(ReferenceSetMember.AssociationFields.TARGET_COMP_ID, "100001"));
+			assertEquals(newHashSet("100001", "200001", "200002"), select("100001 {{ + HISTORY-MIN }}", path));
+			assertEquals(branchService.findLatest(path).getHead().getTime(), historicAssociationIndexService.getIndexTimepoint(path));
+
+			// Deleting an association inherited from MAIN invalidates the index
+			Set<String> inheritedMemberIds = memberService.findMembers(path, new MemberSearchRequest().referenceSet(REFSET_SAME_AS_ASSOCIATION)
+					.referencedComponentId("200001"), PageRequest.of(0, 10)).getContent().stream().map(ReferenceSetMember::getMemberId).collect(Collectors.toSet());
+			memberService.deleteMembers(path, inheritedMemberIds, true);
+			assertEquals(newHashSet("100001", "200002"), select("100001 {{ + HISTORY-MIN }}", path));
+			assertEquals(branchService.findLatest(path).getHead().getTime(), historicAssociationIndexService.getIndexTimepoint(path));
+
+			// MAIN is unchanged
+			assertEquals(newHashSet("100001", "200001"), select("100001 {{ + HISTORY-MIN }}"));
+		} finally {
+			ReflectionTestUtils.setField(historicAssociationIndexService, "minConcepts", minConcepts);
+		}
+	}
+
 	protected Set<String> select(String ecl) {
-		return queryService.eclSearch(ecl, false, MAIN, PAGE_REQUEST)
+		return select(ecl, MAIN);
+	}
+
+	protected Set<String> select(String ecl, String branch) {
+		return queryService.eclSearch(ecl, false, branch, PAGE_REQUEST)
 				.getContent().stream().map(ConceptMini::getConceptId).collect(Collectors.toSet());
 	}
 
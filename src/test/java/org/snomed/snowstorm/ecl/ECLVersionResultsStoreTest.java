@@ -0,0 +1,141 @@
+package org.snomed.snowstorm.ecl;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ECLVersionResultsStoreTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void testFullResultsOfVersionBranchesStored() throws IOException {
+		BranchCriteria version = branchCriteria("MAIN/2024-01-01", 1_000);
+		Page<Long> page = ConceptSelectorHelper.getPage(null, List.of(300L, 200L, 100L));
+
+		ECLVersionResultsStore store = createStore(false);
+		assertNull(store.find(version, "<< 404684003", false, null));
+		store.store(version, "<< 404684003", false, null, page);
+		assertEquals(1, countFiles());
+
+		// Read by another instance after a restart
+		ECLVersionResultsStore readOnlyStore = createStore(true);
+		Page<Long> stored = readOnlyStore.find(version, "<< 404684003", false, null);
+		assertNotNull(stored);
+		assertEquals(List.of(300L, 200L, 100L), stored.getContent());
+		assertEquals(3, stored.getTotalElements());
+		assertNull(readOnlyStore.find(version, "<< 404684003", true, null));
+		assertNull(readOnlyStore.find(branchCriteria("MAIN/2024-01-01", 2_000), "<< 404684003", false, null));
+		readOnlyStore.store(version, "<< 71388002", false, null, page);
+		assertEquals(1, countFiles());
+
+		// Not stored for mutable branches or pages
+		store.store(branchCriteria("MAIN/PROJECT", 1_000), "<< 404684003", false, null, page);
+		store.store(version, "<< 71388002", false, PageRequest.of(0, 10), page);
+		assertEquals(1, countFiles());
+	}
+
+	@Test
+	void testEvictionAndClear() throws IOException, InterruptedException {
+		BranchCriteria version = branchCriteria("MAIN/2024-01-01", 1_000);
+		Page<Long> page = ConceptSelectorHelper.getPage(null, List.of(300L, 200L, 100L));
+		ECLVersionResultsStore store = createStore(false);
+		store.store(version, "<< 404684003", false, null, page);
+		store.store(version, "<< 71388002", false, null, page);
+		assertEquals(2, countFiles());
+
+		// Files older than the maximum age are deleted
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.toList()) {
+				Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofDays(91))));
+			}
+		}
+		store.evict();
+		assertEquals(0, countFiles());
+
+		// Files are deleted, oldest first, while over the maximum size. In the background after a write.
+		ReflectionTestUtils.setField(store, "maxSizeMb", 0L);
+		store.store(version, "<< 404684003", false, null, page);
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (countFiles() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, countFiles());
+
+		ReflectionTestUtils.setField(store, "maxSizeMb", 1L);
+		store.store(version, "<< 404684003", false, null, page);
+		store.store(version, "<< 71388002", false, null, page);
+		assertEquals(2, countFiles());
+
+		// Read-only instances never delete
+		createStore(true).clear();
+		assertEquals(2, countFiles());
+		store.clear();
+		assertEquals(0, countFiles());
+		assertNull(store.find(version, "<< 404684003", false, null));
+	}
+
+	@Test
+	void testIncompleteWritesDeleted() throws IOException {
+		ECLVersionResultsStore store = createStore(false);
+		Path oldTempFile = Files.createFile(directory.resolve("old.ids123.tmp"));
+		Files.setLastModifiedTime(oldTempFile, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+		// May still be written by another instance
+		Path newTempFile = Files.createFile(directory.resolve("new.ids456.tmp"));
+
+		store.evict();
+		assertFalse(Files.exists(oldTempFile));
+		assertTrue(Files.exists(newTempFile));
+	}
+
+	@Test
+	void testIsVersionBranch() {
+		assertTrue(ECLVersionResultsStore.isVersionBranch("MAIN/2024-01-01"));
+		assertTrue(ECLVersionResultsStore.isVersionBranch("MAIN/SNOMEDCT-XX/2024-02-15"));
+		assertFalse(ECLVersionResultsStore.isVersionBranch("MAIN"));
+		assertFalse(ECLVersionResultsStore.isVersionBranch("MAIN/SNOMEDCT-XX/PROJECT-2024-01-01"));
+	}
+
+	private ECLVersionResultsStore createStore(boolean readOnly) {
+		ECLVersionResultsStore store = new ECLVersionResultsStore();
+		ReflectionTestUtils.setField(store, "enabled", true);
+		ReflectionTestUtils.setField(store, "directoryPath", directory.toString());
+		ReflectionTestUtils.setField(store, "readOnly", readOnly);
+		ReflectionTestUtils.setField(store, "minSize", 0);
+		ReflectionTestUtils.setField(store, "maxSizeMb", 1L);
+		ReflectionTestUtils.setField(store, "maxAgeDays", 90);
+		store.init();
+		return store;
+	}
+
+	private BranchCriteria branchCriteria(String path, long timepoint) {
+		BranchCriteria branchCriteria = mock(BranchCriteria.class);
+		when(branchCriteria.getBranchPath()).thenReturn(path);
+		when(branchCriteria.getTimepoint()).thenReturn(new Date(timepoint));
+		return branchCriteria;
+	}
+
+	private long countFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(path -> path.toString().endsWith(".ids")).count();
+		}
+	}
+}